@@ -39,6 +39,9 @@ dependencies {
     implementation("com.google.zxing:core:3.5.3")
     implementation("com.google.zxing:javase:3.5.3")
 
+    // In-memory caching (version managed by Spring Boot)
+    implementation("com.github.ben-manes.caffeine:caffeine")
+
     // Metrics and monitoring
     implementation("io.micrometer:micrometer-core")
 
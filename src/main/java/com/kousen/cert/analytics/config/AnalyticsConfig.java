@@ -1,13 +1,14 @@
 package com.kousen.cert.analytics.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
@@ -16,15 +17,34 @@ import java.util.concurrent.Executor;
 public class AnalyticsConfig {
 
     @Bean(name = "analyticsTaskExecutor")
-    public Executor analyticsTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(4);
-        executor.setQueueCapacity(250);
-        executor.setThreadNamePrefix("analytics-");
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(10);
-        executor.initialize();
-        return executor;
+    public AnalyticsExecutor analyticsTaskExecutor(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${certificate.analytics.executor.mode:bounded}") String mode,
+            @Value("${certificate.analytics.executor.core-size:2}") int coreSize,
+            @Value("${certificate.analytics.executor.max-size:4}") int maxSize,
+            @Value("${certificate.analytics.executor.queue-capacity:250}") int queueCapacity,
+            @Value("${certificate.analytics.executor.overflow:drop-oldest}") String overflow,
+            @Value("${certificate.analytics.executor.max-concurrency:8}") int maxConcurrency) {
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        AnalyticsExecutor.Overflow policy = AnalyticsExecutor.Overflow.from(overflow);
+        return switch (AnalyticsExecutor.Mode.from(mode)) {
+            case BOUNDED -> AnalyticsExecutor.bounded(coreSize, maxSize, queueCapacity, policy, registry);
+            case VIRTUAL -> AnalyticsExecutor.virtual(maxConcurrency, queueCapacity, policy, registry);
+        };
+    }
+
+    /**
+     * Persists certificate metadata off the request path. Unlike tracking,
+     * these saves must not be lost, so a full backlog runs the save on the
+     * caller rather than dropping it.
+     */
+    @Bean(name = "metadataTaskExecutor")
+    public AnalyticsExecutor metadataTaskExecutor(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${certificate.metadata.executor.core-size:2}") int coreSize,
+            @Value("${certificate.metadata.executor.max-size:4}") int maxSize,
+            @Value("${certificate.metadata.executor.queue-capacity:250}") int queueCapacity) {
+        return AnalyticsExecutor.bounded("metadata", coreSize, maxSize, queueCapacity,
+                AnalyticsExecutor.Overflow.CALLER_RUNS, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
     }
 }
@@ -0,0 +1,289 @@
+package com.kousen.cert.analytics.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs persistence work off the request path. When the backlog is full a
+ * task is either dropped or run by the caller, never rejected with an
+ * exception that the request thread pays for. Dropping only suits
+ * best-effort work such as event tracking; a dropped task's future completes
+ * exceptionally. Work that must not be lost uses {@link Overflow#CALLER_RUNS},
+ * which never drops a task, even while shutting down.
+ * <p>
+ * Two strategies are available: a bounded pool of platform threads, or a
+ * virtual thread per task with a semaphore capping how many write to the
+ * database at once. Both report backlog depth, overflow counts and the time
+ * from submission until a task has finished persisting, as
+ * {@code <name>.executor.*} metrics.
+ */
+public class AnalyticsExecutor implements AsyncTaskExecutor, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsExecutor.class);
+
+    public enum Mode {
+        BOUNDED, VIRTUAL;
+
+        public static Mode from(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /**
+     * What to do with a task when the backlog is full.
+     */
+    public enum Overflow {
+        /**
+         * Discard the oldest waiting task to make room. Virtual threads already
+         * waiting for a permit can't be reordered, so in {@link Mode#VIRTUAL}
+         * the new task is discarded instead.
+         */
+        DROP_OLDEST,
+        /**
+         * Run the task on the submitting thread, slowing the caller down.
+         */
+        CALLER_RUNS;
+
+        public static Overflow from(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final String name;
+    private final Mode mode;
+    private final Overflow overflow;
+    private final int queueCapacity;
+    private final ExecutorService delegate;
+    // Virtual mode only: caps concurrent tasks and counts those waiting for a permit
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Timer latency;
+
+    private AnalyticsExecutor(String name, Mode mode, int coreSize, int maxSize, int queueCapacity,
+                              Overflow overflow, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.mode = mode;
+        this.overflow = overflow;
+        this.queueCapacity = queueCapacity;
+
+        this.rejected = Counter.builder(name + ".executor.rejected")
+                .description("Tasks submitted while the backlog was full")
+                .register(meterRegistry);
+        this.dropped = Counter.builder(name + ".executor.dropped")
+                .description("Tasks discarded without running")
+                .register(meterRegistry);
+        this.latency = Timer.builder(name + ".executor.latency")
+                .description("Time from submitting a task until it has finished persisting")
+                .register(meterRegistry);
+
+        if (mode == Mode.VIRTUAL) {
+            this.permits = new Semaphore(maxSize, true);
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+            meterRegistry.gauge(name + ".executor.queue.depth", waiting, AtomicInteger::get);
+        } else {
+            this.permits = null;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(coreSize, maxSize, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    Thread.ofPlatform().name(name + "-", 0).daemon(true).factory(),
+                    overflowHandler());
+            this.delegate = pool;
+            meterRegistry.gauge(name + ".executor.queue.depth", pool, p -> p.getQueue().size());
+        }
+        logger.info("{} executor started: {} mode, {} workers, backlog {}, overflow {}",
+                name, mode, maxSize, queueCapacity, overflow);
+    }
+
+    /**
+     * A pool of platform threads in front of a bounded queue, for analytics tracking.
+     */
+    public static AnalyticsExecutor bounded(int coreSize, int maxSize, int queueCapacity,
+                                            Overflow overflow, MeterRegistry meterRegistry) {
+        return bounded("analytics", coreSize, maxSize, queueCapacity, overflow, meterRegistry);
+    }
+
+    /**
+     * A pool of platform threads in front of a bounded queue, reporting
+     * metrics and naming threads after {@code name}.
+     */
+    public static AnalyticsExecutor bounded(String name, int coreSize, int maxSize, int queueCapacity,
+                                            Overflow overflow, MeterRegistry meterRegistry) {
+        return new AnalyticsExecutor(name, Mode.BOUNDED, coreSize, maxSize, queueCapacity, overflow, meterRegistry);
+    }
+
+    /**
+     * A virtual thread per task, at most {@code maxConcurrency} running and
+     * at most {@code queueCapacity} waiting for their turn.
+     */
+    public static AnalyticsExecutor virtual(int maxConcurrency, int queueCapacity,
+                                            Overflow overflow, MeterRegistry meterRegistry) {
+        return new AnalyticsExecutor("analytics", Mode.VIRTUAL, maxConcurrency, maxConcurrency, queueCapacity,
+                overflow, meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        dispatch(new Task(task, null));
+    }
+
+    /**
+     * Used by {@code @Async} methods returning a future. Unlike the default,
+     * the future fails if the task is dropped instead of never completing.
+     */
+    @Override
+    public <T> CompletableFuture<T> submitCompletable(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        dispatch(new Task(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, future));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> submitCompletable(Runnable task) {
+        return submitCompletable(Executors.callable(task, (Void) null));
+    }
+
+    private void dispatch(Task task) {
+        if (mode == Mode.VIRTUAL) {
+            executeOnVirtualThread(task);
+        } else {
+            delegate.execute(task);
+        }
+    }
+
+    /**
+     * Tasks submitted but not yet started.
+     */
+    int queueDepth() {
+        return mode == Mode.VIRTUAL ? waiting.get() : ((ThreadPoolExecutor) delegate).getQueue().size();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        delegate.shutdown();
+        if (!delegate.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Analytics tasks still running after shutdown timeout");
+        }
+    }
+
+    private void executeOnVirtualThread(Task task) {
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            if (overflow == Overflow.CALLER_RUNS) {
+                task.run();
+            } else {
+                task.drop();
+            }
+            return;
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    waiting.decrementAndGet();
+                    task.drop();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                waiting.decrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            waiting.decrementAndGet();
+            runOrDropAtShutdown(task);
+        }
+    }
+
+    // Every task queued or rejected is a Task, since dispatch only submits those
+    private RejectedExecutionHandler overflowHandler() {
+        return (task, pool) -> {
+            if (pool.isShutdown()) {
+                runOrDropAtShutdown((Task) task);
+                return;
+            }
+            rejected.increment();
+            if (overflow == Overflow.CALLER_RUNS) {
+                task.run();
+            } else {
+                Runnable oldest = pool.getQueue().poll();
+                if (oldest != null) {
+                    ((Task) oldest).drop();
+                }
+                pool.execute(task);
+            }
+        };
+    }
+
+    private void runOrDropAtShutdown(Task task) {
+        if (overflow == Overflow.CALLER_RUNS) {
+            task.run();
+        } else {
+            task.drop();
+        }
+    }
+
+    /**
+     * A submitted task, timed from submission, whose future (if any) is
+     * failed when it is dropped.
+     */
+    private final class Task implements Runnable {
+        private final Runnable body;
+        private final CompletableFuture<?> future;
+        private final long submittedAt = System.nanoTime();
+
+        Task(Runnable body, CompletableFuture<?> future) {
+            this.body = body;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                body.run();
+            } finally {
+                latency.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void drop() {
+            dropped.increment();
+            if (future != null) {
+                future.completeExceptionally(new RejectedExecutionException(name + " task dropped: backlog full"));
+            } else if (body instanceof Future<?> submitted) {
+                submitted.cancel(false);
+            }
+        }
+    }
+}
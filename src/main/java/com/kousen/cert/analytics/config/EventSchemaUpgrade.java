@@ -0,0 +1,201 @@
+package com.kousen.cert.analytics.config;
+
+import com.kousen.cert.analytics.model.EventDimension.Kind;
+import com.kousen.cert.analytics.model.IpAddressConverter;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings a {@code certificate_events} table created by an earlier version up
+ * to the current mapping. Schema update adds new tables and columns but never
+ * changes existing ones, so two things are done here:
+ * <ul>
+ *   <li>{@code certificate_events_seq} is moved past the IDs already in the
+ *   table. Event IDs used to come from an identity column, so the sequence
+ *   would otherwise start at 1 and collide with existing rows.</li>
+ *   <li>Book titles, user agents and endpoints are copied from the old text
+ *   columns into {@code event_dimensions} keys, and IP addresses into binary.
+ *   The text columns are left in place, so instances of the earlier version
+ *   can keep writing them during a rolling deploy; rows they add are picked
+ *   up on the next startup. This runs once the application is ready rather
+ *   than during startup, and each column is first probed for rows still to
+ *   copy, so once everything is copied a restart skips the rewrites.</li>
+ *   <li>Once no earlier version is running, setting
+ *   {@code certificate.analytics.schema.drop-legacy-columns} drops the text
+ *   columns after a final copy.</li>
+ * </ul>
+ * Every step is idempotent, so this is safe to run on every startup, and with
+ * several instances starting at once. Only PostgreSQL is handled; the H2
+ * development database starts empty.
+ */
+@Component
+public class EventSchemaUpgrade {
+    private static final Logger logger = LoggerFactory.getLogger(EventSchemaUpgrade.class);
+
+    private static final int IP_BATCH_SIZE = 1000;
+
+    private record DimensionColumn(String legacy, String key, Kind kind) {}
+
+    private static final List<DimensionColumn> DIMENSION_COLUMNS = List.of(
+            new DimensionColumn("book_title", "book_id", Kind.BOOK),
+            new DimensionColumn("user_agent", "user_agent_id", Kind.USER_AGENT),
+            new DimensionColumn("endpoint", "endpoint_id", Kind.ENDPOINT));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dropLegacyColumns;
+    private final IpAddressConverter ipAddressConverter = new IpAddressConverter();
+
+    /**
+     * @param entityManagerFactory not used directly; depending on it makes
+     *                             this run after Hibernate has updated the schema
+     * @param dropLegacyColumns    whether to drop the old text columns once
+     *                             copied; only safe when no earlier version
+     *                             is still writing them
+     */
+    public EventSchemaUpgrade(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                              @Value("${certificate.analytics.schema.drop-legacy-columns:false}")
+                              boolean dropLegacyColumns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropLegacyColumns = dropLegacyColumns;
+    }
+
+    /**
+     * Aligns the sequence before anything can insert events.
+     */
+    @PostConstruct
+    public void upgrade() {
+        if (!isPostgreSQL()) {
+            return;
+        }
+        // Analytics is best-effort; don't keep the service from starting
+        try {
+            alignSequence();
+        } catch (DataAccessException e) {
+            logger.warn("Could not align event ID sequence: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the legacy columns, off the startup path: new events don't need
+     * them, and on a large table the copy takes a while.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyColumns() {
+        if (!isPostgreSQL()) {
+            return;
+        }
+        try {
+            for (DimensionColumn column : DIMENSION_COLUMNS) {
+                if (hasColumn(column.legacy())) {
+                    if (hasUncopiedRows(column.legacy(), column.key())) {
+                        migrateDimension(column);
+                    }
+                    dropLegacyColumn(column.legacy());
+                }
+            }
+            if (hasColumn("ip_address")) {
+                if (hasUncopiedRows("ip_address", "ip")) {
+                    migrateIpAddresses();
+                }
+                dropLegacyColumn("ip_address");
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Could not migrate legacy event columns: {}", e.getMessage());
+        }
+    }
+
+    private boolean isPostgreSQL() {
+        String database = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equals(database);
+    }
+
+    private void alignSequence() {
+        // The pooled optimizer hands out (value - 49, value], so any value at
+        // or above the largest existing ID is safe
+        Long value = jdbcTemplate.queryForObject(
+                "SELECT setval('certificate_events_seq', GREATEST("
+                        + "(SELECT COALESCE(MAX(id), 1) FROM certificate_events), "
+                        + "(SELECT last_value FROM certificate_events_seq)))",
+                Long.class);
+        logger.debug("Event ID sequence at {}", value);
+    }
+
+    private boolean hasColumn(String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns "
+                        + "WHERE table_name = 'certificate_events' AND column_name = ?",
+                Integer.class, column);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Stops at the first row with a legacy value but no copy, so it only
+     * reads the whole table when there is nothing to copy.
+     */
+    private boolean hasUncopiedRows(String legacy, String copy) {
+        // Column names come from constants, never from input
+        Boolean uncopied = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM certificate_events "
+                + "WHERE " + legacy + " IS NOT NULL AND " + copy + " IS NULL)", Boolean.class);
+        return Boolean.TRUE.equals(uncopied);
+    }
+
+    private void migrateDimension(DimensionColumn column) {
+        // Column names come from the constant list above, never from input
+        jdbcTemplate.update("INSERT INTO event_dimensions (kind, label) "
+                + "SELECT DISTINCT ?, LEFT(" + column.legacy() + ", 500) FROM certificate_events "
+                + "WHERE " + column.legacy() + " IS NOT NULL AND " + column.key() + " IS NULL "
+                + "ON CONFLICT (kind, label) DO NOTHING", column.kind().name());
+        int rows = jdbcTemplate.update("UPDATE certificate_events e SET " + column.key() + " = d.id "
+                + "FROM event_dimensions d "
+                + "WHERE d.kind = ? AND d.label = LEFT(e." + column.legacy() + ", 500) "
+                + "AND e." + column.key() + " IS NULL", column.kind().name());
+        logger.info("Copied {} event {} values into event_dimensions", rows, column.legacy());
+    }
+
+    private void migrateIpAddresses() {
+        // Parsed in Java so malformed values become null rather than failing a
+        // cast. Each batch starts after the last ID of the previous one, so the
+        // scan reads every row once however many stay null.
+        int total = 0;
+        long lastId = Long.MIN_VALUE;
+        List<Map<String, Object>> batch;
+        do {
+            batch = jdbcTemplate.queryForList(
+                    "SELECT id, ip_address FROM certificate_events "
+                            + "WHERE ip_address IS NOT NULL AND ip IS NULL AND id > ? "
+                            + "ORDER BY id LIMIT " + IP_BATCH_SIZE, lastId);
+            List<Object[]> updates = batch.stream()
+                    .map(row -> new Object[]{
+                            ipAddressConverter.convertToDatabaseColumn((String) row.get("ip_address")),
+                            row.get("id")})
+                    .filter(update -> update[0] != null)
+                    .toList();
+            jdbcTemplate.batchUpdate("UPDATE certificate_events SET ip = ? WHERE id = ?", updates);
+            total += updates.size();
+            if (!batch.isEmpty()) {
+                lastId = ((Number) batch.getLast().get("id")).longValue();
+            }
+        } while (batch.size() == IP_BATCH_SIZE);
+        logger.info("Copied {} event IP addresses to binary", total);
+    }
+
+    private void dropLegacyColumn(String column) {
+        if (dropLegacyColumns) {
+            jdbcTemplate.execute("ALTER TABLE certificate_events DROP COLUMN IF EXISTS " + column);
+            logger.info("Dropped legacy event column {}", column);
+        }
+    }
+}
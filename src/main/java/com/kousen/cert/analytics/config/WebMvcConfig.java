@@ -19,6 +19,8 @@ public class WebMvcConfig implements WebMvcConfigurer {
         // Track all API endpoints
         registry.addInterceptor(apiTrackingInterceptor)
                 .addPathPatterns("/api/**")
-                .excludePathPatterns("/api/analytics/**"); // Don't track analytics endpoints
+                .excludePathPatterns(
+                        "/api/analytics/**",              // Don't track analytics endpoints
+                        "/api/certificates/preview");     // Previews are not usage of the service
     }
 }
\ No newline at end of file
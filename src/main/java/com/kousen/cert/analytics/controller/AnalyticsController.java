@@ -5,8 +5,11 @@ import com.kousen.cert.analytics.service.AnalyticsService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
+
 @RestController
 @RequestMapping("/api/analytics")
 public class AnalyticsController {
@@ -45,4 +48,12 @@ public class AnalyticsController {
         AnalyticsDTO.DashboardData dashboard = analyticsService.getDashboardData();
         return ResponseEntity.ok(dashboard.performance());
     }
+    
+    @GetMapping("/unique-purchasers")
+    public ResponseEntity<AnalyticsDTO.UniquePurchasers> getUniquePurchasers(
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to,
+            @RequestParam(name = "book", required = false) String bookTitle) {
+        return ResponseEntity.ok(analyticsService.getUniquePurchasers(from, to, bookTitle));
+    }
 }
\ No newline at end of file
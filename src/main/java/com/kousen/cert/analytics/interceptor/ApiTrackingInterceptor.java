@@ -2,16 +2,22 @@ package com.kousen.cert.analytics.interceptor;
 
 import com.kousen.cert.analytics.model.AnalyticsRequestContext;
 import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
+import com.kousen.cert.analytics.service.EventSampler;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.ModelAndView;
 
 /**
- * Interceptor to track API usage and response times.
+ * Interceptor to track API usage and response times. Every call is counted
+ * in memory by {@link ApiUsageAggregator}; only the calls {@link EventSampler}
+ * picks, always including failed and unusually slow ones, are stored as
+ * individual events.
  */
 @Component
 public class ApiTrackingInterceptor implements HandlerInterceptor {
@@ -19,9 +25,11 @@ public class ApiTrackingInterceptor implements HandlerInterceptor {
     private static final String START_TIME_ATTRIBUTE = "apiTrackingStartTime";
     
     private final AnalyticsService analyticsService;
+    private final ApiUsageAggregator apiUsageAggregator;
     
-    public ApiTrackingInterceptor(AnalyticsService analyticsService) {
+    public ApiTrackingInterceptor(AnalyticsService analyticsService, ApiUsageAggregator apiUsageAggregator) {
         this.analyticsService = analyticsService;
+        this.apiUsageAggregator = apiUsageAggregator;
     }
     
     @Override
@@ -44,9 +52,14 @@ public class ApiTrackingInterceptor implements HandlerInterceptor {
             if (startTime != null) {
                 long responseTime = System.currentTimeMillis() - startTime;
                 String endpoint = request.getRequestURI();
-                AnalyticsRequestContext requestContext = AnalyticsRequestContext.from(request);
 
-                analyticsService.trackApiUsage(endpoint, responseTime, requestContext);
+                boolean failed = ex != null || response.getStatus() >= 500;
+
+                EventSampler.Decision decision = apiUsageAggregator.record(routeOf(request), responseTime, failed);
+                if (decision != EventSampler.Decision.DROP) {
+                    analyticsService.trackApiUsage(endpoint, responseTime, response.getStatus(), decision,
+                            AnalyticsRequestContext.from(request));
+                }
                 
                 logger.debug("API call to {} took {}ms", endpoint, responseTime);
             }
@@ -54,4 +67,14 @@ public class ApiTrackingInterceptor implements HandlerInterceptor {
             logger.warn("Error tracking API usage: {}", e.getMessage());
         }
     }
+
+    /**
+     * Method and route pattern, so calls to {@code /api/certificates/abc} and
+     * {@code /api/certificates/def} are summarized together. Requests that
+     * matched no route share one key rather than one per probed URL.
+     */
+    private static String routeOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "unmatched");
+    }
 }
@@ -34,6 +34,11 @@ public class AggregatedMetrics {
     @Column(nullable = false)
     private Instant calculatedAt;
 
+    // Serialized distinct-count sketch behind metricValue, for metrics that
+    // are merged across rows rather than summed; null for all others
+    @Column(length = 65_538)
+    private byte[] sketch;
+
     @PrePersist
     protected void onCreate() {
         if (calculatedAt == null) {
@@ -109,6 +114,14 @@ public class AggregatedMetrics {
         this.calculatedAt = calculatedAt;
     }
 
+    public byte[] getSketch() {
+        return sketch;
+    }
+
+    public void setSketch(byte[] sketch) {
+        this.sketch = sketch;
+    }
+
     @Override
     public String toString() {
         return "AggregatedMetrics{" +
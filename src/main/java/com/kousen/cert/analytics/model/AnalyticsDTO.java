@@ -45,6 +45,13 @@ public class AnalyticsDTO {
         double successRate
     ) {}
     
+    public record UniquePurchasers(
+        Instant from,
+        Instant to,
+        String bookTitle,
+        long count
+    ) {}
+    
     public record DashboardData(
         Summary summary,
         List<TimeSeriesData> dailyTrend,
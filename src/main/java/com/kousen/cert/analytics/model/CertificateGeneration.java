@@ -0,0 +1,11 @@
+package com.kousen.cert.analytics.model;
+
+/**
+ * One generated certificate, as recorded by batch analytics.
+ */
+public record CertificateGeneration(String certificateId,
+                                    String purchaserName,
+                                    String purchaserEmail,
+                                    String bookTitle,
+                                    long durationMs) {
+}
@@ -4,7 +4,11 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "certificate_metadata")
+@Table(name = "certificate_metadata",
+        indexes = {
+                @Index(name = "idx_certificate_metadata_file_hash", columnList = "fileHash"),
+                @Index(name = "idx_certificate_metadata_created_at", columnList = "createdAt")
+        })
 public class CertificateMetadata {
     
     @Id
@@ -16,6 +20,9 @@ public class CertificateMetadata {
     private String fileHash;
     
     private Long fileSize;
+
+    // SHA-256 of the certificate that signed the file; null for older records
+    private String signerFingerprint;
     
     @Column(nullable = false)
     private Instant createdAt;
@@ -78,6 +85,14 @@ public class CertificateMetadata {
         this.fileSize = fileSize;
     }
     
+    public String getSignerFingerprint() {
+        return signerFingerprint;
+    }
+    
+    public void setSignerFingerprint(String signerFingerprint) {
+        this.signerFingerprint = signerFingerprint;
+    }
+    
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,55 @@
+package com.kousen.cert.analytics.model;
+
+import com.kousen.cert.analytics.model.EventDimension.Kind;
+import com.kousen.cert.analytics.repository.EventDictionary;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a repeated event string as its {@link EventDictionary} key. Queries
+ * that group or filter on the attribute work on the integer column, and
+ * results are converted back to the string.
+ * <p>
+ * Converters are created by Spring, so the dictionary is injected.
+ */
+public abstract class DimensionConverter implements AttributeConverter<String, Integer> {
+
+    private final EventDictionary dictionary;
+    private final Kind kind;
+
+    protected DimensionConverter(EventDictionary dictionary, Kind kind) {
+        this.dictionary = dictionary;
+        this.kind = kind;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String label) {
+        return label == null ? null : dictionary.keyOf(kind, label);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer key) {
+        return key == null ? null : dictionary.labelOf(key);
+    }
+
+    @Converter
+    public static class BookTitle extends DimensionConverter {
+        public BookTitle(EventDictionary dictionary) {
+            super(dictionary, Kind.BOOK);
+        }
+    }
+
+    @Converter
+    public static class UserAgent extends DimensionConverter {
+        public UserAgent(EventDictionary dictionary) {
+            super(dictionary, Kind.USER_AGENT);
+        }
+    }
+
+    @Converter
+    public static class Endpoint extends DimensionConverter {
+        public Endpoint(EventDictionary dictionary) {
+            super(dictionary, Kind.ENDPOINT);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.kousen.cert.analytics.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One distinct string referenced by {@link CertificateEvent} rows: a book
+ * title, user agent or endpoint. Events store the small integer key instead
+ * of repeating the text on every row.
+ * <p>
+ * Mapped so that schema update creates the table; rows are read and written
+ * through {@link com.kousen.cert.analytics.repository.EventDictionary}.
+ */
+@Entity
+@Table(name = "event_dimensions",
+        uniqueConstraints = @UniqueConstraint(name = "uk_event_dimensions_kind_label", columnNames = {"kind", "label"}))
+public class EventDimension {
+
+    public enum Kind {
+        BOOK,
+        USER_AGENT,
+        ENDPOINT
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    @Column(nullable = false, length = 500)
+    private String label;
+
+    public EventDimension() {}
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
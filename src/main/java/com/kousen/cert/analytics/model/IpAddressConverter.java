@@ -0,0 +1,41 @@
+package com.kousen.cert.analytics.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Stores an IP address as its 4 or 16 address bytes rather than text.
+ * Values that are not IP literals (e.g. a malformed X-Forwarded-For header)
+ * are stored as {@code null}; nothing is ever resolved through DNS.
+ */
+@Converter
+public class IpAddressConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String ipAddress) {
+        if (ipAddress == null) {
+            return null;
+        }
+        try {
+            return InetAddress.ofLiteral(ipAddress).getAddress();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] address) {
+        if (address == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            // Only thrown for a length other than 4 or 16
+            return null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.kousen.cert.analytics.model;
+
+import java.time.Instant;
+
+/**
+ * The parts of an issuance record the verification page shows. Unlike the
+ * {@link CertificateMetadata} entity, it never changes once issued, so it can
+ * be cached indefinitely.
+ */
+public record IssuedCertificate(String certificateId, Instant issuedAt, String fileHash) {
+
+    public static IssuedCertificate from(CertificateMetadata metadata) {
+        return new IssuedCertificate(metadata.getCertificateId(), metadata.getCreatedAt(), metadata.getFileHash());
+    }
+}
@@ -67,7 +67,20 @@ public interface AggregatedMetricsRepository extends JpaRepository<AggregatedMet
             @Param("timeFrame") String timeFrame);
     
     /**
-     * Delete metrics older than the specified date.
+     * Find metrics by name and time frame with a timestamp in {@code [start, end)}.
      */
-    void deleteByCalculatedAtBefore(Instant date);
+    @Query("SELECT m FROM AggregatedMetrics m " +
+           "WHERE m.metricName = :metricName " +
+           "AND m.timeFrame = :timeFrame " +
+           "AND m.timestamp >= :start AND m.timestamp < :end")
+    List<AggregatedMetrics> findInWindow(
+            @Param("metricName") String metricName,
+            @Param("timeFrame") String timeFrame,
+            @Param("start") Instant start,
+            @Param("end") Instant end);
+    
+    /**
+     * Delete metrics older than the specified date, except those with the given name.
+     */
+    void deleteByCalculatedAtBeforeAndMetricNameNot(Instant date, String metricName);
 }
\ No newline at end of file
@@ -2,13 +2,16 @@ package com.kousen.cert.analytics.repository;
 
 import com.kousen.cert.analytics.model.CertificateEvent;
 import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface CertificateEventRepository extends JpaRepository<CertificateEvent, Long> {
@@ -21,9 +24,19 @@ public interface CertificateEventRepository extends JpaRepository<CertificateEve
     
     List<CertificateEvent> findByEventTypeAndTimestampBetween(EventType eventType, Instant start, Instant end);
     
-    @Query("SELECT COUNT(DISTINCT e.purchaserEmail) FROM CertificateEvent e WHERE e.purchaserEmail IS NOT NULL")
-    long countUniquePurchasers();
+    @Query("SELECT MIN(e.timestamp) FROM CertificateEvent e WHERE e.purchaserEmail IS NOT NULL")
+    Instant findFirstPurchaseTime();
+
+    /**
+     * @return timestamp, purchaser email and book title of each event with a
+     *         purchaser in {@code [start, end)}
+     */
+    @Query("SELECT e.timestamp, e.purchaserEmail, e.bookTitle FROM CertificateEvent e " +
+           "WHERE e.purchaserEmail IS NOT NULL AND e.timestamp >= :start AND e.timestamp < :end")
+    List<Object[]> findPurchasesBetween(@Param("start") Instant start, @Param("end") Instant end);
     
+    // bookTitle is stored as an event_dimensions key, so the book queries
+    // group on an integer column and convert the keys back to titles
     @Query("SELECT e.bookTitle, COUNT(e) as count FROM CertificateEvent e " +
            "WHERE e.eventType = :eventType AND e.bookTitle IS NOT NULL " +
            "GROUP BY e.bookTitle ORDER BY count DESC")
@@ -59,4 +72,14 @@ public interface CertificateEventRepository extends JpaRepository<CertificateEve
     long countEventsBetween(@Param("eventType") EventType eventType,
                             @Param("start") Instant start,
                             @Param("end") Instant end);
+
+    /**
+     * Streams the columns the dashboard aggregates (ID, timestamp, type, book
+     * title, duration) without loading the entities. Must be consumed inside
+     * a transaction and closed afterwards.
+     */
+    @Query("SELECT e.id, e.timestamp, e.eventType, e.bookTitle, e.durationMs " +
+           "FROM CertificateEvent e WHERE e.eventType <> :excluded")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<Object[]> streamDashboardColumns(@Param("excluded") EventType excluded);
 }
@@ -1,18 +1,47 @@
 package com.kousen.cert.analytics.repository;
 
 import com.kousen.cert.analytics.model.CertificateMetadata;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface CertificateMetadataRepository extends JpaRepository<CertificateMetadata, String> {
     
-    Optional<CertificateMetadata> findByFilename(String filename);
+    // Certificates issued together in one combined PDF share a filename
+    Optional<CertificateMetadata> findFirstByFilename(String filename);
+
+    // ...and therefore a file hash as well
+    Optional<CertificateMetadata> findFirstByFileHash(String fileHash);
+
+    long countByFileHash(String fileHash);
     
+    /**
+     * Streams every certificate ID without loading the entities. Must be
+     * consumed inside a transaction and closed afterwards.
+     */
+    @Query("SELECT c.certificateId FROM CertificateMetadata c")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<String> streamAllCertificateIds();
+
+    /**
+     * Streams the IDs of certificates stored after the given time. Must be
+     * consumed inside a transaction and closed afterwards.
+     */
+    @Query("SELECT c.certificateId FROM CertificateMetadata c WHERE c.createdAt > :since")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<String> streamCertificateIdsCreatedAfter(@Param("since") Instant since);
+
     @Query("SELECT COUNT(c) FROM CertificateMetadata c")
     long countTotalCertificates();
     
@@ -23,4 +52,21 @@ public interface CertificateMetadataRepository extends JpaRepository<Certificate
     
     @Query("SELECT c FROM CertificateMetadata c WHERE c.verificationCount > 0 ORDER BY c.lastVerifiedAt DESC")
     List<CertificateMetadata> findRecentlyVerified();
+
+    /**
+     * Adds verifications to a certificate's count in place, keeping the later
+     * of the stored and given verification times.
+     *
+     * @return the number of rows updated: 0 if the certificate is unknown
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE CertificateMetadata c " +
+           "SET c.verificationCount = COALESCE(c.verificationCount, 0) + :count, " +
+           "c.lastVerifiedAt = CASE WHEN c.lastVerifiedAt IS NULL OR c.lastVerifiedAt < :verifiedAt " +
+           "THEN :verifiedAt ELSE c.lastVerifiedAt END " +
+           "WHERE c.certificateId = :certificateId")
+    int addVerifications(@Param("certificateId") String certificateId,
+                         @Param("count") int count,
+                         @Param("verifiedAt") Instant verifiedAt);
 }
\ No newline at end of file
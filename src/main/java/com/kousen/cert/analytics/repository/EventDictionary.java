@@ -0,0 +1,112 @@
+package com.kousen.cert.analytics.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kousen.cert.analytics.model.EventDimension.Kind;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Maps the strings events repeat (book titles, user agents, endpoints) to
+ * integer keys in {@code event_dimensions}, adding a row the first time a
+ * string is seen. Both directions are cached, so after warm-up encoding and
+ * decoding an event touches no tables.
+ * <p>
+ * New rows are committed in their own transaction. Keys are handed out while
+ * an event is being flushed, and must stay valid even if that event's
+ * transaction rolls back.
+ */
+@Repository
+public class EventDictionary {
+
+    static final int MAX_LABEL_LENGTH = 500;
+
+    // Bounds memory if clients send many distinct user agents; evicted
+    // entries are looked up again on next use
+    private static final int MAX_CACHED_ENTRIES = 10_000;
+
+    private static final String SELECT_KEY = "SELECT id FROM event_dimensions WHERE kind = ? AND label = ?";
+    private static final String SELECT_LABEL = "SELECT label FROM event_dimensions WHERE id = ?";
+    private static final String INSERT = "INSERT INTO event_dimensions (kind, label) VALUES (?, ?)";
+
+    private record Entry(Kind kind, String label) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Supplier<TransactionOperations> newTransaction;
+    private final Cache<Entry, Integer> keys;
+    private final Cache<Integer, String> labels;
+
+    /**
+     * The transaction manager is resolved on first use: the dictionary backs
+     * JPA attribute converters, which are created while the entity manager
+     * factory (and therefore the transaction manager) is still being built.
+     */
+    @Autowired
+    public EventDictionary(JdbcTemplate jdbcTemplate, ObjectProvider<PlatformTransactionManager> transactionManager) {
+        this(jdbcTemplate, SingletonSupplier.of(() -> {
+            TransactionTemplate template = new TransactionTemplate(transactionManager.getObject());
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            return template;
+        }));
+    }
+
+    EventDictionary(JdbcTemplate jdbcTemplate, Supplier<TransactionOperations> newTransaction) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = newTransaction;
+        this.keys = Caffeine.newBuilder().maximumSize(MAX_CACHED_ENTRIES).build();
+        this.labels = Caffeine.newBuilder().maximumSize(MAX_CACHED_ENTRIES).build();
+    }
+
+    /**
+     * @return the key for {@code label}, creating one if needed. Labels
+     *         longer than the column are truncated.
+     */
+    public int keyOf(Kind kind, String label) {
+        String stored = label.length() > MAX_LABEL_LENGTH ? label.substring(0, MAX_LABEL_LENGTH) : label;
+        return keys.get(new Entry(kind, stored), this::findOrCreate);
+    }
+
+    /**
+     * @return the label for {@code key}, or {@code null} if there is no such key
+     */
+    public String labelOf(int key) {
+        return labels.get(key, id -> {
+            List<String> found = jdbcTemplate.queryForList(SELECT_LABEL, String.class, id);
+            return found.isEmpty() ? null : found.getFirst();
+        });
+    }
+
+    private Integer findOrCreate(Entry entry) {
+        Integer key = find(entry);
+        if (key == null) {
+            try {
+                newTransaction.get().executeWithoutResult(
+                        status -> jdbcTemplate.update(INSERT, entry.kind().name(), entry.label()));
+            } catch (DuplicateKeyException e) {
+                // Another instance added the same label first; use its key
+            }
+            key = find(entry);
+        }
+        if (key == null) {
+            throw new IllegalStateException("No key recorded for " + entry.kind() + " " + entry.label());
+        }
+        labels.put(key, entry.label());
+        return key;
+    }
+
+    private Integer find(Entry entry) {
+        List<Integer> found = jdbcTemplate.queryForList(SELECT_KEY, Integer.class, entry.kind().name(), entry.label());
+        return found.isEmpty() ? null : found.getFirst();
+    }
+}
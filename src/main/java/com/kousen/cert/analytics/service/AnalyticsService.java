@@ -4,6 +4,7 @@ import com.kousen.cert.analytics.model.*;
 import com.kousen.cert.analytics.model.CertificateEvent.EventType;
 import com.kousen.cert.analytics.repository.CertificateEventRepository;
 import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import com.kousen.cert.service.TimeOrderedIds;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
@@ -13,6 +14,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -26,13 +29,25 @@ public class AnalyticsService {
     private final CertificateEventRepository eventRepository;
     private final CertificateMetadataRepository metadataRepository;
     private final MeterRegistry meterRegistry;
+    private final VerificationCounter verificationCounter;
+    private final EventSampler eventSampler;
+    private final EventColumnStore columnStore;
+    private final UniquePurchaserCounter uniquePurchaserCounter;
 
     public AnalyticsService(CertificateEventRepository eventRepository,
                           CertificateMetadataRepository metadataRepository,
-                          MeterRegistry meterRegistry) {
+                          MeterRegistry meterRegistry,
+                          VerificationCounter verificationCounter,
+                          EventSampler eventSampler,
+                          EventColumnStore columnStore,
+                          UniquePurchaserCounter uniquePurchaserCounter) {
         this.eventRepository = eventRepository;
         this.metadataRepository = metadataRepository;
         this.meterRegistry = meterRegistry;
+        this.verificationCounter = verificationCounter;
+        this.eventSampler = eventSampler;
+        this.columnStore = columnStore;
+        this.uniquePurchaserCounter = uniquePurchaserCounter;
     }
 
     @Async("analyticsTaskExecutor")
@@ -51,7 +66,7 @@ public class AnalyticsService {
             event.setIpAddress(requestContext.ipAddress());
             event.setUserAgent(requestContext.userAgent());
 
-            eventRepository.save(event);
+            eventSampler.record(event);
 
             meterRegistry.counter("certificates.generated", "book", bookTitle).increment();
             meterRegistry.timer("certificates.generation.time")
@@ -64,6 +79,39 @@ public class AnalyticsService {
         return CompletableFuture.completedFuture(null);
     }
 
+    /**
+     * Tracks a batch of generated certificates with a single repository call,
+     * so the events are written in one transaction rather than one per certificate.
+     */
+    @Async("analyticsTaskExecutor")
+    public CompletableFuture<Void> trackCertificatesGenerated(List<CertificateGeneration> generations,
+                                                             AnalyticsRequestContext requestContext) {
+        try {
+            List<CertificateEvent> events = new ArrayList<>(generations.size());
+            for (CertificateGeneration generation : generations) {
+                CertificateEvent event = new CertificateEvent(EventType.GENERATED, generation.certificateId());
+                event.setPurchaserName(generation.purchaserName());
+                event.setPurchaserEmail(generation.purchaserEmail());
+                event.setBookTitle(generation.bookTitle());
+                event.setDurationMs(generation.durationMs());
+                event.setIpAddress(requestContext.ipAddress());
+                event.setUserAgent(requestContext.userAgent());
+                events.add(event);
+
+                meterRegistry.counter("certificates.generated", "book", generation.bookTitle()).increment();
+                meterRegistry.timer("certificates.generation.time")
+                        .record(generation.durationMs(), java.util.concurrent.TimeUnit.MILLISECONDS);
+            }
+
+            eventSampler.recordAll(events);
+
+            logger.info("Tracked batch generation of {} certificates", events.size());
+        } catch (Exception e) {
+            logger.error("Error tracking batch certificate generation", e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Async("analyticsTaskExecutor")
     public CompletableFuture<Void> trackCertificateDownloaded(String certificateId, AnalyticsRequestContext requestContext) {
         try {
@@ -71,7 +119,7 @@ public class AnalyticsService {
             event.setIpAddress(requestContext.ipAddress());
             event.setUserAgent(requestContext.userAgent());
 
-            eventRepository.save(event);
+            eventSampler.record(event);
             meterRegistry.counter("certificates.downloaded").increment();
 
             logger.info("Tracked certificate download: {}", certificateId);
@@ -88,12 +136,10 @@ public class AnalyticsService {
             event.setIpAddress(requestContext.ipAddress());
             event.setUserAgent(requestContext.userAgent());
 
-            eventRepository.save(event);
+            eventSampler.record(event);
 
-            metadataRepository.findById(certificateId).ifPresent(metadata -> {
-                metadata.incrementVerificationCount();
-                metadataRepository.save(metadata);
-            });
+            // Written to the metadata table in periodic batches
+            verificationCounter.record(certificateId, event.getTimestamp());
 
             meterRegistry.counter("certificates.verified").increment();
 
@@ -107,12 +153,12 @@ public class AnalyticsService {
     @Async("analyticsTaskExecutor")
     public CompletableFuture<Void> trackCertificateError(String errorMessage, AnalyticsRequestContext requestContext) {
         try {
-            CertificateEvent event = new CertificateEvent(EventType.FAILED, UUID.randomUUID().toString());
+            CertificateEvent event = new CertificateEvent(EventType.FAILED, TimeOrderedIds.next());
             event.setErrorMessage(errorMessage);
             event.setIpAddress(requestContext.ipAddress());
             event.setUserAgent(requestContext.userAgent());
 
-            eventRepository.save(event);
+            eventSampler.record(event);
             meterRegistry.counter("certificates.errors").increment();
 
             logger.info("Tracked certificate error: {}", errorMessage);
@@ -123,26 +169,31 @@ public class AnalyticsService {
     }
 
     /**
-     * Track API usage.
+     * Stores one API call as a raw event. Counts and response-time metrics
+     * for every call are kept by {@link ApiUsageAggregator}; this is only
+     * called for the calls {@link EventSampler} didn't drop.
      *
-     * @param endpoint     The API endpoint
-     * @param responseTime The response time in milliseconds
-     * @param request      The HTTP request
+     * @param endpoint       The API endpoint
+     * @param responseTime   The response time in milliseconds
+     * @param status         The HTTP response status
+     * @param decision       The sampler's decision for this call
+     * @param requestContext The client's address and user agent
      */
     @Async("analyticsTaskExecutor")
-    public CompletableFuture<Void> trackApiUsage(String endpoint, long responseTime, AnalyticsRequestContext requestContext) {
+    public CompletableFuture<Void> trackApiUsage(String endpoint, long responseTime, int status,
+                                                 EventSampler.Decision decision,
+                                                 AnalyticsRequestContext requestContext) {
         try {
-            CertificateEvent event = new CertificateEvent(EventType.API_CALL, UUID.randomUUID().toString());
+            CertificateEvent event = new CertificateEvent(EventType.API_CALL, TimeOrderedIds.next());
             event.setEndpoint(endpoint);
             event.setDurationMs(responseTime);
+            if (status >= 500) {
+                event.setErrorMessage("HTTP " + status);
+            }
             event.setIpAddress(requestContext.ipAddress());
             event.setUserAgent(requestContext.userAgent());
 
-            eventRepository.save(event);
-
-            meterRegistry.counter("api.calls", "endpoint", endpoint).increment();
-            meterRegistry.timer("api.response.time", "endpoint", endpoint)
-                    .record(responseTime, java.util.concurrent.TimeUnit.MILLISECONDS);
+            eventSampler.store(event, decision);
 
             logger.debug("Tracked API usage: {} ({}ms)", endpoint, responseTime);
         } catch (Exception e) {
@@ -163,12 +214,12 @@ public class AnalyticsService {
             // Build summary
             AnalyticsDTO.Summary summary = new AnalyticsDTO.Summary(
                 metadataRepository.countTotalCertificates(),
-                eventRepository.countEventsSince(EventType.GENERATED, today),
-                eventRepository.countEventsSince(EventType.GENERATED, weekAgo),
-                eventRepository.countEventsSince(EventType.GENERATED, monthAgo),
+                countEventsSince(EventType.GENERATED, today),
+                countEventsSince(EventType.GENERATED, weekAgo),
+                countEventsSince(EventType.GENERATED, monthAgo),
                 Optional.ofNullable(metadataRepository.sumTotalVerifications()).orElse(0L),
-                eventRepository.countUniquePurchasers(),
-                Optional.ofNullable(eventRepository.findAverageDuration(EventType.GENERATED)).orElse(0.0),
+                uniquePurchaserCounter.countAll(),
+                averageDuration(EventType.GENERATED),
                 findMostPopularBook()
             );
 
@@ -200,33 +251,85 @@ public class AnalyticsService {
         }
     }
 
-    private String findMostPopularBook() {
-        List<Object[]> results = eventRepository.findBookPopularity(EventType.GENERATED);
-        if (!results.isEmpty()) {
-            return (String) results.get(0)[0];
+    /**
+     * Counts distinct purchasers in {@code [from, to)}, of one book or of all.
+     * The range defaults to the 30 days up to now.
+     *
+     * @param from      start of the range, or null
+     * @param to        end of the range, or null for now
+     * @param bookTitle the book to count purchasers of, or null for every book
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public AnalyticsDTO.UniquePurchasers getUniquePurchasers(Instant from, Instant to, String bookTitle) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(30, ChronoUnit.DAYS);
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("Range ends before it starts: " + start + " to " + end);
         }
-        return "None";
+        long count = bookTitle == null || bookTitle.isBlank()
+            ? uniquePurchaserCounter.countBetween(start, end)
+            : uniquePurchaserCounter.countBetween(bookTitle, start, end);
+        return new AnalyticsDTO.UniquePurchasers(start, end,
+            bookTitle == null || bookTitle.isBlank() ? null : bookTitle, count);
+    }
+
+    // The dashboard's aggregations come from the column store once it has
+    // loaded, and from the events table until then
+
+    private long countEventsSince(EventType type, Instant since) {
+        return columnStore.isReady()
+            ? columnStore.countEventsSince(type, since)
+            : eventRepository.countEventsSince(type, since);
+    }
+
+    private double averageDuration(EventType type) {
+        Double average = columnStore.isReady()
+            ? columnStore.averageDuration(type)
+            : eventRepository.findAverageDuration(type);
+        return Optional.ofNullable(average).orElse(0.0);
+    }
+
+    private Map<String, Long> bookCounts() {
+        if (columnStore.isReady()) {
+            return columnStore.bookCounts(EventType.GENERATED);
+        }
+        Map<String, Long> counts = new LinkedHashMap<>();
+        eventRepository.findBookPopularity(EventType.GENERATED)
+            .forEach(row -> counts.put((String) row[0], (Long) row[1]));
+        return counts;
+    }
+
+    private String findMostPopularBook() {
+        return bookCounts().keySet().stream().findFirst().orElse("None");
     }
 
     private List<AnalyticsDTO.TimeSeriesData> getDailyTrend(Instant start, Instant end) {
-        List<Object[]> results = eventRepository.findDailyEventCounts(EventType.GENERATED, start, end);
-        return results.stream()
-            .map(row -> new AnalyticsDTO.TimeSeriesData(
-                ((java.sql.Date) row[0]).toLocalDate().atStartOfDay().toInstant(java.time.ZoneOffset.UTC),
-                (Long) row[1]
+        Map<LocalDate, Long> counts;
+        if (columnStore.isReady()) {
+            counts = columnStore.dailyCounts(EventType.GENERATED, start, end);
+        } else {
+            Map<LocalDate, Long> fromTable = new TreeMap<>();
+            eventRepository.findDailyEventCounts(EventType.GENERATED, start, end)
+                .forEach(row -> fromTable.put(((java.sql.Date) row[0]).toLocalDate(), (Long) row[1]));
+            counts = fromTable;
+        }
+        return counts.entrySet().stream()
+            .map(entry -> new AnalyticsDTO.TimeSeriesData(
+                entry.getKey().atStartOfDay().toInstant(ZoneOffset.UTC),
+                entry.getValue()
             ))
             .collect(Collectors.toList());
     }
 
     private List<AnalyticsDTO.BookPopularity> getBookPopularity() {
-        List<Object[]> results = eventRepository.findBookPopularity(EventType.GENERATED);
-        long total = results.stream().mapToLong(row -> (Long) row[1]).sum();
-
-        return results.stream()
-            .map(row -> new AnalyticsDTO.BookPopularity(
-                (String) row[0],
-                (Long) row[1],
-                total > 0 ? ((Long) row[1] * 100.0) / total : 0
+        Map<String, Long> counts = bookCounts();
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+
+        return counts.entrySet().stream()
+            .map(entry -> new AnalyticsDTO.BookPopularity(
+                entry.getKey(),
+                entry.getValue(),
+                total > 0 ? (entry.getValue() * 100.0) / total : 0
             ))
             .collect(Collectors.toList());
     }
@@ -244,15 +347,15 @@ public class AnalyticsService {
     }
 
     private AnalyticsDTO.PerformanceMetrics getPerformanceMetrics() {
-        long successCount = eventRepository.countEventsSince(EventType.GENERATED, Instant.now().minus(24, ChronoUnit.HOURS));
-        long failureCount = eventRepository.countEventsSince(EventType.FAILED, Instant.now().minus(24, ChronoUnit.HOURS));
+        long successCount = countEventsSince(EventType.GENERATED, Instant.now().minus(24, ChronoUnit.HOURS));
+        long failureCount = countEventsSince(EventType.FAILED, Instant.now().minus(24, ChronoUnit.HOURS));
         double successRate = (successCount + failureCount) > 0 ? 
             (successCount * 100.0) / (successCount + failureCount) : 100.0;
 
         return new AnalyticsDTO.PerformanceMetrics(
-            Optional.ofNullable(eventRepository.findAverageDuration(EventType.GENERATED)).orElse(0.0),
+            averageDuration(EventType.GENERATED),
             0.0, // Would need to track signing time separately
-            Optional.ofNullable(eventRepository.findAverageDuration(EventType.GENERATED)).orElse(0.0),
+            averageDuration(EventType.GENERATED),
             successCount,
             failureCount,
             successRate
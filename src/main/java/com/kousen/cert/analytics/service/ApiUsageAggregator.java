@@ -0,0 +1,152 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates API calls in memory and writes one summary per endpoint to the
+ * aggregated metrics table on each flush. Recording a call only bumps
+ * striped counters, so tracking no longer costs a task, a transaction and an
+ * INSERT per request. Whether a call is also stored as a raw event is left
+ * to {@link EventSampler}.
+ */
+@Service
+public class ApiUsageAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(ApiUsageAggregator.class);
+
+    /**
+     * Time frame of the rows written on each flush; the daily job rolls them up.
+     */
+    static final String TIME_FRAME = "interval";
+    static final String COUNT = "api_usage_count";
+    static final String TOTAL_TIME = "api_total_response_time";
+    static final String MAX_TIME = "api_max_response_time";
+    static final String P95_TIME = "api_p95_response_time";
+
+    private final AggregatedMetricsRepository metricsRepository;
+    private final MeterRegistry meterRegistry;
+    private final EventSampler eventSampler;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Calls to one endpoint since the last flush, plus its long-lived meters.
+     */
+    private final class Endpoint {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Counter calls;
+        final Timer responseTime;
+
+        Endpoint(String endpoint) {
+            calls = meterRegistry.counter("api.calls", "endpoint", endpoint);
+            responseTime = meterRegistry.timer("api.response.time", "endpoint", endpoint);
+        }
+
+        void add(long millis) {
+            count.increment();
+            totalMillis.add(millis);
+            latency.record(millis);
+        }
+    }
+
+    private record Drained(long count, long totalMillis, long maxMillis, long p95Millis) {}
+
+    public ApiUsageAggregator(AggregatedMetricsRepository metricsRepository,
+                              MeterRegistry meterRegistry,
+                              EventSampler eventSampler) {
+        this.metricsRepository = metricsRepository;
+        this.meterRegistry = meterRegistry;
+        this.eventSampler = eventSampler;
+    }
+
+    /**
+     * Records one API call.
+     *
+     * @param endpoint     The endpoint's route pattern, e.g. {@code GET /api/certificates/{id}}
+     * @param responseTime The response time in milliseconds
+     * @param failed       Whether the call failed with a server error
+     * @return whether to store the call as a raw event too
+     */
+    public EventSampler.Decision record(String endpoint, long responseTime, boolean failed) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, Endpoint::new);
+        stats.add(responseTime);
+        stats.calls.increment();
+        stats.responseTime.record(responseTime, TimeUnit.MILLISECONDS);
+        return eventSampler.decide(EventType.API_CALL, responseTime, failed);
+    }
+
+    /**
+     * Writes the calls recorded since the last flush, one set of summary rows
+     * per endpoint. If the write fails, the counts are dropped rather than
+     * retried: they are already in the Micrometer meters, and holding them
+     * back would skew the next interval's latency figures.
+     */
+    @Scheduled(fixedDelayString = "${certificate.analytics.api-usage.flush-interval:PT5M}")
+    public void flush() {
+        Map<String, Drained> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<AggregatedMetrics> rows = new ArrayList<>(batch.size() * 4);
+        batch.forEach((endpoint, drained) -> {
+            rows.add(new AggregatedMetrics(COUNT, endpoint, TIME_FRAME, (double) drained.count(), now));
+            rows.add(new AggregatedMetrics(TOTAL_TIME, endpoint, TIME_FRAME, (double) drained.totalMillis(), now));
+            rows.add(new AggregatedMetrics(MAX_TIME, endpoint, TIME_FRAME, (double) drained.maxMillis(), now));
+            rows.add(new AggregatedMetrics(P95_TIME, endpoint, TIME_FRAME, (double) drained.p95Millis(), now));
+        });
+        try {
+            metricsRepository.saveAll(rows);
+            logger.debug("Flushed API usage for {} endpoints", batch.size());
+        } catch (RuntimeException e) {
+            logger.warn("Could not write API usage summary: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Calls recorded for an endpoint since the last flush.
+     */
+    long pendingCalls(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats != null ? stats.count.sum() : 0;
+    }
+
+    private Map<String, Drained> drain() {
+        Map<String, Drained> batch = new HashMap<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Endpoint stats = entry.getValue();
+            long count = stats.count.sumThenReset();
+            if (count == 0) {
+                continue;
+            }
+            LatencyHistogram.Snapshot latency = stats.latency.drain();
+            batch.put(entry.getKey(), new Drained(count, stats.totalMillis.sumThenReset(), latency.max(),
+                    latency.percentile(0.95)));
+        }
+        return batch;
+    }
+}
@@ -8,23 +8,82 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * Stores and looks up certificate metadata. Saves run on the metadata
+ * executor; issuers record each new ID in the {@link IssuedCertificateFilter}
+ * themselves, synchronously, before saving its metadata.
+ */
 @Service
 @Transactional
 public class CertificateMetadataService {
     private static final Logger logger = LoggerFactory.getLogger(CertificateMetadataService.class);
     
     private final CertificateMetadataRepository repository;
+    private final IssuedCertificateFilter issuedFilter;
     
-    public CertificateMetadataService(CertificateMetadataRepository repository) {
+    public CertificateMetadataService(CertificateMetadataRepository repository,
+                                      IssuedCertificateFilter issuedFilter) {
         this.repository = repository;
+        this.issuedFilter = issuedFilter;
     }
     
-    @Async("analyticsTaskExecutor")
+    /**
+     * Saves metadata for a stored certificate whose hash and size were computed
+     * while it was written, so the file is not read again.
+     *
+     * @param signerFingerprint SHA-256 of the certificate that signed the file
+     */
+    @Async("metadataTaskExecutor")
+    public CompletableFuture<Void> saveCertificateMetadata(String certificateId,
+                                                           Path certificatePath,
+                                                           String fileHash,
+                                                           long fileSize,
+                                                           String signerFingerprint) {
+        try {
+            CertificateMetadata metadata = new CertificateMetadata(
+                certificateId,
+                certificatePath.getFileName().toString()
+            );
+            metadata.setFileHash(fileHash);
+            metadata.setFileSize(fileSize);
+            metadata.setSignerFingerprint(signerFingerprint);
+
+            repository.save(metadata);
+            logger.info("Saved certificate metadata for {}", certificateId);
+        } catch (Exception e) {
+            logger.error("Error saving certificate metadata", e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Saves metadata for a batch of stored certificates in one repository call.
+     */
+    @Async("metadataTaskExecutor")
+    public CompletableFuture<Void> saveAllCertificateMetadata(List<CertificateMetadata> metadata) {
+        try {
+            repository.saveAll(metadata);
+            logger.info("Saved certificate metadata for {} certificates", metadata.size());
+        } catch (Exception e) {
+            logger.error("Error saving certificate metadata", e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Saves metadata for a stored certificate, hashing the file to fill in its
+     * SHA-256 and size. Prefer the overload that takes a precomputed hash.
+     */
+    @Async("metadataTaskExecutor")
     public CompletableFuture<Void> saveCertificateMetadata(String certificateId, Path certificatePath) {
         try {
             CertificateMetadata metadata = new CertificateMetadata(
@@ -35,15 +94,10 @@ public class CertificateMetadataService {
             if (Files.exists(certificatePath)) {
                 metadata.setFileSize(Files.size(certificatePath));
 
-                try {
-                    byte[] fileBytes = Files.readAllBytes(certificatePath);
-                    MessageDigest md = MessageDigest.getInstance("SHA-256");
-                    byte[] hashBytes = md.digest(fileBytes);
-                    StringBuilder sb = new StringBuilder();
-                    for (byte b : hashBytes) {
-                        sb.append(String.format("%02x", b));
-                    }
-                    metadata.setFileHash(sb.toString());
+                try (var in = new DigestInputStream(Files.newInputStream(certificatePath),
+                        MessageDigest.getInstance("SHA-256"))) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                    metadata.setFileHash(HexFormat.of().formatHex(in.getMessageDigest().digest()));
                 } catch (Exception e) {
                     logger.warn("Could not calculate file hash for {}", certificatePath, e);
                 }
@@ -57,11 +111,34 @@ public class CertificateMetadataService {
         return CompletableFuture.completedFuture(null);
     }
     
+    /**
+     * Finds a certificate's metadata by ID. IDs the in-memory filter can rule
+     * out as never issued are turned away without querying the database.
+     */
     public CertificateMetadata getCertificateMetadata(String certificateId) {
+        if (!issuedFilter.mightContain(certificateId)) {
+            return null;
+        }
         return repository.findById(certificateId).orElse(null);
     }
     
     public CertificateMetadata getCertificateMetadataByFilename(String filename) {
-        return repository.findByFilename(filename).orElse(null);
+        return repository.findFirstByFilename(filename).orElse(null);
+    }
+
+    /**
+     * Finds a stored certificate by the SHA-256 of its file, e.g. to recognize
+     * an uploaded copy without parsing it.
+     */
+    public CertificateMetadata getCertificateMetadataByFileHash(String fileHash) {
+        return repository.findFirstByFileHash(fileHash).orElse(null);
+    }
+
+    /**
+     * Counts the certificates stored in the file with this SHA-256: one, or
+     * every page of a combined batch PDF.
+     */
+    public long countCertificatesByFileHash(String fileHash) {
+        return repository.countByFileHash(fileHash);
     }
 }
@@ -0,0 +1,287 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.CertificateEvent;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory, column-oriented copy of the events the dashboard aggregates.
+ * Each event is a position in two primitive arrays (timestamp and duration);
+ * event type and book have only a handful of values, so they are held as one
+ * bitmap of positions per value. The dashboard's counts, trends and averages
+ * are then loops over dense arrays and bitmap intersections instead of
+ * group-bys over {@code certificate_events}.
+ * <p>
+ * It is filled from the table at startup and appended to as events are
+ * stored. Until the initial fill completes, {@link #isReady()} is false and
+ * callers should query the repository instead. API calls are not held: they
+ * are sampled, and their usage is reported from aggregated metrics.
+ * <p>
+ * Each instance only sees the events it stored after startup, so the store is
+ * off unless {@code certificate.analytics.column-store.enabled} is set, which
+ * suits a single instance that owns the database.
+ */
+@Component
+public class EventColumnStore {
+    private static final Logger logger = LoggerFactory.getLogger(EventColumnStore.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NO_DURATION = -1;
+
+    private final CertificateEventRepository repository;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Everything below is guarded by lock; positions [0, size) are in use
+    private int size;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] durations = new long[INITIAL_CAPACITY];
+    private final Bitmap[] byType = new Bitmap[EventType.values().length];
+    private final Map<String, Bitmap> byBook = new HashMap<>();
+
+    // Events stored while the initial fill runs, and the IDs the fill has read
+    private List<CertificateEvent> pending = new ArrayList<>();
+    private BitSet loadedIds = new BitSet();
+    private volatile boolean ready;
+
+    public EventColumnStore(CertificateEventRepository repository,
+                            @Value("${certificate.analytics.column-store.enabled:false}") boolean enabled) {
+        this.repository = repository;
+        this.enabled = enabled;
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = new Bitmap();
+        }
+    }
+
+    /**
+     * Fills the store from the events table. Events stored while this runs
+     * are held back and added afterwards, unless the fill already read them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long count;
+        try (Stream<Object[]> rows = repository.streamDashboardColumns(EventType.API_CALL)) {
+            count = rows.mapToLong(row -> {
+                load(row);
+                return 1;
+            }).sum();
+        } catch (RuntimeException e) {
+            logger.warn("Could not load event column store; dashboard will query the database: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                pending = null;
+                loadedIds = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (CertificateEvent event : pending) {
+                if (!wasLoaded(event.getId())) {
+                    append(event.getTimestamp(), event.getEventType(), event.getBookTitle(), event.getDurationMs());
+                }
+            }
+            pending = null;
+            loadedIds = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Event column store loaded with {} events", count);
+    }
+
+    /**
+     * @return whether the store holds every stored event and can answer queries
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Records an event that has just been saved.
+     */
+    public void add(CertificateEvent event) {
+        if (!enabled || event.getEventType() == EventType.API_CALL) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (ready) {
+                append(event.getTimestamp(), event.getEventType(), event.getBookTitle(), event.getDurationMs());
+            } else if (pending != null) {
+                pending.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<CertificateEvent> events) {
+        events.forEach(this::add);
+    }
+
+    /**
+     * @return the number of events of the type after {@code since}
+     */
+    public long countEventsSince(EventType type, Instant since) {
+        long sinceMillis = since.toEpochMilli();
+        long[] count = new long[1];
+        read(() -> forEachPosition(byType[type.ordinal()], i -> {
+            if (timestamps[i] > sinceMillis) {
+                count[0]++;
+            }
+        }));
+        return count[0];
+    }
+
+    /**
+     * @return the mean duration of events of the type that have one, or
+     *         {@code null} if none do
+     */
+    public Double averageDuration(EventType type) {
+        long[] sumAndCount = new long[2];
+        read(() -> forEachPosition(byType[type.ordinal()], i -> {
+            if (durations[i] != NO_DURATION) {
+                sumAndCount[0] += durations[i];
+                sumAndCount[1]++;
+            }
+        }));
+        return sumAndCount[1] == 0 ? null : (double) sumAndCount[0] / sumAndCount[1];
+    }
+
+    /**
+     * @return the number of events of the type on each UTC day between
+     *         {@code start} and {@code end} inclusive, omitting days with none
+     */
+    public SortedMap<LocalDate, Long> dailyCounts(EventType type, Instant start, Instant end) {
+        long startMillis = start.toEpochMilli();
+        long endMillis = end.toEpochMilli();
+        Map<Long, long[]> byDay = new HashMap<>();
+        read(() -> forEachPosition(byType[type.ordinal()], i -> {
+            long timestamp = timestamps[i];
+            if (timestamp >= startMillis && timestamp <= endMillis) {
+                byDay.computeIfAbsent(Math.floorDiv(timestamp, 86_400_000L), day -> new long[1])[0]++;
+            }
+        }));
+        SortedMap<LocalDate, Long> counts = new TreeMap<>();
+        byDay.forEach((day, count) -> counts.put(LocalDate.ofEpochDay(day), count[0]));
+        return counts;
+    }
+
+    /**
+     * @return the number of events of the type per book title, most frequent first
+     */
+    public Map<String, Long> bookCounts(EventType type) {
+        List<Map.Entry<String, Long>> counts = new ArrayList<>();
+        read(() -> {
+            Bitmap ofType = byType[type.ordinal()];
+            byBook.forEach((title, ofBook) -> {
+                long count = ofBook.andCardinality(ofType);
+                if (count > 0) {
+                    counts.add(Map.entry(title, count));
+                }
+            });
+        });
+        counts.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> ordered = new LinkedHashMap<>();
+        counts.forEach(entry -> ordered.put(entry.getKey(), entry.getValue()));
+        return ordered;
+    }
+
+    // Row layout from CertificateEventRepository.streamDashboardColumns
+    private void load(Object[] row) {
+        lock.writeLock().lock();
+        try {
+            Long id = (Long) row[0];
+            if (id != null && id <= Integer.MAX_VALUE) {
+                loadedIds.set(id.intValue());
+            }
+            append((Instant) row[1], (EventType) row[2], (String) row[3], (Long) row[4]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean wasLoaded(Long id) {
+        return id != null && id <= Integer.MAX_VALUE && loadedIds.get(id.intValue());
+    }
+
+    private void append(Instant timestamp, EventType type, String bookTitle, Long durationMs) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            durations = Arrays.copyOf(durations, size * 2);
+        }
+        int position = size++;
+        timestamps[position] = timestamp.toEpochMilli();
+        durations[position] = durationMs != null ? durationMs : NO_DURATION;
+        byType[type.ordinal()].set(position);
+        if (bookTitle != null) {
+            byBook.computeIfAbsent(bookTitle, title -> new Bitmap()).set(position);
+        }
+    }
+
+    private void read(Runnable scan) {
+        lock.readLock().lock();
+        try {
+            scan.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void forEachPosition(Bitmap positions, IntConsumer action) {
+        long[] words = positions.words;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Growable set of positions, one bit each.
+     */
+    private static final class Bitmap {
+        private long[] words = new long[INITIAL_CAPACITY / 64];
+
+        void set(int position) {
+            int word = position >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, word + 1));
+            }
+            words[word] |= 1L << position;
+        }
+
+        long andCardinality(Bitmap other) {
+            int common = Math.min(words.length, other.words.length);
+            long count = 0;
+            for (int i = 0; i < common; i++) {
+                count += Long.bitCount(words[i] & other.words[i]);
+            }
+            return count;
+        }
+    }
+}
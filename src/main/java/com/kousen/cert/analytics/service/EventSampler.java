@@ -0,0 +1,326 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.model.CertificateEvent;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which events are stored in {@code certificate_events}. High-volume
+ * types can be sampled, but failed events and the slowest ones are always
+ * kept. Sampled events go into a fixed-size reservoir per type that is
+ * written once per window, which bounds how many rows a traffic spike can
+ * add. Every event, stored or not, is counted exactly, and the counts for
+ * sampled types are written to the aggregated metrics table.
+ * <p>
+ * Generated, verified and failed events are never sampled: the dashboard and
+ * the daily aggregation count those rows directly.
+ */
+@Service
+public class EventSampler {
+    private static final Logger logger = LoggerFactory.getLogger(EventSampler.class);
+
+    static final String COUNT = "event_count";
+    static final String SAMPLED_OUT = "event_sampled_out";
+
+    /**
+     * What to do with one event.
+     */
+    public enum Decision {
+        /** Store immediately. */
+        KEEP,
+        /** Offer to this window's reservoir, which may or may not store it. */
+        SAMPLE,
+        /** Count only. */
+        DROP
+    }
+
+    private final CertificateEventRepository eventRepository;
+    private final AggregatedMetricsRepository metricsRepository;
+    private final MeterRegistry meterRegistry;
+    private final EventColumnStore columnStore;
+    private final int reservoirSize;
+    private final double keepSlowest;
+    private final Map<EventType, Policy> policies = new EnumMap<>(EventType.class);
+
+    /**
+     * Sampling state for one event type. Counters are striped so the
+     * request threads that decide never contend; only sampled events touch
+     * the reservoir's lock.
+     */
+    private final class Policy {
+        final double rate;
+        final LongAdder seen = new LongAdder();
+        final LongAdder sampledOut = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Reservoir reservoir = new Reservoir(reservoirSize);
+        final Counter stored;
+        final Counter dropped;
+        // Durations at or above this are always kept; learned from the previous window
+        volatile long slowThreshold = Long.MAX_VALUE;
+
+        Policy(EventType type, double rate) {
+            this.rate = rate;
+            stored = meterRegistry.counter("analytics.events", "type", type.name(), "outcome", "stored");
+            dropped = meterRegistry.counter("analytics.events", "type", type.name(), "outcome", "sampled_out");
+        }
+
+        boolean sampled() {
+            return rate < 1.0;
+        }
+
+        void sampleOut(long count) {
+            sampledOut.add(count);
+            dropped.increment(count);
+        }
+    }
+
+    /**
+     * Uniform sample of at most {@code capacity} events per window
+     * (Vitter's Algorithm R).
+     */
+    private static final class Reservoir {
+        private final int capacity;
+        private final List<CertificateEvent> events = new ArrayList<>();
+        private long offered;
+
+        Reservoir(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return whether an event, this one or an earlier one, was discarded
+         */
+        synchronized boolean offer(CertificateEvent event) {
+            offered++;
+            if (events.size() < capacity) {
+                events.add(event);
+                return false;
+            }
+            long slot = ThreadLocalRandom.current().nextLong(offered);
+            if (slot < capacity) {
+                events.set((int) slot, event);
+            }
+            return true;
+        }
+
+        synchronized List<CertificateEvent> drain() {
+            List<CertificateEvent> drained = List.copyOf(events);
+            events.clear();
+            offered = 0;
+            return drained;
+        }
+    }
+
+    @Autowired
+    public EventSampler(CertificateEventRepository eventRepository,
+                        AggregatedMetricsRepository metricsRepository,
+                        MeterRegistry meterRegistry,
+                        EventColumnStore columnStore,
+                        @Value("${certificate.analytics.sampling.rate.api-call:0.01}") double apiCallRate,
+                        @Value("${certificate.analytics.sampling.rate.downloaded:0.1}") double downloadedRate,
+                        @Value("${certificate.analytics.sampling.reservoir-size:500}") int reservoirSize,
+                        @Value("${certificate.analytics.sampling.keep-slowest:0.99}") double keepSlowest) {
+        this(eventRepository, metricsRepository, meterRegistry, columnStore,
+                Map.of(EventType.API_CALL, apiCallRate, EventType.DOWNLOADED, downloadedRate),
+                reservoirSize, keepSlowest);
+    }
+
+    /**
+     * @param rates       fraction of events stored, by type; types not listed are always stored
+     * @param keepSlowest events slower than this quantile of their type's
+     *                    durations in the previous window are always stored
+     */
+    EventSampler(CertificateEventRepository eventRepository,
+                 AggregatedMetricsRepository metricsRepository,
+                 MeterRegistry meterRegistry,
+                 EventColumnStore columnStore,
+                 Map<EventType, Double> rates,
+                 int reservoirSize,
+                 double keepSlowest) {
+        if (reservoirSize < 0) {
+            throw new IllegalArgumentException("Reservoir size must not be negative: " + reservoirSize);
+        }
+        if (keepSlowest <= 0 || keepSlowest > 1) {
+            throw new IllegalArgumentException("Slowest-event quantile must be in (0, 1]: " + keepSlowest);
+        }
+        this.eventRepository = eventRepository;
+        this.metricsRepository = metricsRepository;
+        this.meterRegistry = meterRegistry;
+        this.columnStore = columnStore;
+        this.reservoirSize = reservoirSize;
+        this.keepSlowest = keepSlowest;
+        for (EventType type : EventType.values()) {
+            double rate = rates.getOrDefault(type, 1.0);
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Sample rate for " + type + " must be between 0 and 1: " + rate);
+            }
+            policies.put(type, new Policy(type, rate));
+        }
+    }
+
+    /**
+     * Counts one event and decides whether to store it. Cheap enough to call
+     * on a request thread before building the event at all.
+     *
+     * @param durationMs the event's duration, or null if it has none
+     * @param failed     whether the event records a failure
+     */
+    public Decision decide(EventType type, Long durationMs, boolean failed) {
+        Policy policy = policies.get(type);
+        policy.seen.increment();
+        if (durationMs != null) {
+            policy.latency.record(durationMs);
+        }
+        if (!policy.sampled() || failed || (durationMs != null && durationMs >= policy.slowThreshold)) {
+            return Decision.KEEP;
+        }
+        if (policy.rate > 0 && ThreadLocalRandom.current().nextDouble() < policy.rate) {
+            return Decision.SAMPLE;
+        }
+        policy.sampleOut(1);
+        return Decision.DROP;
+    }
+
+    /**
+     * Carries out a decision made by {@link #decide}.
+     */
+    public void store(CertificateEvent event, Decision decision) {
+        Policy policy = policies.get(event.getEventType());
+        switch (decision) {
+            case KEEP -> {
+                eventRepository.save(event);
+                columnStore.add(event);
+                policy.stored.increment();
+            }
+            case SAMPLE -> {
+                if (policy.reservoir.offer(event)) {
+                    policy.sampleOut(1);
+                }
+            }
+            case DROP -> { }
+        }
+    }
+
+    /**
+     * Decides about and stores one event.
+     */
+    public void record(CertificateEvent event) {
+        store(event, decide(event.getEventType(), event.getDurationMs(), event.getErrorMessage() != null));
+    }
+
+    /**
+     * Decides about several events, storing the ones kept in a single call.
+     */
+    public void recordAll(List<CertificateEvent> events) {
+        List<CertificateEvent> kept = new ArrayList<>(events.size());
+        for (CertificateEvent event : events) {
+            Decision decision = decide(event.getEventType(), event.getDurationMs(), event.getErrorMessage() != null);
+            if (decision == Decision.KEEP) {
+                kept.add(event);
+            } else {
+                store(event, decision);
+            }
+        }
+        if (!kept.isEmpty()) {
+            eventRepository.saveAll(kept);
+            columnStore.addAll(kept);
+            kept.forEach(event -> policies.get(event.getEventType()).stored.increment());
+        }
+    }
+
+    /**
+     * Closes the current window: stores each reservoir, writes exact counts
+     * for sampled types, and moves each type's slow-event threshold to the
+     * configured quantile of the window's durations.
+     * <p>
+     * If the sampled events can't be written, they are counted as sampled
+     * out. If the counts can't be written, they are put back for the next
+     * window, so they stay exact either way.
+     */
+    @Scheduled(fixedDelayString = "${certificate.analytics.sampling.window:PT5M}")
+    public void flush() {
+        Instant now = Instant.now();
+        List<CertificateEvent> sampled = new ArrayList<>();
+        Map<EventType, long[]> windowCounts = new EnumMap<>(EventType.class);
+        policies.forEach((type, policy) -> {
+            sampled.addAll(policy.reservoir.drain());
+
+            LatencyHistogram.Snapshot latency = policy.latency.drain();
+            if (latency.total() > 0) {
+                policy.slowThreshold = Math.max(1, latency.percentile(keepSlowest));
+            }
+
+            long seen = policy.seen.sumThenReset();
+            long sampledOut = policy.sampledOut.sumThenReset();
+            if (policy.sampled() && seen > 0) {
+                windowCounts.put(type, new long[]{seen, sampledOut});
+            }
+        });
+
+        if (!sampled.isEmpty()) {
+            try {
+                eventRepository.saveAll(sampled);
+                columnStore.addAll(sampled);
+                sampled.forEach(event -> policies.get(event.getEventType()).stored.increment());
+                logger.debug("Stored {} sampled events", sampled.size());
+            } catch (RuntimeException e) {
+                logger.warn("Could not write {} sampled events, counting them as sampled out: {}",
+                        sampled.size(), e.getMessage());
+                for (CertificateEvent event : sampled) {
+                    policies.get(event.getEventType()).dropped.increment();
+                    windowCounts.computeIfAbsent(event.getEventType(), type -> new long[2])[1]++;
+                }
+            }
+        }
+
+        if (windowCounts.isEmpty()) {
+            return;
+        }
+        List<AggregatedMetrics> counts = new ArrayList<>();
+        windowCounts.forEach((type, window) -> {
+            counts.add(new AggregatedMetrics(COUNT, type.name(), ApiUsageAggregator.TIME_FRAME, (double) window[0], now));
+            counts.add(new AggregatedMetrics(SAMPLED_OUT, type.name(), ApiUsageAggregator.TIME_FRAME,
+                    (double) window[1], now));
+        });
+        try {
+            metricsRepository.saveAll(counts);
+        } catch (RuntimeException e) {
+            logger.warn("Could not write event counts, will retry: {}", e.getMessage());
+            windowCounts.forEach((type, window) -> {
+                policies.get(type).seen.add(window[0]);
+                policies.get(type).sampledOut.add(window[1]);
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Durations at or above this are currently always kept for the type.
+     */
+    long slowThreshold(EventType type) {
+        return policies.get(type).slowThreshold;
+    }
+}
@@ -0,0 +1,28 @@
+package com.kousen.cert.analytics.service;
+
+/**
+ * 64-bit string hashing for the probabilistic structures in this package.
+ */
+final class Hashing {
+
+    private Hashing() {}
+
+    // 64-bit FNV-1a over the UTF-16 chars, finished with MurmurHash3's mixer
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
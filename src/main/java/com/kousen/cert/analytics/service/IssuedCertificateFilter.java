@@ -0,0 +1,205 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import com.kousen.cert.service.TimeOrderedIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * A Bloom filter of every certificate ID this service has issued, so lookups
+ * of forged IDs (scrapers, scan storms) are answered without a database
+ * query. It is filled from the metadata table at startup, topped up on a
+ * schedule with the rows created since the previous fill, and added to as
+ * this instance issues certificates; until the initial fill completes, every
+ * ID is reported as possibly issued.
+ * <p>
+ * Certificates can also be issued by other instances sharing the database,
+ * so a miss is only trusted for time-ordered IDs created well before the
+ * latest fill started. Newer time-ordered IDs are checked against the
+ * database, except those stamped in the future, which no instance can have
+ * issued yet. Legacy random IDs carry no time; their misses are trusted only
+ * once {@code trust-legacy-ids} says no instance issues them any more.
+ * <p>
+ * A Bloom filter can't delete entries. Certificates are never revoked or
+ * removed here, so that costs nothing; a false positive simply falls through
+ * to the database.
+ */
+@Component
+public class IssuedCertificateFilter {
+    private static final Logger logger = LoggerFactory.getLogger(IssuedCertificateFilter.class);
+
+    // Longest expected delay between creating an ID and committing its
+    // metadata, on any instance; later IDs may be missing from the fill
+    private static final Duration SETTLE_TIME = Duration.ofMinutes(10);
+
+    // How far ahead of this instance's clock another instance's may run
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final CertificateMetadataRepository repository;
+    private final boolean enabled;
+    private final boolean trustLegacyIds;
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final Clock clock;
+    // Misses are trusted for IDs created before this; null until loaded
+    private volatile Instant loadedBefore;
+    // When the latest fill started
+    private volatile Instant lastFillStarted;
+
+    @Autowired
+    public IssuedCertificateFilter(CertificateMetadataRepository repository,
+                                   @Value("${certificate.verification.id-filter.enabled:true}") boolean enabled,
+                                   @Value("${certificate.verification.id-filter.trust-legacy-ids:false}")
+                                   boolean trustLegacyIds,
+                                   @Value("${certificate.verification.id-filter.expected-insertions:1000000}")
+                                   long expectedInsertions,
+                                   @Value("${certificate.verification.id-filter.false-positive-rate:0.01}")
+                                   double falsePositiveRate) {
+        this(repository, enabled, trustLegacyIds, expectedInsertions, falsePositiveRate, Clock.systemUTC());
+    }
+
+    IssuedCertificateFilter(CertificateMetadataRepository repository, boolean enabled, boolean trustLegacyIds,
+                            long expectedInsertions, double falsePositiveRate, Clock clock) {
+        this.repository = repository;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.trustLegacyIds = trustLegacyIds;
+        this.expectedInsertions = expectedInsertions;
+        // Standard sizing: m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((bits + 63) / 64));
+        this.bitCount = (long) words.length() * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Fills the filter from the metadata table.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        Instant started = clock.instant();
+        long count;
+        try (Stream<String> ids = repository.streamAllCertificateIds()) {
+            count = addAll(ids);
+        }
+        filled(started);
+        if (count > expectedInsertions) {
+            logger.warn("Issued certificate filter holds {} IDs, more than the {} it was sized for; "
+                    + "raise certificate.verification.id-filter.expected-insertions", count, expectedInsertions);
+        } else {
+            logger.info("Issued certificate filter loaded with {} IDs", count);
+        }
+    }
+
+    /**
+     * Adds the IDs stored since the previous fill, so misses can be trusted
+     * for IDs created up to shortly before now rather than before startup.
+     * Rows committed late, within the settle time, are picked up because the
+     * query reaches back that far.
+     */
+    @Scheduled(fixedDelayString = "${certificate.verification.id-filter.refresh-interval:PT1M}")
+    @Transactional(readOnly = true)
+    public void refresh() {
+        Instant previous = lastFillStarted;
+        if (!enabled || previous == null) {
+            return;
+        }
+        Instant started = clock.instant();
+        long count;
+        try (Stream<String> ids = repository.streamCertificateIdsCreatedAfter(previous.minus(SETTLE_TIME))) {
+            count = addAll(ids);
+        }
+        filled(started);
+        logger.debug("Issued certificate filter refreshed with {} recent IDs", count);
+    }
+
+    /**
+     * Records a newly issued certificate ID. Call on the issuing thread, before
+     * its metadata is saved, so a lookup never sees the record but not the
+     * filter entry.
+     */
+    public void add(String certificateId) {
+        long h1 = Hashing.hash(certificateId);
+        long h2 = Hashing.mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            words.accumulateAndGet((int) (bit >>> 6), mask, (word, m) -> word | m);
+        }
+    }
+
+    /**
+     * @return false only if the ID was certainly never issued; always true
+     *         while the filter is disabled, and otherwise true for IDs that
+     *         might have been issued since the latest fill
+     */
+    public boolean mightContain(String certificateId) {
+        if (!enabled) {
+            return true;
+        }
+        Instant created = createdAt(certificateId);
+        if (created != null && created.isAfter(clock.instant().plus(MAX_CLOCK_SKEW))) {
+            // Stamped in the future, so forged whether or not the filter has loaded
+            return false;
+        }
+        Instant trustedBefore = loadedBefore;
+        if (trustedBefore == null) {
+            return true;
+        }
+        // A legacy ID could have been issued at any time, by an instance that still issues them
+        if (created == null ? !trustLegacyIds : !created.isBefore(trustedBefore)) {
+            return true;
+        }
+        long h1 = Hashing.hash(certificateId);
+        long h2 = Hashing.mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long addAll(Stream<String> ids) {
+        return ids.mapToLong(id -> {
+            add(id);
+            return 1;
+        }).sum();
+    }
+
+    private void filled(Instant started) {
+        lastFillStarted = started;
+        loadedBefore = started.minus(SETTLE_TIME);
+    }
+
+    /**
+     * @return the time embedded in a time-ordered ID, or null for any other ID
+     */
+    private static Instant createdAt(String certificateId) {
+        try {
+            return TimeOrderedIds.timestampOf(certificateId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.kousen.cert.analytics.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.model.IssuedCertificate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Answers "was this certificate ID issued, and when?" for the verification
+ * page behind every QR code. QR scans arrive in bursts after an event, so
+ * issuance records are cached in memory: records never change once written,
+ * and IDs with no record are remembered briefly so repeated scans of a bad
+ * link don't each query the database.
+ */
+@Service
+public class IssuedCertificateService {
+
+    private final CertificateMetadataService metadataService;
+    private final Cache<String, IssuedCertificate> issued;
+    private final Cache<String, Boolean> unknown;
+
+    public IssuedCertificateService(CertificateMetadataService metadataService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${certificate.verification.records.max-size:100000}") long maxSize,
+                                    @Value("${certificate.verification.records.negative-ttl:PT1M}") Duration negativeTtl) {
+        this.metadataService = metadataService;
+        this.issued = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        // Short-lived, since metadata for a new certificate is saved asynchronously
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtl)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, issued, "certificate.records");
+            CaffeineCacheMetrics.monitor(meterRegistry, unknown, "certificate.records.unknown");
+        }
+    }
+
+    /**
+     * Looks up the issuance record for a certificate ID.
+     *
+     * @param certificateId The ID from the verification link
+     * @return The record, or empty if this service never issued the ID
+     */
+    public Optional<IssuedCertificate> lookup(String certificateId) {
+        if (unknown.getIfPresent(certificateId) != null) {
+            return Optional.empty();
+        }
+        // Concurrent scans of the same new ID share one database lookup
+        IssuedCertificate record = issued.get(certificateId, this::load);
+        if (record == null) {
+            unknown.put(certificateId, Boolean.TRUE);
+        }
+        return Optional.ofNullable(record);
+    }
+
+    CacheStats cacheStats() {
+        return issued.stats();
+    }
+
+    private IssuedCertificate load(String certificateId) {
+        CertificateMetadata metadata = metadataService.getCertificateMetadata(certificateId);
+        return metadata != null ? IssuedCertificate.from(metadata) : null;
+    }
+}
@@ -0,0 +1,80 @@
+package com.kousen.cert.analytics.service;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coarse, lock-free histogram of durations in milliseconds. Recording bumps
+ * one striped counter; percentiles are read from a drained snapshot, so they
+ * are accurate to the bucket boundary.
+ */
+final class LatencyHistogram {
+
+    // Upper bounds of the buckets in milliseconds; the last bucket is open
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Counts per bucket and the largest duration, taken by {@link #drain()}.
+     */
+    record Snapshot(long[] counts, long max) {
+
+        long total() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile, capped at the
+         * observed maximum so a single fast call doesn't report a coarse bound.
+         * Zero when nothing was recorded.
+         */
+        long percentile(double quantile) {
+            long rank = (long) Math.ceil(total() * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], max) : max;
+                }
+            }
+            return max;
+        }
+    }
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long millis) {
+        buckets[bucketOf(millis)].increment();
+        max.accumulate(millis);
+    }
+
+    /**
+     * Returns the durations recorded since the last drain and starts afresh.
+     */
+    Snapshot drain() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sumThenReset();
+        }
+        return new Snapshot(counts, max.getThenReset());
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (millis <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+}
@@ -12,6 +12,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
@@ -27,14 +29,17 @@ public class MetricsAggregationService {
 
     private final CertificateEventRepository eventRepository;
     private final AggregatedMetricsRepository metricsRepository;
+    private final UniquePurchaserCounter uniquePurchaserCounter;
 
     @Value("${analytics.metrics.retention-days:30}")
     private int metricsRetentionDays;
 
     public MetricsAggregationService(CertificateEventRepository eventRepository,
-                                    AggregatedMetricsRepository metricsRepository) {
+                                    AggregatedMetricsRepository metricsRepository,
+                                    UniquePurchaserCounter uniquePurchaserCounter) {
         this.eventRepository = eventRepository;
         this.metricsRepository = metricsRepository;
+        this.uniquePurchaserCounter = uniquePurchaserCounter;
     }
 
     /**
@@ -62,6 +67,9 @@ public class MetricsAggregationService {
             // Aggregate error counts
             aggregateErrorCounts(yesterday, today);
 
+            // Store yesterday's unique purchaser sketches
+            uniquePurchaserCounter.recordDay(LocalDate.ofInstant(yesterday, ZoneOffset.UTC));
+
             // Clean up old metrics
             cleanupOldMetrics();
 
@@ -195,25 +203,20 @@ public class MetricsAggregationService {
     }
 
     /**
-     * Aggregate API usage by endpoint with specified time frame.
+     * Aggregate API usage by endpoint with specified time frame, rolling up
+     * the summaries {@link ApiUsageAggregator} writes on each flush. Raw
+     * API_CALL events are only a sample, so they can't be counted directly.
      */
     private void aggregateApiUsageByEndpoint(Instant start, Instant end, String timeFrame) {
-        List<CertificateEvent> apiEvents = eventRepository.findByEventTypeAndTimestampBetween(
-            CertificateEvent.EventType.API_CALL, start, end);
-        
-        Map<String, Long> endpointCounts = apiEvents.stream()
-            .filter(event -> event.getEndpoint() != null)
-            .collect(Collectors.groupingBy(
-                CertificateEvent::getEndpoint,
-                Collectors.counting()
-            ));
+        Map<String, Double> endpointCounts = sumByEndpoint(ApiUsageAggregator.COUNT, start, end);
+        Map<String, Double> endpointTotalTimes = sumByEndpoint(ApiUsageAggregator.TOTAL_TIME, start, end);
         
-        for (Map.Entry<String, Long> entry : endpointCounts.entrySet()) {
+        for (Map.Entry<String, Double> entry : endpointCounts.entrySet()) {
             AggregatedMetrics metric = new AggregatedMetrics(
                 "api_usage_count",
                 entry.getKey(),
                 timeFrame,
-                entry.getValue().doubleValue(),
+                entry.getValue(),
                 end
             );
             
@@ -221,19 +224,15 @@ public class MetricsAggregationService {
         }
         
         // Calculate average response time by endpoint
-        Map<String, Double> endpointAvgTimes = apiEvents.stream()
-            .filter(event -> event.getEndpoint() != null && event.getDurationMs() != null)
-            .collect(Collectors.groupingBy(
-                CertificateEvent::getEndpoint,
-                Collectors.averagingLong(CertificateEvent::getDurationMs)
-            ));
-        
-        for (Map.Entry<String, Double> entry : endpointAvgTimes.entrySet()) {
+        for (Map.Entry<String, Double> entry : endpointCounts.entrySet()) {
+            if (entry.getValue() == 0) {
+                continue;
+            }
             AggregatedMetrics metric = new AggregatedMetrics(
                 "api_avg_response_time",
                 entry.getKey(),
                 timeFrame,
-                entry.getValue(),
+                endpointTotalTimes.getOrDefault(entry.getKey(), 0.0) / entry.getValue(),
                 end
             );
             
@@ -241,6 +240,14 @@ public class MetricsAggregationService {
         }
     }
 
+    private Map<String, Double> sumByEndpoint(String metricName, Instant start, Instant end) {
+        return metricsRepository.findInWindow(metricName, ApiUsageAggregator.TIME_FRAME, start, end).stream()
+            .collect(Collectors.groupingBy(
+                AggregatedMetrics::getMetricKey,
+                Collectors.summingDouble(AggregatedMetrics::getMetricValue)
+            ));
+    }
+
     /**
      * Aggregate error counts.
      */
@@ -266,11 +273,12 @@ public class MetricsAggregationService {
     }
 
     /**
-     * Clean up old metrics based on retention policy.
+     * Clean up old metrics based on retention policy. Unique purchaser
+     * sketches are kept, since distinct counts can't be rebuilt from totals.
      */
     private void cleanupOldMetrics() {
         Instant cutoffDate = Instant.now().minus(metricsRetentionDays, ChronoUnit.DAYS);
-        metricsRepository.deleteByCalculatedAtBefore(cutoffDate);
+        metricsRepository.deleteByCalculatedAtBeforeAndMetricNameNot(cutoffDate, UniquePurchaserCounter.METRIC);
         logger.info("Cleaned up metrics older than {}", cutoffDate);
     }
 }
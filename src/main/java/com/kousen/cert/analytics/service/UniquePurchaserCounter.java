@@ -0,0 +1,291 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts distinct purchasers over any time range using HyperLogLog sketches
+ * stored per UTC day in {@code aggregated_metrics}: one over all books and
+ * one per book. A range is counted by merging the sketches of the whole days
+ * it covers, plus the purchasers of any partial days at its edges read from
+ * the events table.
+ * <p>
+ * A day's sketches are computed from the events and stored the first time
+ * they are needed, or by the daily aggregation, once the day has ended and
+ * late events have had time to arrive. If two callers store the same day,
+ * no harm is done: merging a sketch with a copy of itself changes nothing.
+ * <p>
+ * Ranges are clamped to the time between the first purchase and now, so
+ * days with nothing to count are never computed or stored. Ranges no longer
+ * than the configured exact range are counted exactly.
+ */
+@Service
+public class UniquePurchaserCounter {
+    private static final Logger logger = LoggerFactory.getLogger(UniquePurchaserCounter.class);
+
+    static final String METRIC = "unique_purchasers";
+    static final String ALL_BOOKS = "all";
+    static final String TIME_FRAME = "daily";
+
+    // Sampled events are written up to a window after they happen, so a day
+    // is only summarized once it has been over for this long
+    private static final Duration SETTLE_TIME = Duration.ofHours(1);
+
+    // Days computed per events query when filling in missing sketches
+    private static final int DAYS_PER_QUERY = 31;
+
+    private final CertificateEventRepository eventRepository;
+    private final AggregatedMetricsRepository metricsRepository;
+    private final int precision;
+    private final Duration exactRange;
+
+    private record SettledDays(LocalDate end, HyperLogLog sketch) {}
+
+    // Merged sketch of every settled day, for the all-time count
+    private volatile SettledDays allTime;
+    private volatile Instant firstPurchase;
+
+    public UniquePurchaserCounter(CertificateEventRepository eventRepository,
+                                  AggregatedMetricsRepository metricsRepository,
+                                  @Value("${certificate.analytics.unique-purchasers.precision:12}") int precision,
+                                  @Value("${certificate.analytics.unique-purchasers.exact-range:P1D}")
+                                  Duration exactRange) {
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalArgumentException("Unique purchaser precision must be between "
+                    + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION + ": " + precision);
+        }
+        if (exactRange.isNegative()) {
+            throw new IllegalArgumentException("Exact range must not be negative: " + exactRange);
+        }
+        this.eventRepository = eventRepository;
+        this.metricsRepository = metricsRepository;
+        this.precision = precision;
+        this.exactRange = exactRange;
+    }
+
+    /**
+     * @return the number of distinct purchasers across every event
+     */
+    public long countAll() {
+        Instant first = firstPurchase();
+        if (first == null) {
+            return 0;
+        }
+        Instant now = Instant.now();
+        if (Duration.between(first, now).compareTo(exactRange) <= 0) {
+            return exactCount(null, first, now);
+        }
+        LocalDate settledEnd = settledEnd(now);
+        SettledDays settled = allTime;
+        if (settled == null || !settled.end().equals(settledEnd)) {
+            settled = new SettledDays(settledEnd, mergeDays(ALL_BOOKS, dayOf(first), settledEnd));
+            allTime = settled;
+        }
+        HyperLogLog sketch = settled.sketch().copy();
+        addPurchases(sketch, null, startOf(settledEnd), now);
+        return sketch.estimate();
+    }
+
+    /**
+     * @return the number of distinct purchasers in {@code [start, end)}
+     */
+    public long countBetween(Instant start, Instant end) {
+        return count(null, start, end);
+    }
+
+    /**
+     * @return the number of distinct purchasers of the book in {@code [start, end)}
+     */
+    public long countBetween(String bookTitle, Instant start, Instant end) {
+        return count(Objects.requireNonNull(bookTitle), start, end);
+    }
+
+    /**
+     * Stores the sketches for a settled day unless they are already stored.
+     */
+    public void recordDay(LocalDate day) {
+        Instant first = firstPurchase();
+        if (first != null && !day.isBefore(dayOf(first)) && day.isBefore(settledEnd(Instant.now()))) {
+            mergeDays(ALL_BOOKS, day, day.plusDays(1));
+        }
+    }
+
+    private long count(String bookTitle, Instant start, Instant end) {
+        Instant first = firstPurchase();
+        if (first == null) {
+            return 0;
+        }
+        // Callers pick the range, so a far-fetched one mustn't store a sketch per day
+        if (start.isBefore(first)) {
+            start = first;
+        }
+        Instant now = Instant.now();
+        if (end.isAfter(now)) {
+            end = now;
+        }
+        if (!end.isAfter(start)) {
+            return 0;
+        }
+        if (Duration.between(start, end).compareTo(exactRange) <= 0) {
+            return exactCount(bookTitle, start, end);
+        }
+        LocalDate firstDay = dayOf(start);
+        if (startOf(firstDay).isBefore(start)) {
+            firstDay = firstDay.plusDays(1);
+        }
+        LocalDate endDay = dayOf(end);
+        LocalDate settledEnd = settledEnd(Instant.now());
+        if (endDay.isAfter(settledEnd)) {
+            endDay = settledEnd;
+        }
+        if (!firstDay.isBefore(endDay)) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            addPurchases(sketch, bookTitle, start, end);
+            return sketch.estimate();
+        }
+        HyperLogLog sketch = mergeDays(bookTitle != null ? bookTitle : ALL_BOOKS, firstDay, endDay);
+        addPurchases(sketch, bookTitle, start, startOf(firstDay));
+        addPurchases(sketch, bookTitle, startOf(endDay), end);
+        return sketch.estimate();
+    }
+
+    /**
+     * @return when the earliest purchase event happened, or null if there is none yet
+     */
+    private Instant firstPurchase() {
+        Instant first = firstPurchase;
+        if (first == null) {
+            first = eventRepository.findFirstPurchaseTime();
+            firstPurchase = first;
+        }
+        return first;
+    }
+
+    private long exactCount(String bookTitle, Instant start, Instant end) {
+        Set<String> purchasers = new HashSet<>();
+        forEachPurchase(bookTitle, start, end, (timestamp, email) -> purchasers.add(email));
+        return purchasers.size();
+    }
+
+    private void addPurchases(HyperLogLog sketch, String bookTitle, Instant start, Instant end) {
+        if (end.isAfter(start)) {
+            forEachPurchase(bookTitle, start, end, (timestamp, email) -> sketch.add(email));
+        }
+    }
+
+    // Row layout from CertificateEventRepository.findPurchasesBetween
+    private void forEachPurchase(String bookTitle, Instant start, Instant end, BiConsumer<Instant, String> action) {
+        for (Object[] row : eventRepository.findPurchasesBetween(start, end)) {
+            if (bookTitle == null || bookTitle.equals(row[2])) {
+                action.accept((Instant) row[0], (String) row[1]);
+            }
+        }
+    }
+
+    /**
+     * Merges the key's sketches for the days in {@code [from, to)},
+     * computing and storing any days not stored yet.
+     */
+    private HyperLogLog mergeDays(String key, LocalDate from, LocalDate to) {
+        HyperLogLog merged = new HyperLogLog(precision);
+        Set<LocalDate> stored = new HashSet<>();
+        for (AggregatedMetrics row : metricsRepository.findInWindow(METRIC, TIME_FRAME, startOf(from), startOf(to))) {
+            HyperLogLog day = decode(row);
+            if (day == null) {
+                continue;
+            }
+            // A day's sketches are saved together, so the all-books row marks the day as done
+            if (row.getMetricKey().equals(ALL_BOOKS)) {
+                stored.add(dayOf(row.getTimestamp()));
+            }
+            if (row.getMetricKey().equals(key)) {
+                merged.merge(day);
+            }
+        }
+        List<LocalDate> missing = from.datesUntil(to).filter(day -> !stored.contains(day)).toList();
+        for (int i = 0; i < missing.size(); i += DAYS_PER_QUERY) {
+            computeDays(missing.subList(i, Math.min(i + DAYS_PER_QUERY, missing.size())))
+                    .forEach((day, sketches) -> {
+                        HyperLogLog sketch = sketches.get(key);
+                        if (sketch != null) {
+                            merged.merge(sketch);
+                        }
+                    });
+        }
+        return merged;
+    }
+
+    /**
+     * Computes the sketches of the given days (in ascending order) from the
+     * events table and stores them.
+     */
+    private Map<LocalDate, Map<String, HyperLogLog>> computeDays(List<LocalDate> days) {
+        Map<LocalDate, Map<String, HyperLogLog>> sketches = new TreeMap<>();
+        for (LocalDate day : days) {
+            Map<String, HyperLogLog> byKey = new HashMap<>();
+            // Stored even when empty, so the day isn't computed again
+            byKey.put(ALL_BOOKS, new HyperLogLog(precision));
+            sketches.put(day, byKey);
+        }
+        Instant start = startOf(days.getFirst());
+        Instant end = startOf(days.getLast().plusDays(1));
+        for (Object[] row : eventRepository.findPurchasesBetween(start, end)) {
+            Map<String, HyperLogLog> byKey = sketches.get(dayOf((Instant) row[0]));
+            if (byKey == null) {
+                continue;
+            }
+            String email = (String) row[1];
+            byKey.get(ALL_BOOKS).add(email);
+            if (row[2] != null) {
+                byKey.computeIfAbsent((String) row[2], book -> new HyperLogLog(precision)).add(email);
+            }
+        }
+        List<AggregatedMetrics> rows = new ArrayList<>();
+        sketches.forEach((day, byKey) -> byKey.forEach((key, sketch) -> {
+            AggregatedMetrics row = new AggregatedMetrics(METRIC, key, TIME_FRAME, (double) sketch.estimate(), startOf(day));
+            row.setSketch(sketch.toBytes());
+            rows.add(row);
+        }));
+        metricsRepository.saveAll(rows);
+        logger.debug("Stored unique purchaser sketches for {} days from {}", days.size(), days.getFirst());
+        return sketches;
+    }
+
+    private HyperLogLog decode(AggregatedMetrics row) {
+        if (row.getSketch() == null) {
+            return null;
+        }
+        try {
+            HyperLogLog sketch = HyperLogLog.fromBytes(row.getSketch());
+            // Written before the precision was changed; recomputed at the current precision
+            return sketch.precision() == precision ? sketch : null;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable unique purchaser sketch {}: {}", row.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static LocalDate settledEnd(Instant now) {
+        return dayOf(now.minus(SETTLE_TIME));
+    }
+
+    private static LocalDate dayOf(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
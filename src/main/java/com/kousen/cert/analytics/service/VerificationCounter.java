@@ -0,0 +1,173 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts certificate verifications in memory and writes them to the metadata
+ * table periodically. A burst of QR scans for one certificate becomes a
+ * single in-place increment instead of a read-modify-write per scan, which
+ * also can't lose updates to concurrent scans the way that could.
+ */
+@Service
+public class VerificationCounter {
+    private static final Logger logger = LoggerFactory.getLogger(VerificationCounter.class);
+
+    private final CertificateMetadataRepository metadataRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    // Entries dropped from the map, drained until no late scan is left on them
+    private final List<Retired> retiring = new ArrayList<>();
+
+    /**
+     * Verifications of one certificate since the last flush. Scans add to it
+     * without locking; only the flush takes the map's lock, to drop idle
+     * entries.
+     */
+    private static final class Pending {
+        final LongAdder count = new LongAdder();
+        final LongAccumulator lastVerifiedAt = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        // Set as the entry is dropped from the map
+        volatile boolean retired;
+
+        void add(long count, long verifiedAtMillis) {
+            this.count.add(count);
+            lastVerifiedAt.accumulate(verifiedAtMillis);
+        }
+    }
+
+    private record Retired(String certificateId, Pending counts) {}
+
+    private record Drained(long count, long lastVerifiedAt) {}
+
+    public VerificationCounter(CertificateMetadataRepository metadataRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.metadataRepository = metadataRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Records one verification of a certificate.
+     */
+    public void record(String certificateId, Instant verifiedAt) {
+        add(certificateId, 1, verifiedAt.toEpochMilli());
+    }
+
+    /**
+     * Writes the accumulated counts in one transaction, one in-place update
+     * per certificate. If the transaction fails, the counts are put back for
+     * the next flush.
+     */
+    @Scheduled(fixedDelayString = "${certificate.verification.counter.flush-interval:PT10S}")
+    public void flush() {
+        Map<String, Drained> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach((certificateId, drained) -> {
+                if (metadataRepository.addVerifications(certificateId, Math.toIntExact(drained.count()),
+                        Instant.ofEpochMilli(drained.lastVerifiedAt())) == 0) {
+                    logger.debug("Dropped {} verifications of unknown certificate {}",
+                            drained.count(), certificateId);
+                }
+            }));
+            logger.debug("Flushed verification counts for {} certificates", batch.size());
+        } catch (RuntimeException e) {
+            logger.warn("Could not write verification counts, will retry: {}", e.getMessage());
+            batch.forEach((certificateId, drained) ->
+                    add(certificateId, drained.count(), drained.lastVerifiedAt()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Number of certificates with counts waiting to be written.
+     */
+    int pendingCertificates() {
+        return (int) pending.values().stream().filter(counts -> counts.count.sum() != 0).count();
+    }
+
+    /**
+     * Takes the counts accumulated since the last flush. Certificates that
+     * were idle since then are dropped from the map, so it only holds
+     * recently verified ones.
+     * <p>
+     * A scan that had already read a dropped entry from the map adds to it
+     * and then sees it retired. If it saw the entry live, its count is on
+     * the entry and is picked up from {@code retiring} by the next drain.
+     * If it saw the entry retired, it takes its count back off and retries
+     * on a fresh entry. A drain that catches the count between those two
+     * steps writes it once and its removal once, so the total stays exact.
+     */
+    private synchronized Map<String, Drained> drain() {
+        Map<String, Drained> batch = new HashMap<>();
+        retiring.removeIf(retired -> {
+            long count = retired.counts().count.sumThenReset();
+            if (count != 0) {
+                merge(batch, retired.certificateId(), count, retired.counts().lastVerifiedAt.getThenReset());
+            }
+            return count == 0;
+        });
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            Pending counts = entry.getValue();
+            long count = counts.count.sumThenReset();
+            long lastVerifiedAt = counts.lastVerifiedAt.getThenReset();
+            if (count != 0) {
+                merge(batch, entry.getKey(), count, lastVerifiedAt);
+            } else {
+                pending.computeIfPresent(entry.getKey(), (id, current) -> {
+                    if (current != counts) {
+                        return current;
+                    }
+                    current.retired = true;
+                    retiring.add(new Retired(id, current));
+                    return null;
+                });
+            }
+        }
+        batch.values().removeIf(drained -> drained.count() == 0);
+        return batch;
+    }
+
+    private static void merge(Map<String, Drained> batch, String certificateId, long count, long lastVerifiedAt) {
+        // A scan landing between the two resets can leave a count without its time
+        long verifiedAt = lastVerifiedAt != Long.MIN_VALUE ? lastVerifiedAt : System.currentTimeMillis();
+        batch.merge(certificateId, new Drained(count, verifiedAt), (earlier, later) ->
+                new Drained(earlier.count() + later.count(), Math.max(earlier.lastVerifiedAt(), later.lastVerifiedAt())));
+    }
+
+    private void add(String certificateId, long count, long verifiedAtMillis) {
+        while (true) {
+            Pending counts = pending.get(certificateId);
+            if (counts == null) {
+                counts = pending.computeIfAbsent(certificateId, id -> new Pending());
+            }
+            counts.add(count, verifiedAtMillis);
+            if (!counts.retired) {
+                return;
+            }
+            // Dropped by a flush that may not have seen this scan
+            counts.count.add(-count);
+        }
+    }
+}
@@ -12,10 +12,22 @@ public class ServerUrlConfig {
     @Value("${certificate.verification.base-url:}")
     private String baseUrl;
 
+    @Value("${certificate.verification.stable-urls:false}")
+    private boolean stableUrls;
+
     /**
      * Returns the configured base URL for certificate verification.
      */
     public String getUrl() {
         return baseUrl;
     }
+
+    /**
+     * Whether verification URLs leave out the issue date, so the same
+     * certificate always encodes the same URL (and QR code). The verification
+     * page then shows the issue date from the certificate's records.
+     */
+    public boolean isStableUrls() {
+        return stableUrls;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.kousen.cert.controller;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.model.CertificateBatchRequest;
+import com.kousen.cert.service.CertificateBatchService;
+import com.kousen.cert.service.CertificateBatchService.BatchItem;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Issues many certificates in one request, e.g. for a workshop, and returns
+ * them as a single ZIP archive or, with {@code format=pdf}, as one multi-page PDF.
+ */
+@RestController
+@RequestMapping("/api/certificates/batch")
+public class CertificateBatchController {
+
+    private static final MediaType APPLICATION_ZIP = MediaType.parseMediaType("application/zip");
+
+    private final CertificateBatchService batchService;
+
+    public CertificateBatchController(CertificateBatchService batchService) {
+        this.batchService = batchService;
+    }
+
+    @PostMapping(produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> create(@Valid @RequestBody CertificateBatchRequest batch,
+                                                        HttpServletRequest request) throws InterruptedException {
+        List<BatchItem> items;
+        try {
+            items = batchService.issueAll(batch.certificates(), AnalyticsRequestContext.from(request));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        long issued = items.stream().filter(BatchItem::succeeded).count();
+
+        StreamingResponseBody body = out -> batchService.writeArchive(items, out);
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_ZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"certificates.zip\"")
+                .header("X-Certificates-Issued", String.valueOf(issued))
+                .header("X-Certificates-Failed", String.valueOf(items.size() - issued))
+                .body(body);
+    }
+
+    /**
+     * Issues the batch as one PDF with a certificate per page, in request order.
+     */
+    @PostMapping(params = "format=pdf", produces = "application/pdf")
+    public ResponseEntity<Resource> createCombined(@Valid @RequestBody CertificateBatchRequest batch,
+                                                   HttpServletRequest request) throws Exception {
+        CertificateBatchService.CombinedBatch combined =
+                batchService.issueCombined(batch.certificates(), AnalyticsRequestContext.from(request));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"certificates.pdf\"")
+                .header("X-Certificate-Status",
+                        "Self-signed - May show warnings in PDF readers")
+                .header("X-Certificates-Issued", String.valueOf(combined.certificateIds().size()))
+                .body(new FileSystemResource(combined.stored().path()));
+    }
+}
@@ -8,7 +8,6 @@ import com.kousen.cert.service.*;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -16,6 +15,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -23,11 +23,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @RestController
@@ -35,25 +35,28 @@ import java.util.stream.Collectors;
 public class CertificateController {
     private static final Logger logger = LoggerFactory.getLogger(CertificateController.class);
 
-    private final PdfService pdfService;
-    private final PdfSigner pdfSigner;
-    private final PdfSignatureVerifier signatureVerifier;
+    // Request attributes understood by Tomcat's NIO connector for zero-copy file transfer
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final CertificateIssuanceService issuanceService;
+    private final CertificateVerificationService verificationService;
     private final KeyStoreProvider keyStoreProvider;
     private final CertificateStorageService storageService;
     private final AnalyticsService analyticsService;
     private final CertificateMetadataService metadataService;
 
     public CertificateController(
-            PdfService pdfService,
-            PdfSigner pdfSigner,
-            PdfSignatureVerifier signatureVerifier,
+            CertificateIssuanceService issuanceService,
+            CertificateVerificationService verificationService,
             KeyStoreProvider keyStoreProvider,
             CertificateStorageService storageService,
             AnalyticsService analyticsService,
             CertificateMetadataService metadataService) {
-        this.pdfService = pdfService;
-        this.pdfSigner = pdfSigner;
-        this.signatureVerifier = signatureVerifier;
+        this.issuanceService = issuanceService;
+        this.verificationService = verificationService;
         this.keyStoreProvider = keyStoreProvider;
         this.storageService = storageService;
         this.analyticsService = analyticsService;
@@ -62,68 +65,24 @@ public class CertificateController {
 
     @PostMapping(produces = "application/pdf")
     public ResponseEntity<Resource> create(@Valid @RequestBody CertificateRequest req, HttpServletRequest request) throws Exception {
-        long startTime = System.currentTimeMillis();
-        // Generated before the PDF so the embedded QR code can reference it
-        String certificateId = UUID.randomUUID().toString();
-        AnalyticsRequestContext requestContext = AnalyticsRequestContext.from(request);
-
-        Path unsigned = null;
-        Path signed = null;
-        try {
-            // Generate the certificate
-            unsigned = pdfService.createPdf(req, certificateId);
-            signed = pdfSigner.sign(unsigned);
-
-            // Store a copy of the certificate
-            Path storedCertificate = storageService.storeCertificate(signed, req);
-            logger.info("Certificate stored successfully at: {}", storedCertificate);
-
-            // Track analytics
-            long duration = System.currentTimeMillis() - startTime;
-            analyticsService.trackCertificateGenerated(
-                certificateId,
-                req.purchaserName(),
-                req.purchaserEmail().orElse(null),
-                req.bookTitle(),
-                duration,
-                requestContext
-            );
-
-            // Save metadata
-            metadataService.saveCertificateMetadata(certificateId, storedCertificate);
+        CertificateIssuanceService.IssuedCertificate issued =
+                issuanceService.issue(req, AnalyticsRequestContext.from(request));
 
-            // Return the certificate in the response (read into memory so the
-            // temporary files can be deleted before the response is streamed)
-            byte[] pdfBytes = Files.readAllBytes(signed);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"certificate.pdf\"")
-                    .header("X-Certificate-Status",
-                            "Self-signed - May show warnings in PDF readers")
-                    .header("X-Certificate-Id", certificateId)
-                    .body(new ByteArrayResource(pdfBytes));
-        } catch (Exception e) {
-            analyticsService.trackCertificateError(e.getMessage(), requestContext);
-            throw e;
-        } finally {
-            deleteQuietly(unsigned);
-            deleteQuietly(signed);
-        }
-    }
-
-    private void deleteQuietly(Path path) {
-        if (path == null) {
-            return;
-        }
-        try {
-            Files.deleteIfExists(path);
-        } catch (Exception e) {
-            logger.warn("Failed to delete temporary PDF: {}", path, e);
-        }
+        // Stream the response from the stored copy so the PDF is never
+        // buffered in memory
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"certificate.pdf\"")
+                .header("X-Certificate-Status",
+                        "Self-signed - May show warnings in PDF readers")
+                .header("X-Certificate-Id", issued.certificateId())
+                .body(new FileSystemResource(issued.stored().path()));
     }
 
     /**
      * Verifies the digital signature of an uploaded PDF and reports whether it
-     * is intact and was signed by this service's certificate.
+     * is intact and was signed by this service's certificate. The upload is
+     * moved to a temporary file and verified from there, so large files are
+     * never read onto the heap.
      *
      * @param file The PDF to verify
      * @return Signature verification details
@@ -134,7 +93,14 @@ public class CertificateController {
         if (file.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Uploaded file is empty");
         }
-        return ResponseEntity.ok(signatureVerifier.verify(file.getBytes()));
+        Path spooled = Files.createTempFile("verify-", ".pdf");
+        try {
+            // Moves the part the container already spooled to disk, where possible
+            file.transferTo(spooled.toFile());
+            return ResponseEntity.ok(verificationService.verify(spooled));
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
     }
 
     /**
@@ -195,7 +161,15 @@ public class CertificateController {
                         }
                         return details;
                     })
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toCollection(ArrayList::new));
+            for (var archived : storageService.listArchivedCertificates()) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("filename", archived.filename());
+                details.put("size", archived.size());
+                details.put("lastModified", archived.lastModified().toString());
+                details.put("archived", true);
+                certificateDetails.add(details);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("storagePath", storageService.getStoragePath().toString());
@@ -211,36 +185,87 @@ public class CertificateController {
     
     /**
      * Retrieves a stored certificate by filename.
-     * 
+     * <p>
+     * The response carries the stored SHA-256 hash as its {@code ETag}, so
+     * {@code If-None-Match} (and {@code If-Modified-Since}) requests are answered
+     * with 304 before the file is touched. Byte ranges are served from the file
+     * by Spring's resource region support, and on Tomcat a full download of a
+     * certificate in the storage directory is handed to the connector's
+     * sendfile support so the PDF never passes through the Java heap.
+     * Certificates that have moved to the archive tier are served the same way,
+     * decompressed as they stream.
+     *
      * @param filename The certificate filename
      * @return The certificate PDF file
      */
     @GetMapping("/stored/{filename:.+}")
-    public ResponseEntity<FileSystemResource> getStoredCertificate(@PathVariable String filename, HttpServletRequest request) {
+    public ResponseEntity<Resource> getStoredCertificate(@PathVariable String filename,
+                                                         HttpServletRequest request,
+                                                         WebRequest webRequest) {
         try {
-            Path certificatePath = storageService.getCertificate(filename);
-            FileSystemResource resource = new FileSystemResource(certificatePath);
-            
-            // Track download if metadata exists
+            Resource certificate = storageService.loadCertificate(filename);
+            long size = certificate.contentLength();
+            long lastModified = certificate.lastModified();
+
             var metadata = metadataService.getCertificateMetadataByFilename(filename);
+            String etag = metadata != null && metadata.getFileHash() != null
+                    ? "\"" + metadata.getFileHash() + "\""
+                    : null;
+            boolean notModified = etag != null
+                    ? webRequest.checkNotModified(etag, lastModified)
+                    : webRequest.checkNotModified(lastModified);
+            if (notModified) {
+                // Spring has already set the 304 status and validator headers
+                return null;
+            }
+
+            // Track download if metadata exists
             if (metadata != null) {
                 analyticsService.trackCertificateDownloaded(
                         metadata.getCertificateId(),
                         AnalyticsRequestContext.from(request)
                 );
             }
-            
-            return ResponseEntity.ok()
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_PDF)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
                     .header("X-Certificate-Status",
                             "Self-signed - May show warnings in PDF readers")
-                    .body(resource);
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .lastModified(lastModified);
+            if (etag != null) {
+                response.eTag(etag);
+            }
+
+            if (certificate.isFile() && request.getHeader(HttpHeaders.RANGE) == null
+                    && sendfile(request, certificate.getFile().toPath(), size)) {
+                // The connector writes the file after the headers are committed
+                return response.contentLength(size).build();
+            }
+            // Archived certificates are inflated from their pack as they stream
+            return response.body(certificate);
         } catch (IOException e) {
             logger.error("Certificate not found: {}", filename, e);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Certificate not found", e);
         }
     }
+
+    /**
+     * Asks Tomcat to transfer the whole file with sendfile(2) when the connector
+     * supports it, the same mechanism its DefaultServlet uses for static files.
+     *
+     * @return true if the connector will write the body, false if the caller must
+     */
+    private boolean sendfile(HttpServletRequest request, Path file, long size) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, size);
+        return true;
+    }
     
     @GetMapping("/signature-info")
     public ResponseEntity<Map<String, String>> getSignatureInfo() {
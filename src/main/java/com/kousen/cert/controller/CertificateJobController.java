@@ -0,0 +1,82 @@
+package com.kousen.cert.controller;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateJobService;
+import com.kousen.cert.service.CertificateJobService.JobState;
+import com.kousen.cert.service.CertificateJobService.JobStatus;
+import com.kousen.cert.service.CertificateStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous certificate generation. Clients submit a request, receive a
+ * job ID immediately and poll for the result instead of holding a connection
+ * open while the certificate is generated and signed.
+ */
+@RestController
+@RequestMapping("/api/certificates/jobs")
+public class CertificateJobController {
+
+    private final CertificateJobService jobService;
+    private final CertificateStorageService storageService;
+
+    public CertificateJobController(CertificateJobService jobService,
+                                    CertificateStorageService storageService) {
+        this.jobService = jobService;
+        this.storageService = storageService;
+    }
+
+    @PostMapping
+    public ResponseEntity<JobStatus> submit(@Valid @RequestBody CertificateRequest req, HttpServletRequest request) {
+        try {
+            JobStatus status = jobService.submit(req, AnalyticsRequestContext.from(request));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/certificates/jobs/" + status.jobId()))
+                    .body(status);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public JobStatus getStatus(@PathVariable String jobId) {
+        return jobService.getStatus(jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found"));
+    }
+
+    /**
+     * Downloads the certificate produced by a finished job.
+     */
+    @GetMapping(value = "/{jobId}/certificate", produces = "application/pdf")
+    public ResponseEntity<Resource> getCertificate(@PathVariable String jobId) {
+        JobStatus status = getStatus(jobId);
+        if (status.state() != JobState.SUCCEEDED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job is " + status.state());
+        }
+        try {
+            Resource certificate = storageService.loadCertificate(status.filename());
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"certificate.pdf\"")
+                    .header("X-Certificate-Status",
+                            "Self-signed - May show warnings in PDF readers")
+                    .body(certificate);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Certificate not found");
+        }
+    }
+}
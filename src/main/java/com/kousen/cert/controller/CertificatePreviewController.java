@@ -0,0 +1,51 @@
+package com.kousen.cert.controller;
+
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificatePreviewService;
+import com.kousen.cert.service.CertificatePreviewService.Preview;
+import com.kousen.cert.service.CertificatePreviewService.PreviewFormat;
+import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Shows what a certificate will look like before it is issued. Previews are
+ * unsigned, are not stored and do not count as issued certificates.
+ */
+@RestController
+@RequestMapping("/api/certificates/preview")
+public class CertificatePreviewController {
+
+    private final CertificatePreviewService previewService;
+
+    public CertificatePreviewController(CertificatePreviewService previewService) {
+        this.previewService = previewService;
+    }
+
+    @PostMapping
+    public ResponseEntity<byte[]> preview(@Valid @RequestBody CertificateRequest req,
+                                          @RequestParam(name = "format", defaultValue = "png") String format,
+                                          @RequestParam(name = "dpi", defaultValue = "72") int dpi) throws IOException {
+        PreviewFormat previewFormat = PreviewFormat.from(format);
+        Preview preview = previewService.render(req, previewFormat, dpi);
+
+        String filename = "certificate-preview." + previewFormat.name().toLowerCase(Locale.ROOT);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(previewFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
+                .header("X-Certificate-Preview", "Unsigned preview - not a valid certificate")
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(10)).cachePrivate())
+                .body(preview.content());
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.net.URI;
 import java.time.Instant;
@@ -84,4 +85,19 @@ public class GlobalExceptionHandler {
         
         return problemDetail;
     }
+
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ProblemDetail handleMaxUploadSizeExceeded(MaxUploadSizeExceededException ex) {
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
+                HttpStatus.PAYLOAD_TOO_LARGE, "The uploaded file exceeds the maximum allowed size");
+
+        problemDetail.setTitle("Payload Too Large");
+        problemDetail.setType(URI.create("https://api.certificate-service.com/errors/payload-too-large"));
+        problemDetail.setProperty("timestamp", Instant.now());
+        if (ex.getMaxUploadSize() > 0) {
+            problemDetail.setProperty("maxUploadSize", ex.getMaxUploadSize());
+        }
+
+        return problemDetail;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.kousen.cert.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousen.cert.service.BatchVerificationService;
+import com.kousen.cert.service.BatchVerificationService.FileVerification;
+import com.kousen.cert.service.BatchVerificationService.SpooledFile;
+import com.kousen.cert.service.BatchVerificationService.VerificationBatch;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Verifies many PDFs in one request, uploaded either as several {@code files}
+ * parts or as one ZIP {@code archive}. Results are streamed back as
+ * newline-delimited JSON, one line per file in the order they finish.
+ */
+@RestController
+@RequestMapping("/api/certificates/verify/batch")
+public class VerificationBatchController {
+
+    private final BatchVerificationService batchVerificationService;
+    private final ObjectMapper objectMapper;
+
+    public VerificationBatchController(BatchVerificationService batchVerificationService,
+                                       ObjectMapper objectMapper) {
+        this.batchVerificationService = batchVerificationService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> verify(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) MultipartFile archive) throws IOException {
+        // Spool before returning: the container cleans up multipart parts when the request ends
+        List<SpooledFile> spooled = archive != null && !archive.isEmpty()
+                ? batchVerificationService.spoolArchive(archive.getInputStream())
+                : spool(files != null ? files : List.of());
+        VerificationBatch batch;
+        try {
+            batch = batchVerificationService.submit(spooled);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+
+        StreamingResponseBody body = out -> {
+            try {
+                batch.forEachResult(item -> writeLine(out, item));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch verification interrupted");
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header("X-Certificates-Submitted", String.valueOf(spooled.size()))
+                .body(body);
+    }
+
+    private List<SpooledFile> spool(List<MultipartFile> files) throws IOException {
+        List<MultipartFile> uploads = files.stream().filter(file -> !file.isEmpty()).toList();
+        batchVerificationService.checkBatchSize(uploads.size());
+        List<SpooledFile> spooled = new ArrayList<>(uploads.size());
+        try {
+            for (MultipartFile file : uploads) {
+                Path path = Files.createTempFile("verify-batch-", ".pdf");
+                spooled.add(new SpooledFile(file.getOriginalFilename(), path));
+                file.transferTo(path.toFile());
+            }
+            return spooled;
+        } catch (IOException e) {
+            for (SpooledFile file : spooled) {
+                Files.deleteIfExists(file.path());
+            }
+            throw e;
+        }
+    }
+
+    // Called on the streaming thread only, so lines never interleave
+    private void writeLine(OutputStream out, FileVerification item) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(item));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
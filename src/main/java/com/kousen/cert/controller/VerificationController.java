@@ -1,9 +1,9 @@
 package com.kousen.cert.controller;
 
 import com.kousen.cert.analytics.model.AnalyticsRequestContext;
-import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.model.IssuedCertificate;
 import com.kousen.cert.analytics.service.AnalyticsService;
-import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +16,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import java.security.MessageDigest;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 
 @Controller
 public class VerificationController {
@@ -23,7 +25,7 @@ public class VerificationController {
     private static final Logger logger = LoggerFactory.getLogger(VerificationController.class);
     private final String certificateFingerprint;
     private final AnalyticsService analyticsService;
-    private final CertificateMetadataService metadataService;
+    private final IssuedCertificateService issuedCertificateService;
 
     // Default constructor for tests
     public VerificationController() {
@@ -36,17 +38,17 @@ public class VerificationController {
 
     VerificationController(String certificateFingerprint,
                            AnalyticsService analyticsService,
-                           CertificateMetadataService metadataService) {
+                           IssuedCertificateService issuedCertificateService) {
         this.certificateFingerprint = certificateFingerprint;
         this.analyticsService = analyticsService;
-        this.metadataService = metadataService;
+        this.issuedCertificateService = issuedCertificateService;
     }
 
     @Autowired
     public VerificationController(com.kousen.cert.service.KeyStoreProvider keyStoreProvider,
                                   AnalyticsService analyticsService,
-                                  CertificateMetadataService metadataService) {
-        this(generateCertificateFingerprint(keyStoreProvider), analyticsService, metadataService);
+                                  IssuedCertificateService issuedCertificateService) {
+        this(generateCertificateFingerprint(keyStoreProvider), analyticsService, issuedCertificateService);
     }
 
     @GetMapping("/verify-certificate")
@@ -71,13 +73,18 @@ public class VerificationController {
         String recordStatus = "NO_ID";
         if (certificateId != null && !certificateId.isEmpty()) {
             recordStatus = "UNAVAILABLE";
-            if (metadataService != null) {
-                CertificateMetadata metadata = metadataService.getCertificateMetadata(certificateId);
-                if (metadata != null) {
+            if (issuedCertificateService != null) {
+                IssuedCertificate issued = issuedCertificateService.lookup(certificateId).orElse(null);
+                if (issued != null) {
                     recordStatus = "FOUND";
                     model.addAttribute("certificateId", certificateId);
-                    model.addAttribute("issuedAt", metadata.getCreatedAt());
-                    model.addAttribute("fileHash", metadata.getFileHash());
+                    model.addAttribute("issuedAt", issued.issuedAt());
+                    model.addAttribute("fileHash", issued.fileHash());
+                    if (issueDate == null && issued.issuedAt() != null) {
+                        // Stable verification URLs carry no date; use the issuance record's
+                        model.addAttribute("issueDate",
+                                LocalDate.ofInstant(issued.issuedAt(), ZoneOffset.UTC).toString());
+                    }
                 } else {
                     recordStatus = "NOT_FOUND";
                     model.addAttribute("certificateId", certificateId);
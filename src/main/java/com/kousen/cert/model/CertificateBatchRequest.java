@@ -0,0 +1,15 @@
+package com.kousen.cert.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Request object for generating many certificates in one call.
+ */
+public record CertificateBatchRequest(
+        @NotEmpty(message = "At least one certificate is required")
+        List<@Valid CertificateRequest> certificates
+) {
+}
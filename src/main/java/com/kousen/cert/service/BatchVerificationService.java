@@ -0,0 +1,235 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Verifies many uploaded PDFs in one call, e.g. a support inbox's worth of
+ * forwarded certificates. Files are verified in parallel on a bounded pool
+ * and each result is handed back as soon as it is ready, so callers can
+ * stream them instead of waiting for the slowest file. The pool's backlog is
+ * bounded too, and a batch that doesn't fit is rejected up front.
+ */
+@Service
+public class BatchVerificationService {
+    private static final Logger logger = LoggerFactory.getLogger(BatchVerificationService.class);
+
+    // Streamed to the client; PDFBox and BouncyCastle messages describe
+    // server internals, so the cause is only logged
+    static final String FILE_FAILED_MESSAGE = "Verification failed";
+
+    private final CertificateVerificationService verificationService;
+    private final BatchWorkerPool workers;
+    private final int maxFiles;
+    private final long maxFileSize;
+
+    /**
+     * An upload spooled to a temporary file, awaiting verification.
+     *
+     * @param filename the name the client gave the file
+     * @param path     the temporary copy
+     */
+    public record SpooledFile(String filename, Path path) {}
+
+    /**
+     * Outcome of verifying one file in a batch. Exactly one of {@code result}
+     * and {@code error} is non-null.
+     *
+     * @param index    position of the file in the upload
+     * @param filename the name the client gave the file
+     * @param result   signature verification details
+     * @param error    why the file couldn't be verified at all
+     */
+    public record FileVerification(int index, String filename, VerificationResult result, String error) {}
+
+    /**
+     * A batch accepted by the worker pool, whose results are waiting to be read.
+     */
+    @FunctionalInterface
+    public interface VerificationBatch {
+        /**
+         * Passes each result to {@code onResult} on the calling thread in
+         * completion order, then deletes the spooled files. Call it once;
+         * the files are deleted even if it doesn't complete.
+         *
+         * @throws InterruptedException if interrupted while waiting for the workers
+         */
+        void forEachResult(Consumer<FileVerification> onResult) throws InterruptedException;
+    }
+
+    public BatchVerificationService(CertificateVerificationService verificationService,
+                                    @Value("${certificate.verification.batch.workers:0}") int workers,
+                                    @Value("${certificate.verification.batch.queue-capacity:200}") int queueCapacity,
+                                    @Value("${certificate.verification.batch.max-files:100}") int maxFiles,
+                                    @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxFileSize) {
+        this.verificationService = verificationService;
+        this.maxFiles = maxFiles;
+        this.maxFileSize = maxFileSize.toBytes();
+        // Hashing and signature checks are CPU-bound, so workers default to one per core
+        this.workers = new BatchWorkerPool("certificate-verify-", workers, queueCapacity);
+        if (maxFiles > this.workers.capacity()) {
+            throw new IllegalArgumentException("Verification queue capacity " + queueCapacity
+                    + " can never hold a batch of the maximum size " + maxFiles);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if there are no files, or more than the configured maximum
+     */
+    public void checkBatchSize(int fileCount) {
+        if (fileCount == 0) {
+            throw new IllegalArgumentException("No PDF files to verify");
+        }
+        if (fileCount > maxFiles) {
+            throw new IllegalArgumentException(
+                    "Batch of " + fileCount + " files exceeds the maximum of " + maxFiles);
+        }
+    }
+
+    /**
+     * Extracts the PDFs in a ZIP archive to temporary files. Directories and
+     * entries without a {@code .pdf} extension are skipped.
+     *
+     * @param archive The ZIP archive
+     * @return The spooled PDFs, in archive order
+     * @throws IllegalArgumentException if the archive holds no PDFs, too many,
+     *                                  or one larger than the upload limit
+     * @throws IOException              if the archive can't be read
+     */
+    public List<SpooledFile> spoolArchive(InputStream archive) throws IOException {
+        List<SpooledFile> spooled = new ArrayList<>();
+        try (var zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || !entry.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                    continue;
+                }
+                checkBatchSize(spooled.size() + 1);
+                Path path = Files.createTempFile("verify-batch-", ".pdf");
+                spooled.add(new SpooledFile(entry.getName(), path));
+                copyLimited(zip, path, entry.getName());
+            }
+            checkBatchSize(spooled.size());
+            return spooled;
+        } catch (IOException | RuntimeException e) {
+            delete(spooled);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues every file on the worker pool. Verification starts right away;
+     * the results are read from the returned batch.
+     *
+     * @param files The spooled uploads; this method takes ownership of them
+     * @return The accepted batch
+     * @throws RejectedExecutionException if the workers' backlog can't take the
+     *                                    whole batch; the files are deleted
+     */
+    public VerificationBatch submit(List<SpooledFile> files) {
+        try {
+            workers.reserve(files.size());
+        } catch (RejectedExecutionException e) {
+            delete(files);
+            throw e;
+        }
+        CompletionService<FileVerification> completion = new ExecutorCompletionService<>(workers);
+        List<Future<FileVerification>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            SpooledFile file = files.get(i);
+            futures.add(completion.submit(() -> verifyOne(index, file)));
+        }
+        return onResult -> {
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    onResult.accept(completion.take().get());
+                }
+            } catch (ExecutionException e) {
+                // verifyOne catches everything it can, so this is a programming error
+                throw new IllegalStateException("Verification worker failed", e.getCause());
+            } finally {
+                // Nothing left to do on success; stops the workers if the caller gave up
+                futures.forEach(future -> future.cancel(true));
+                delete(files);
+            }
+        };
+    }
+
+    /**
+     * Verifies every file on the worker pool, passing each result to
+     * {@code onResult} on the calling thread in completion order. The
+     * spooled files are deleted afterwards, whether or not the batch completes.
+     *
+     * @param files    The spooled uploads; this method takes ownership of them
+     * @param onResult Receives each result as soon as it is ready
+     * @throws RejectedExecutionException if the workers' backlog can't take the whole batch
+     * @throws InterruptedException       if interrupted while waiting for the workers
+     */
+    public void verifyAll(List<SpooledFile> files, Consumer<FileVerification> onResult) throws InterruptedException {
+        submit(files).forEachResult(onResult);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private FileVerification verifyOne(int index, SpooledFile file) {
+        try {
+            return new FileVerification(index, file.filename(), verificationService.verify(file.path()), null);
+        } catch (Exception e) {
+            logger.warn("Batch verification of {} failed", file.filename(), e);
+            return new FileVerification(index, file.filename(), null, FILE_FAILED_MESSAGE);
+        }
+    }
+
+    private void copyLimited(InputStream in, Path target, String filename) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                // Entry sizes in the ZIP header can't be trusted, so count what's actually inflated
+                if (total > maxFileSize) {
+                    throw new IllegalArgumentException(
+                            filename + " exceeds the maximum size of " + maxFileSize + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void delete(List<SpooledFile> files) {
+        for (SpooledFile file : files) {
+            try {
+                Files.deleteIfExists(file.path());
+            } catch (IOException e) {
+                logger.warn("Could not delete spooled upload {}", file.path(), e);
+            }
+        }
+    }
+}
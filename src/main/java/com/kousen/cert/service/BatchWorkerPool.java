@@ -0,0 +1,83 @@
+package com.kousen.cert.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed pool of platform workers behind a bounded backlog, for services
+ * that split one request into many tasks. A batch reserves a slot for every
+ * task before any is submitted, so it is either queued whole or rejected
+ * whole, and a rejected batch leaves no half-finished work behind.
+ */
+final class BatchWorkerPool implements Executor {
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int capacity;
+
+    /**
+     * @param threadNamePrefix prefix of the worker thread names
+     * @param workers          worker threads; 0 means one per core
+     * @param queueCapacity    tasks allowed to wait for a worker
+     */
+    BatchWorkerPool(String threadNamePrefix, int workers, int queueCapacity) {
+        // The tasks are CPU-bound, so more workers than cores only adds contention
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.capacity = poolSize + queueCapacity;
+        this.slots = new Semaphore(capacity);
+        // Sized to every slot, so a reserved task is never refused by the queue
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                Thread.ofPlatform().name(threadNamePrefix, 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Most tasks that can be running or waiting at once; a larger batch can
+     * never be reserved.
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Reserves slots for a batch. Exactly {@code tasks} tasks must then be
+     * passed to {@link #execute}; each frees its slot when it finishes.
+     *
+     * @throws RejectedExecutionException if the backlog can't take the whole batch
+     */
+    void reserve(int tasks) {
+        if (!slots.tryAcquire(tasks)) {
+            throw new RejectedExecutionException(
+                    "Backlog full: " + tasks + " tasks requested, " + slots.availablePermits() + " free");
+        }
+    }
+
+    /**
+     * Runs a task in a slot taken by {@link #reserve}.
+     */
+    @Override
+    public void execute(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Never ran, e.g. during shutdown; give the slot back
+            slots.release();
+            throw e;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
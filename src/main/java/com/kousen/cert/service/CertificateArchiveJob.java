@@ -0,0 +1,47 @@
+package com.kousen.cert.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduled job that moves stored certificates older than the configured age
+ * into the compressed archive tier. Downloads are unaffected: the storage
+ * service serves certificates from either tier.
+ */
+@Component
+public class CertificateArchiveJob {
+    private static final Logger logger = LoggerFactory.getLogger(CertificateArchiveJob.class);
+
+    private final CertificateStorageService storageService;
+    private final boolean enabled;
+    private final int archiveAfterDays;
+
+    public CertificateArchiveJob(CertificateStorageService storageService,
+                                 @Value("${certificate.archive.enabled:true}") boolean enabled,
+                                 @Value("${certificate.archive.after-days:30}") int archiveAfterDays) {
+        this.storageService = storageService;
+        this.enabled = enabled;
+        this.archiveAfterDays = archiveAfterDays;
+    }
+
+    /**
+     * Runs at 4:00 AM every day, after the metrics aggregation jobs.
+     */
+    @Scheduled(cron = "${certificate.archive.cron:0 0 4 * * ?}")
+    public void archiveOldCertificates() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int archived = storageService.archiveCertificatesOlderThan(Duration.ofDays(archiveAfterDays));
+            logger.info("Certificate archiving completed: {} certificates archived", archived);
+        } catch (Exception e) {
+            logger.error("Error archiving certificates", e);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.analytics.model.CertificateGeneration;
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateFilter;
+import com.kousen.cert.model.CertificateRequest;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Issues many certificates in one call. Layout, QR generation and signing run
+ * in parallel across cores; analytics events and metadata for the whole batch
+ * are then recorded with one repository call each instead of one per certificate.
+ * The workers have a bounded backlog, and a batch that doesn't fit is
+ * rejected before any of it is issued.
+ */
+@Service
+public class CertificateBatchService {
+    private static final Logger logger = LoggerFactory.getLogger(CertificateBatchService.class);
+
+    static final String MANIFEST_NAME = "manifest.csv";
+
+    // Written to the client's manifest; exception messages can carry file
+    // paths and other server details, so the cause is only logged
+    static final String ITEM_FAILED_MESSAGE = "Certificate generation failed";
+
+    private final CertificateIssuanceService issuanceService;
+    private final AnalyticsService analyticsService;
+    private final CertificateMetadataService metadataService;
+    private final IssuedCertificateFilter issuedFilter;
+    private final BatchWorkerPool workers;
+    private final int maxBatchSize;
+
+    /**
+     * Outcome of one request in a batch. Exactly one of {@code stored} and
+     * {@code error} is non-null.
+     */
+    public record BatchItem(int index,
+                            CertificateRequest request,
+                            String certificateId,
+                            CertificateStorageService.StoredCertificate stored,
+                            long durationMs,
+                            String error) {
+        public boolean succeeded() {
+            return stored != null;
+        }
+    }
+
+    /**
+     * A batch issued as one multi-page PDF.
+     *
+     * @param certificateIds the ID of each certificate, in page order
+     * @param stored         the stored combined PDF
+     */
+    public record CombinedBatch(List<String> certificateIds, CertificateStorageService.StoredCertificate stored) {}
+
+    public CertificateBatchService(CertificateIssuanceService issuanceService,
+                                   AnalyticsService analyticsService,
+                                   CertificateMetadataService metadataService,
+                                   IssuedCertificateFilter issuedFilter,
+                                   @Value("${certificate.batch.workers:0}") int workers,
+                                   @Value("${certificate.batch.queue-capacity:1000}") int queueCapacity,
+                                   @Value("${certificate.batch.max-size:500}") int maxBatchSize) {
+        this.issuanceService = issuanceService;
+        this.analyticsService = analyticsService;
+        this.metadataService = metadataService;
+        this.issuedFilter = issuedFilter;
+        this.maxBatchSize = maxBatchSize;
+        // Rendering and signing are CPU-bound, so workers default to one per core
+        this.workers = new BatchWorkerPool("certificate-batch-", workers, queueCapacity);
+        if (maxBatchSize > this.workers.capacity()) {
+            throw new IllegalArgumentException("Batch queue capacity " + queueCapacity
+                    + " can never hold a batch of the maximum size " + maxBatchSize);
+        }
+    }
+
+    /**
+     * Generates, signs and stores every certificate in the batch. A failure
+     * affects only its own item; the rest of the batch is still issued.
+     *
+     * @param requests       The certificate requests, in order
+     * @param requestContext Client details for analytics
+     * @return One item per request, in request order
+     * @throws IllegalArgumentException   if the batch exceeds the configured maximum size
+     * @throws RejectedExecutionException if the workers' backlog can't take the whole batch
+     * @throws InterruptedException       if interrupted while waiting for the workers
+     */
+    public List<BatchItem> issueAll(List<CertificateRequest> requests,
+                                    AnalyticsRequestContext requestContext) throws InterruptedException {
+        checkBatchSize(requests);
+
+        workers.reserve(requests.size());
+        List<Future<BatchItem>> futures = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            int index = i;
+            CertificateRequest req = requests.get(i);
+            FutureTask<BatchItem> task = new FutureTask<>(() -> issueOne(index, req));
+            workers.execute(task);
+            futures.add(task);
+        }
+
+        List<BatchItem> items = new ArrayList<>(requests.size());
+        try {
+            for (Future<BatchItem> future : futures) {
+                items.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            // issueOne catches everything it can, so this is a programming error
+            throw new IllegalStateException("Batch worker failed", e.getCause());
+        }
+
+        recordBatch(items, requestContext);
+        return items;
+    }
+
+    /**
+     * Issues the whole batch as one PDF with a certificate per page, signed
+     * once. Every certificate gets its own ID and metadata entry, all pointing
+     * at the same stored file.
+     *
+     * @param requests       The certificate requests, in page order
+     * @param requestContext Client details for analytics
+     * @return The certificate IDs and the stored PDF
+     * @throws IllegalArgumentException if the batch exceeds the configured maximum size
+     * @throws Exception                if generation, signing or storage fails
+     */
+    public CombinedBatch issueCombined(List<CertificateRequest> requests,
+                                       AnalyticsRequestContext requestContext) throws Exception {
+        checkBatchSize(requests);
+
+        long startTime = System.currentTimeMillis();
+        List<String> certificateIds = requests.stream()
+                .map(req -> TimeOrderedIds.next())
+                .toList();
+        CertificateStorageService.StoredCertificate stored;
+        try {
+            stored = issuanceService.produceCombined(requests, certificateIds);
+        } catch (Exception e) {
+            analyticsService.trackCertificateError(e.getMessage(), requestContext);
+            throw e;
+        }
+
+        // Spread the shared layout and signing time evenly over the pages
+        long durationMs = (System.currentTimeMillis() - startTime) / requests.size();
+        List<BatchItem> items = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            items.add(new BatchItem(i, requests.get(i), certificateIds.get(i), stored, durationMs, null));
+        }
+        recordBatch(items, requestContext);
+        return new CombinedBatch(certificateIds, stored);
+    }
+
+    /**
+     * Writes the issued certificates as a ZIP archive, followed by a CSV
+     * manifest listing every item in the batch, including failures.
+     */
+    public void writeArchive(List<BatchItem> items, OutputStream out) throws IOException {
+        try (var zip = new ZipOutputStream(out)) {
+            // PDF content streams are already compressed
+            zip.setLevel(Deflater.BEST_SPEED);
+            for (BatchItem item : items) {
+                if (item.succeeded()) {
+                    zip.putNextEntry(new ZipEntry(item.stored().path().getFileName().toString()));
+                    Files.copy(item.stored().path(), zip);
+                    zip.closeEntry();
+                }
+            }
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zip.write(manifest(items).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private void checkBatchSize(List<CertificateRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "Batch of " + requests.size() + " exceeds the maximum of " + maxBatchSize + " certificates");
+        }
+    }
+
+    private BatchItem issueOne(int index, CertificateRequest req) {
+        long startTime = System.currentTimeMillis();
+        String certificateId = TimeOrderedIds.next();
+        try {
+            CertificateStorageService.StoredCertificate stored = issuanceService.produce(req, certificateId);
+            return new BatchItem(index, req, certificateId, stored, System.currentTimeMillis() - startTime, null);
+        } catch (Exception e) {
+            logger.warn("Batch item {} failed for {}", index, req.purchaserName(), e);
+            return new BatchItem(index, req, certificateId, null, System.currentTimeMillis() - startTime,
+                    ITEM_FAILED_MESSAGE);
+        }
+    }
+
+    private void recordBatch(List<BatchItem> items, AnalyticsRequestContext requestContext) {
+        List<CertificateGeneration> generations = new ArrayList<>();
+        List<CertificateMetadata> metadata = new ArrayList<>();
+        String signerFingerprint = issuanceService.signerFingerprint();
+        for (BatchItem item : items) {
+            if (item.succeeded()) {
+                CertificateRequest req = item.request();
+                generations.add(new CertificateGeneration(item.certificateId(), req.purchaserName(),
+                        req.purchaserEmail().orElse(null), req.bookTitle(), item.durationMs()));
+
+                CertificateMetadata entry = new CertificateMetadata(
+                        item.certificateId(), item.stored().path().getFileName().toString());
+                entry.setFileHash(item.stored().sha256());
+                entry.setFileSize(item.stored().size());
+                entry.setSignerFingerprint(signerFingerprint);
+                metadata.add(entry);
+                issuedFilter.add(item.certificateId());
+            } else {
+                analyticsService.trackCertificateError(item.error(), requestContext);
+            }
+        }
+        if (!generations.isEmpty()) {
+            analyticsService.trackCertificatesGenerated(generations, requestContext);
+            metadataService.saveAllCertificateMetadata(metadata);
+        }
+        logger.info("Batch issued {} of {} certificates", generations.size(), items.size());
+    }
+
+    private static String manifest(List<BatchItem> items) {
+        StringBuilder csv = new StringBuilder("index,certificateId,purchaserName,bookTitle,filename,sha256,status,error\n");
+        for (BatchItem item : items) {
+            csv.append(item.index()).append(',')
+                    .append(item.succeeded() ? item.certificateId() : "").append(',')
+                    .append(csvField(item.request().purchaserName())).append(',')
+                    .append(csvField(item.request().bookTitle())).append(',')
+                    .append(item.succeeded() ? item.stored().path().getFileName() : "").append(',')
+                    .append(item.succeeded() ? item.stored().sha256() : "").append(',')
+                    .append(item.succeeded() ? "ISSUED" : "FAILED").append(',')
+                    .append(item.succeeded() ? "" : csvField(item.error()))
+                    .append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static String csvField(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
@@ -0,0 +1,163 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateFilter;
+import com.kousen.cert.model.CertificateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs the full issuance pipeline for a certificate: QR code and layout,
+ * signing, storage, analytics and metadata. Shared by the synchronous API and
+ * the asynchronous job queue.
+ */
+@Service
+public class CertificateIssuanceService {
+    private static final Logger logger = LoggerFactory.getLogger(CertificateIssuanceService.class);
+
+    private final PdfService pdfService;
+    private final PdfSigner pdfSigner;
+    private final CertificateStorageService storageService;
+    private final AnalyticsService analyticsService;
+    private final CertificateMetadataService metadataService;
+    private final IssuedCertificateFilter issuedFilter;
+
+    public CertificateIssuanceService(PdfService pdfService,
+                                      PdfSigner pdfSigner,
+                                      CertificateStorageService storageService,
+                                      AnalyticsService analyticsService,
+                                      CertificateMetadataService metadataService,
+                                      IssuedCertificateFilter issuedFilter) {
+        this.pdfService = pdfService;
+        this.pdfSigner = pdfSigner;
+        this.storageService = storageService;
+        this.analyticsService = analyticsService;
+        this.metadataService = metadataService;
+        this.issuedFilter = issuedFilter;
+    }
+
+    /**
+     * A signed certificate that has been stored and recorded.
+     *
+     * @param certificateId the unique ID embedded in the certificate's QR code
+     * @param stored        the stored file with its hash and size
+     */
+    public record IssuedCertificate(String certificateId, CertificateStorageService.StoredCertificate stored) {}
+
+    /**
+     * Generates, signs and stores a certificate under a new ID.
+     *
+     * @param req            The certificate request
+     * @param requestContext Client details for analytics
+     * @return The issued certificate
+     * @throws Exception if any step of the pipeline fails; the failure is tracked
+     */
+    public IssuedCertificate issue(CertificateRequest req, AnalyticsRequestContext requestContext) throws Exception {
+        long startTime = System.currentTimeMillis();
+        // Generated before the PDF so the embedded QR code can reference it
+        String certificateId = TimeOrderedIds.next();
+
+        try {
+            CertificateStorageService.StoredCertificate stored = produce(req, certificateId);
+
+            // Track analytics
+            long duration = System.currentTimeMillis() - startTime;
+            analyticsService.trackCertificateGenerated(
+                certificateId,
+                req.purchaserName(),
+                req.purchaserEmail().orElse(null),
+                req.bookTitle(),
+                duration,
+                requestContext
+            );
+
+            // Save metadata, recording the ID first so lookups never miss it
+            issuedFilter.add(certificateId);
+            metadataService.saveCertificateMetadata(certificateId, stored.path(), stored.sha256(), stored.size(),
+                    signerFingerprint());
+
+            return new IssuedCertificate(certificateId, stored);
+        } catch (Exception e) {
+            analyticsService.trackCertificateError(e.getMessage(), requestContext);
+            throw e;
+        }
+    }
+
+    /**
+     * Generates, signs and stores a certificate without recording analytics or
+     * metadata, for callers that record many certificates at once.
+     *
+     * @param req           The certificate request
+     * @param certificateId The ID to embed in the certificate's QR code
+     * @return The stored certificate
+     * @throws Exception if generation, signing or storage fails
+     */
+    public CertificateStorageService.StoredCertificate produce(CertificateRequest req, String certificateId) throws Exception {
+        Path unsigned = null;
+        Path signed = null;
+        try {
+            unsigned = pdfService.createPdf(req, certificateId);
+            signed = pdfSigner.sign(unsigned);
+
+            // Store a copy of the certificate (hashed while it is written)
+            CertificateStorageService.StoredCertificate stored = storageService.storeCertificate(signed, req);
+            logger.info("Certificate stored successfully at: {}", stored.path());
+            return stored;
+        } finally {
+            deleteQuietly(unsigned);
+            deleteQuietly(signed);
+        }
+    }
+
+    /**
+     * Generates one PDF holding a certificate page per request, signs it once
+     * and stores it, without recording analytics or metadata.
+     *
+     * @param requests       The certificate requests, in page order
+     * @param certificateIds The IDs to embed in each page's QR code
+     * @return The stored combined certificate
+     * @throws Exception if generation, signing or storage fails
+     */
+    public CertificateStorageService.StoredCertificate produceCombined(List<CertificateRequest> requests,
+                                                                       List<String> certificateIds) throws Exception {
+        Path unsigned = null;
+        Path signed = null;
+        try {
+            unsigned = pdfService.createCombinedPdf(requests, certificateIds);
+            signed = pdfSigner.sign(unsigned);
+
+            CertificateStorageService.StoredCertificate stored =
+                    storageService.storeCombinedCertificate(signed, requests.size());
+            logger.info("Combined certificate with {} pages stored at: {}", requests.size(), stored.path());
+            return stored;
+        } finally {
+            deleteQuietly(unsigned);
+            deleteQuietly(signed);
+        }
+    }
+
+    /**
+     * SHA-256 of the certificate that signs every PDF this service produces.
+     */
+    public String signerFingerprint() {
+        return pdfSigner.certificateFingerprint();
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            logger.warn("Failed to delete temporary PDF: {}", path, e);
+        }
+    }
+}
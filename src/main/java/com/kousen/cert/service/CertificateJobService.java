@@ -0,0 +1,207 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.model.CertificateRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs certificate issuance off the request thread. Jobs go into a bounded
+ * queue served by a fixed pool of workers, so a traffic spike waits in the
+ * queue rather than holding Tomcat threads, and a full queue is rejected
+ * immediately. Finished jobs are kept for the configured retention period so
+ * clients can poll for the result.
+ */
+@Service
+public class CertificateJobService {
+    private static final Logger logger = LoggerFactory.getLogger(CertificateJobService.class);
+
+    // Shown to clients polling a failed job; the cause is only logged, since
+    // exception messages can carry file paths and other server details
+    static final String JOB_FAILED_MESSAGE = "Certificate generation failed";
+
+    public enum JobState { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /**
+     * Snapshot of a job for status polling. Timings are in milliseconds and
+     * are null until the corresponding phase has started.
+     */
+    public record JobStatus(String jobId,
+                            JobState state,
+                            Instant submittedAt,
+                            Instant startedAt,
+                            Instant completedAt,
+                            Long queuedMillis,
+                            Long runMillis,
+                            String certificateId,
+                            String filename,
+                            String error) {}
+
+    private final CertificateIssuanceService issuanceService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Clock clock;
+    private final Timer queueTimer;
+    private final Timer runTimer;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public CertificateJobService(CertificateIssuanceService issuanceService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${certificate.jobs.workers:0}") int workers,
+                                 @Value("${certificate.jobs.queue-capacity:100}") int queueCapacity,
+                                 @Value("${certificate.jobs.virtual-threads:false}") boolean virtualThreads,
+                                 @Value("${certificate.jobs.retention:PT1H}") Duration retention) {
+        this(issuanceService, meterRegistry, workers, queueCapacity, virtualThreads, retention, Clock.systemUTC());
+    }
+
+    CertificateJobService(CertificateIssuanceService issuanceService,
+                          MeterRegistry meterRegistry,
+                          int workers,
+                          int queueCapacity,
+                          boolean virtualThreads,
+                          Duration retention,
+                          Clock clock) {
+        this.issuanceService = issuanceService;
+        this.retention = retention;
+        this.clock = clock;
+
+        // Zero means one worker per core: issuance is CPU-bound (layout, compression, signing)
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("certificate-job-", 0).factory()
+                : Thread.ofPlatform().name("certificate-job-", 0).daemon(true).factory();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+        this.queueTimer = Timer.builder("certificate.jobs.queued")
+                .description("Time certificate jobs wait before a worker picks them up")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("certificate.jobs.run")
+                .description("Time spent issuing a certificate in a job")
+                .register(meterRegistry);
+        meterRegistry.gauge("certificate.jobs.queue.size", executor, e -> e.getQueue().size());
+        logger.info("Certificate job pool started with {} {} workers and queue capacity {}",
+                poolSize, virtualThreads ? "virtual" : "platform", queueCapacity);
+    }
+
+    /**
+     * Queues a certificate for asynchronous issuance.
+     *
+     * @param req            The certificate request
+     * @param requestContext Client details captured on the request thread
+     * @return The status of the newly queued job
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public JobStatus submit(CertificateRequest req, AnalyticsRequestContext requestContext) {
+        Job job = new Job(UUID.randomUUID().toString(), clock.instant());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, req, requestContext));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            logger.warn("Certificate job queue is full ({} waiting)", executor.getQueue().size());
+            throw e;
+        }
+        return job.toStatus();
+    }
+
+    /**
+     * Returns the current status of a job, if it is still known.
+     */
+    public Optional<JobStatus> getStatus(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toStatus);
+    }
+
+    /**
+     * Removes finished jobs whose results have outlived the retention period.
+     * The stored certificates themselves are not affected.
+     */
+    @Scheduled(fixedDelayString = "${certificate.jobs.purge-interval:PT5M}")
+    public void purgeExpiredJobs() {
+        Instant cutoff = clock.instant().minus(retention);
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.isFinished() && job.completedAt.isBefore(cutoff));
+        int removed = before - jobs.size();
+        if (removed > 0) {
+            logger.debug("Purged {} expired certificate jobs", removed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void run(Job job, CertificateRequest req, AnalyticsRequestContext requestContext) {
+        job.startedAt = clock.instant();
+        job.state = JobState.RUNNING;
+        queueTimer.record(Duration.between(job.submittedAt, job.startedAt));
+        try {
+            CertificateIssuanceService.IssuedCertificate issued = issuanceService.issue(req, requestContext);
+            job.certificateId = issued.certificateId();
+            job.filename = issued.stored().path().getFileName().toString();
+            complete(job, JobState.SUCCEEDED);
+        } catch (Exception e) {
+            logger.error("Certificate job {} failed", job.id, e);
+            job.error = JOB_FAILED_MESSAGE;
+            complete(job, JobState.FAILED);
+        }
+    }
+
+    private void complete(Job job, JobState state) {
+        job.completedAt = clock.instant();
+        runTimer.record(Duration.between(job.startedAt, job.completedAt));
+        // Published last so a reader that sees a finished state also sees the result
+        job.state = state;
+    }
+
+    private static final class Job {
+        private final String id;
+        private final Instant submittedAt;
+        private volatile JobState state = JobState.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant completedAt;
+        private volatile String certificateId;
+        private volatile String filename;
+        private volatile String error;
+
+        private Job(String id, Instant submittedAt) {
+            this.id = id;
+            this.submittedAt = submittedAt;
+        }
+
+        private boolean isFinished() {
+            return state == JobState.SUCCEEDED || state == JobState.FAILED;
+        }
+
+        private JobStatus toStatus() {
+            JobState current = state;
+            Instant completed = completedAt;
+            Instant started = startedAt;
+            Long queuedMillis = started != null ? Duration.between(submittedAt, started).toMillis() : null;
+            Long runMillis = started != null && completed != null
+                    ? Duration.between(started, completed).toMillis() : null;
+            return new JobStatus(id, current, submittedAt, started, completed,
+                    queuedMillis, runMillis, certificateId, filename, error);
+        }
+    }
+}
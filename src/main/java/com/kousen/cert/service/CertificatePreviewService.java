@@ -0,0 +1,160 @@
+package com.kousen.cert.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kousen.cert.model.CertificateRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Renders unsigned certificate previews. Previews are laid out in memory and
+ * never signed, stored or recorded in analytics. Rendered output is cached
+ * by name, book, format and resolution, so re-requesting the same preview
+ * (e.g. while a buyer reviews the spelling of their name) costs nothing.
+ * The QR link on a preview carries the current date, so the date is part of
+ * the key too and yesterday's renderings are never served.
+ */
+@Service
+public class CertificatePreviewService {
+
+    static final int MIN_DPI = 18;
+
+    private final PdfService pdfService;
+    private final int maxDpi;
+    private final Clock clock;
+    private final Cache<PreviewKey, Preview> previewCache;
+
+    /**
+     * Output formats for previews. Thumbnails are rasterized; PDF previews
+     * are the laid-out document without a signature.
+     */
+    public enum PreviewFormat {
+        PNG("image/png"),
+        JPEG("image/jpeg"),
+        PDF("application/pdf");
+
+        private final String contentType;
+
+        PreviewFormat(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        /**
+         * Parses a format name case-insensitively; "jpg" is accepted for JPEG.
+         *
+         * @throws IllegalArgumentException if the format is not supported
+         */
+        public static PreviewFormat from(String name) {
+            String normalized = name.trim().toUpperCase(Locale.ROOT);
+            if (normalized.equals("JPG")) {
+                return JPEG;
+            }
+            try {
+                return valueOf(normalized);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Unsupported preview format '" + name + "'; use png, jpeg or pdf");
+            }
+        }
+    }
+
+    /**
+     * A rendered preview.
+     *
+     * @param content The encoded image or PDF bytes
+     * @param format  The format of {@code content}
+     */
+    public record Preview(byte[] content, PreviewFormat format) {}
+
+    private record PreviewKey(String name, String bookTitle, PreviewFormat format, int dpi, LocalDate date) {}
+
+    @Autowired
+    public CertificatePreviewService(PdfService pdfService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${certificate.preview.max-dpi:150}") int maxDpi,
+                                     @Value("${certificate.preview.cache.max-bytes:33554432}") long cacheMaxBytes) {
+        this(pdfService, meterRegistry, maxDpi, cacheMaxBytes, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock source of the date in the cache key, so tests can move it;
+     *              same zone as the date the QR code embeds
+     */
+    CertificatePreviewService(PdfService pdfService, MeterRegistry meterRegistry, int maxDpi,
+                              long cacheMaxBytes, Clock clock) {
+        this.pdfService = pdfService;
+        this.maxDpi = maxDpi;
+        this.clock = clock;
+        this.previewCache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((PreviewKey key, Preview preview) -> preview.content().length)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, previewCache, "certificate.previews");
+        }
+    }
+
+    /**
+     * Renders a preview of the certificate for the given request, or returns
+     * the cached rendering if the same preview was produced before.
+     *
+     * @param request The certificate request with recipient and book info
+     * @param format  The output format
+     * @param dpi     Resolution for image formats; ignored for PDF
+     * @return The rendered preview
+     * @throws IllegalArgumentException if the resolution is out of range
+     * @throws IOException              if layout or rendering fails
+     */
+    public Preview render(CertificateRequest request, PreviewFormat format, int dpi) throws IOException {
+        if (format != PreviewFormat.PDF && (dpi < MIN_DPI || dpi > maxDpi)) {
+            throw new IllegalArgumentException(
+                    "Preview resolution must be between " + MIN_DPI + " and " + maxDpi + " dpi");
+        }
+        // Resolution doesn't affect a PDF, so all PDF previews share one entry
+        var key = new PreviewKey(request.purchaserName(), request.bookTitle(), format,
+                format == PreviewFormat.PDF ? 0 : dpi, LocalDate.now(clock));
+        try {
+            return previewCache.get(key, this::renderUncached);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    CacheStats cacheStats() {
+        return previewCache.stats();
+    }
+
+    private Preview renderUncached(PreviewKey key) {
+        var request = new CertificateRequest(key.name(), key.bookTitle(), Optional.empty());
+        try {
+            if (key.format() == PreviewFormat.PDF) {
+                return new Preview(pdfService.createPreviewPdf(request), key.format());
+            }
+            BufferedImage image = pdfService.renderPreview(request, key.dpi());
+            var out = new ByteArrayOutputStream();
+            ImageIO.write(image, key.format().name().toLowerCase(Locale.ROOT), out);
+            return new Preview(out.toByteArray(), key.format());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
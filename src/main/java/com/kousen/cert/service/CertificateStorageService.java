@@ -4,20 +4,45 @@ import com.kousen.cert.model.CertificateRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 @Service
 public class CertificateStorageService {
@@ -27,32 +52,87 @@ public class CertificateStorageService {
     private static final Pattern WHITESPACE = Pattern.compile("[\\s]");
     
     private final Path storagePath;
+    private final Path archivePath;
+    // Pack and entry details of every archived certificate, by filename, so
+    // lookups never have to open packs that don't hold the certificate
+    private final Map<String, PackEntry> archiveIndex = new ConcurrentHashMap<>();
+
+    private record PackEntry(Path pack, long size, long lastModified) {}
     
     public CertificateStorageService(@Value("${certificate.storage.path}") String storagePath) {
         this.storagePath = Paths.get(storagePath);
+        this.archivePath = this.storagePath.resolve("archive");
         createStorageDirectoryIfNeeded();
+        indexArchivePacks();
     }
     
+    /**
+     * A certificate written to storage, with the SHA-256 hash and size computed
+     * while it was being copied so callers never need to read it back.
+     *
+     * @param path   location of the stored certificate
+     * @param sha256 lowercase hex SHA-256 digest of the stored bytes
+     * @param size   number of bytes written
+     */
+    public record StoredCertificate(Path path, String sha256, long size) {}
+
     /**
      * Stores a certificate PDF file with a unique name based on the request.
      * 
      * @param certificatePath Path to the temporary certificate file
      * @param request The certificate request containing purchaser name and book title
-     * @return Path to the stored certificate file
+     * @return The stored certificate with its hash and size
      * @throws IOException if there's an error during file storage
      */
-    public Path storeCertificate(Path certificatePath, CertificateRequest request) throws IOException {
-        createStorageDirectoryIfNeeded();
-        
+    public StoredCertificate storeCertificate(Path certificatePath, CertificateRequest request) throws IOException {
+        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+        return store(certificatePath, generateFilename(request, timestamp));
+    }
+
+    /**
+     * Stores a PDF holding several certificates, one per page.
+     *
+     * @param certificatePath Path to the temporary combined PDF
+     * @param certificateCount Number of certificates in the file
+     * @return The stored file with its hash and size
+     * @throws IOException if there's an error during file storage
+     */
+    public StoredCertificate storeCombinedCertificate(Path certificatePath, int certificateCount) throws IOException {
         String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
-        String filename = generateFilename(request, timestamp);
-        Path destinationPath = storagePath.resolve(filename);
+        return store(certificatePath, String.format("batch_%d_certificates_%s.pdf", certificateCount, timestamp));
+    }
+
+    private StoredCertificate store(Path certificatePath, String filename) throws IOException {
+        createStorageDirectoryIfNeeded();
         
-        // Copy the certificate to the storage location
-        Files.copy(certificatePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        // Copy the certificate to the storage location, hashing it on the way
+        MessageDigest digest = newSha256Digest();
+        long size;
+        Path destinationPath;
+        for (int attempt = 1; ; attempt++) {
+            destinationPath = storagePath.resolve(filename);
+            try (var out = new DigestOutputStream(
+                    Files.newOutputStream(destinationPath, StandardOpenOption.CREATE_NEW), digest)) {
+                size = Files.copy(certificatePath, out);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Same purchaser and book within the same second (e.g. in a batch)
+                filename = filename.replaceFirst("(-\\d+)?\\.pdf$", "-" + attempt + ".pdf");
+                digest.reset();
+            }
+        }
         logger.info("Certificate stored at: {}", destinationPath);
         
-        return destinationPath;
+        return new StoredCertificate(destinationPath, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
     
     /**
@@ -131,16 +211,225 @@ public class CertificateStorageService {
      * @throws IOException if the file can't be found
      */
     public Path getCertificate(String filename) throws IOException {
-        Path certificatePath = storagePath.resolve(filename).toAbsolutePath().normalize();
-        // Reject filenames that resolve outside the storage directory (path traversal)
-        if (!certificatePath.startsWith(storagePath.toAbsolutePath().normalize())) {
-            throw new IOException("Invalid certificate filename: " + filename);
-        }
+        Path certificatePath = resolveCertificatePath(filename);
         if (!Files.exists(certificatePath)) {
             throw new IOException("Certificate not found: " + filename);
         }
         return certificatePath;
     }
+
+    /**
+     * Loads a stored certificate by filename from whichever tier holds it:
+     * the storage directory itself, or a monthly archive pack, in which case
+     * the returned resource decompresses the entry as it is streamed. The
+     * pack is found in an in-memory index, so no pack is opened here.
+     *
+     * @param filename The name of the certificate file
+     * @return The certificate as a resource
+     * @throws IOException if the certificate is in neither tier
+     */
+    public Resource loadCertificate(String filename) throws IOException {
+        Path certificatePath = resolveCertificatePath(filename);
+        if (Files.exists(certificatePath)) {
+            return new FileSystemResource(certificatePath);
+        }
+        PackEntry archived = archiveIndex.get(filename);
+        if (archived != null) {
+            return new ArchivedCertificateResource(filename, archived);
+        }
+        throw new IOException("Certificate not found: " + filename);
+    }
+
+    /**
+     * An archived certificate, stored alongside its filename, size and
+     * last-modified time as recorded in its pack.
+     */
+    public record ArchivedCertificate(String filename, long size, Instant lastModified) {}
+
+    /**
+     * Lists certificates that have been moved into archive packs.
+     *
+     * @return The archived certificates, newest pack first
+     * @throws IOException if a pack can't be read
+     */
+    public List<ArchivedCertificate> listArchivedCertificates() throws IOException {
+        List<ArchivedCertificate> archived = new ArrayList<>();
+        for (Path pack : listArchivePacks()) {
+            try (ZipFile zip = new ZipFile(pack.toFile())) {
+                zip.stream()
+                        .filter(entry -> !entry.isDirectory())
+                        .map(entry -> new ArchivedCertificate(
+                                entry.getName(), entry.getSize(), entry.getLastModifiedTime().toInstant()))
+                        .forEach(archived::add);
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Moves certificates last modified before the given age out of the storage
+     * directory into compressed pack files, one per month
+     * ({@code archive/certificates-yyyy-MM.zip}). A certificate is only deleted
+     * from the storage directory after its pack has been written, so it is
+     * always retrievable from one tier or the other. Packs are expected to be
+     * written only by this method, which keeps the archive index in step.
+     *
+     * @param age Minimum age of certificates to archive
+     * @return The number of certificates archived
+     * @throws IOException if a pack can't be written
+     */
+    public synchronized int archiveCertificatesOlderThan(Duration age) throws IOException {
+        Instant cutoff = Instant.now().minus(age);
+        Map<YearMonth, List<Path>> byMonth = new TreeMap<>();
+        for (Path certificate : listAllCertificates()) {
+            Instant modified = Files.getLastModifiedTime(certificate).toInstant();
+            if (modified.isBefore(cutoff)) {
+                byMonth.computeIfAbsent(YearMonth.from(modified.atZone(ZoneOffset.UTC)), month -> new ArrayList<>())
+                        .add(certificate);
+            }
+        }
+        if (byMonth.isEmpty()) {
+            return 0;
+        }
+
+        Files.createDirectories(archivePath);
+        int archived = 0;
+        for (Map.Entry<YearMonth, List<Path>> month : byMonth.entrySet()) {
+            Path pack = archivePath.resolve("certificates-" + month.getKey() + ".zip");
+            // Entries are deflated by the zip file system; the pack is rewritten on close
+            try (FileSystem zip = FileSystems.newFileSystem(pack, Map.of("create", "true"))) {
+                for (Path certificate : month.getValue()) {
+                    Path entry = zip.getPath(certificate.getFileName().toString());
+                    Files.copy(certificate, entry, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+            // Indexed before the originals go, so the certificate is always findable
+            indexPack(pack);
+            for (Path certificate : month.getValue()) {
+                Files.delete(certificate);
+                archived++;
+            }
+            logger.info("Archived {} certificates into {}", month.getValue().size(), pack);
+        }
+        return archived;
+    }
+
+    /**
+     * Builds the archive index from every pack on disk. A pack that can't be
+     * read is skipped, so its certificates are reported as not found.
+     */
+    private void indexArchivePacks() {
+        try {
+            for (Path pack : listArchivePacks()) {
+                try {
+                    indexPack(pack);
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable archive pack {}", pack, e);
+                }
+            }
+            logger.info("Indexed {} archived certificates", archiveIndex.size());
+        } catch (IOException e) {
+            logger.error("Failed to list archive packs in {}", archivePath, e);
+        }
+    }
+
+    private void indexPack(Path pack) throws IOException {
+        try (ZipFile zip = new ZipFile(pack.toFile())) {
+            zip.stream()
+                    .filter(entry -> !entry.isDirectory())
+                    .forEach(entry -> archiveIndex.put(entry.getName(), new PackEntry(
+                            pack, entry.getSize(), entry.getLastModifiedTime().toMillis())));
+        }
+    }
+
+    private List<Path> listArchivePacks() throws IOException {
+        if (!Files.isDirectory(archivePath)) {
+            return List.of();
+        }
+        try (var stream = Files.list(archivePath)) {
+            return stream
+                    .filter(path -> path.getFileName().toString().endsWith(".zip"))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Resolves a filename inside the storage directory, rejecting anything that
+     * isn't a direct child of it (path traversal, or reaching into the archive).
+     */
+    private Path resolveCertificatePath(String filename) throws IOException {
+        Path root = storagePath.toAbsolutePath().normalize();
+        Path certificatePath = root.resolve(filename).normalize();
+        if (!root.equals(certificatePath.getParent())) {
+            throw new IOException("Invalid certificate filename: " + filename);
+        }
+        return certificatePath;
+    }
+
+    /**
+     * A certificate inside an archive pack. Each call to {@link #getInputStream()}
+     * opens the pack and inflates the entry as it is read.
+     */
+    private static final class ArchivedCertificateResource extends AbstractResource {
+        private final Path pack;
+        private final String entryName;
+        private final long size;
+        private final long lastModified;
+
+        ArchivedCertificateResource(String entryName, PackEntry entry) {
+            this.pack = entry.pack();
+            this.entryName = entryName;
+            this.size = entry.size();
+            this.lastModified = entry.lastModified();
+        }
+
+        @Override
+        public String getDescription() {
+            return "archived certificate [" + entryName + "] in " + pack;
+        }
+
+        @Override
+        public String getFilename() {
+            return entryName;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            ZipFile zip = new ZipFile(pack.toFile());
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                zip.close();
+                throw new FileNotFoundException(getDescription() + " no longer exists");
+            }
+            return new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        }
+    }
     
     /**
      * Gets the storage directory path.
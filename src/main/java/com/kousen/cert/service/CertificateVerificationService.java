@@ -0,0 +1,165 @@
+package com.kousen.cert.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+
+/**
+ * Verifies uploaded certificates, avoiding PDF parsing and signature checks
+ * where the answer is already known. Uploads are identified by their SHA-256:
+ * a hash seen recently is answered from a bounded, expiring cache, and a hash
+ * matching a certificate this service stored is answered from its metadata
+ * record, since those bytes are exactly what was signed. That shortcut is only
+ * taken when the record shows the file was signed with the current key;
+ * older records, and files signed before a key change, get the full check.
+ */
+@Service
+public class CertificateVerificationService {
+    private static final Logger logger = LoggerFactory.getLogger(CertificateVerificationService.class);
+
+    private final PdfSignatureVerifier signatureVerifier;
+    private final CertificateMetadataService metadataService;
+    private final String signerName;
+    private final String signerFingerprint;
+    private final Cache<String, VerificationResult> resultCache;
+
+    public CertificateVerificationService(PdfSignatureVerifier signatureVerifier,
+                                          CertificateMetadataService metadataService,
+                                          KeyStoreProvider keyStoreProvider,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${certificate.verification.cache.max-size:10000}") long maxSize,
+                                          @Value("${certificate.verification.cache.ttl:PT1H}") Duration ttl) {
+        this.signatureVerifier = signatureVerifier;
+        this.metadataService = metadataService;
+        this.signerName = subjectOf(keyStoreProvider);
+        this.signerFingerprint = keyStoreProvider.certificateFingerprint();
+        this.resultCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, resultCache, "certificate.verifications");
+        }
+    }
+
+    /**
+     * Verifies the signature of an uploaded PDF.
+     *
+     * @param pdfBytes The uploaded file
+     * @return Signature verification details
+     */
+    public VerificationResult verify(byte[] pdfBytes) {
+        return resultCache.get(sha256(pdfBytes),
+                hash -> verifyUncached(hash, () -> signatureVerifier.verify(pdfBytes)));
+    }
+
+    /**
+     * Verifies the signature of an uploaded PDF that was spooled to disk. The
+     * file is memory-mapped to hash it, so it is never read onto the heap.
+     *
+     * @param pdfFile The spooled upload
+     * @return Signature verification details
+     * @throws IOException if the file can't be read
+     */
+    public VerificationResult verify(Path pdfFile) throws IOException {
+        String hash;
+        try (FileChannel channel = FileChannel.open(pdfFile, StandardOpenOption.READ)) {
+            MessageDigest digest = sha256();
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            hash = HexFormat.of().formatHex(digest.digest());
+        }
+        try {
+            return resultCache.get(hash, key -> verifyUncached(key, () -> signatureVerifier.verify(pdfFile)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    CacheStats cacheStats() {
+        return resultCache.stats();
+    }
+
+    /**
+     * Runs the signature check for an upload that isn't a stored certificate.
+     */
+    @FunctionalInterface
+    private interface SignatureCheck {
+        VerificationResult run() throws IOException;
+    }
+
+    private VerificationResult verifyUncached(String hash, SignatureCheck signatureCheck) {
+        CertificateMetadata issued = metadataService.getCertificateMetadataByFileHash(hash);
+        if (issued != null && signerFingerprint.equals(issued.getSignerFingerprint())) {
+            logger.debug("Upload matches stored certificate {}", issued.getCertificateId());
+            return issuedResult(issued, metadataService.countCertificatesByFileHash(hash));
+        }
+        try {
+            return signatureCheck.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The result for a byte-identical copy of a file this service signed with
+     * its current key and stored. The record's creation time stands in for
+     * the signing time, which is a few milliseconds earlier. A combined batch
+     * PDF has a record per page, so no single certificate is named for it.
+     */
+    private VerificationResult issuedResult(CertificateMetadata issued, long certificatesInFile) {
+        String issuedAt = issued.getCreatedAt() != null
+                ? DateTimeFormatter.ISO_INSTANT.format(issued.getCreatedAt().atOffset(ZoneOffset.UTC))
+                : null;
+        String copyOf = certificatesInFile > 1
+                ? "a combined PDF of " + certificatesInFile + " certificates"
+                : "certificate " + issued.getCertificateId();
+        return new VerificationResult(true, true, true, true, signerName, issuedAt,
+                "The document is an exact copy of " + copyOf + " as signed and issued by this service. "
+                        + "(Remember: the signing certificate is self-signed, so trust it accordingly.)");
+    }
+
+    private static String subjectOf(KeyStoreProvider keyStoreProvider) {
+        try {
+            // Same formatting as the verifier, which reads the subject from the CMS data
+            return new JcaX509CertificateHolder(keyStoreProvider.certificate()).getSubject().toString();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Unable to read signing certificate", e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(sha256().digest(bytes));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
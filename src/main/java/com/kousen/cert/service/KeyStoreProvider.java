@@ -15,12 +15,16 @@ import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.HexFormat;
 
 public class KeyStoreProvider {
 
@@ -69,6 +73,18 @@ public class KeyStoreProvider {
         }
     }
 
+    /**
+     * Returns the SHA-256 of the signing certificate's DER encoding as hex,
+     * recorded with each issued certificate to identify the key that signed it.
+     */
+    public String certificateFingerprint() {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(certificate().getEncoded()));
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new IllegalStateException("Failed to fingerprint certificate: " + e.getMessage(), e);
+        }
+    }
+
     private KeyStore create() {
         try {
             // Generate a strong RSA key pair
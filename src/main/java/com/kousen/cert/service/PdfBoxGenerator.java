@@ -1,5 +1,9 @@
 package com.kousen.cert.service;
 
+import com.google.zxing.common.BitMatrix;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -9,15 +13,29 @@ import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * PDF generation utility using Apache PDFBox
@@ -30,6 +48,26 @@ public class PdfBoxGenerator {
     private static final Color GOLD_COLOR = new Color(255, 214, 92);
     
     // Font cache removed - PDType0Font must be loaded per document in PDFBox 3.0.4
+
+    // Creation date written in deterministic mode, so the date never varies the bytes
+    static final Instant FIXED_CREATION_DATE = Instant.parse("2000-01-01T00:00:00Z");
+
+    private final boolean deterministic;
+
+    public PdfBoxGenerator() {
+        this(false);
+    }
+
+    /**
+     * @param deterministic when true, identical inputs produce byte-identical
+     *                      unsigned PDFs: the trailer ID is derived from the
+     *                      document key (normally the certificate ID) instead of
+     *                      the current time, and the creation date is fixed
+     */
+    @Autowired
+    public PdfBoxGenerator(@Value("${certificate.pdf.deterministic:false}") boolean deterministic) {
+        this.deterministic = deterministic;
+    }
     
     /**
      * Creates a certificate PDF for the specified text content
@@ -60,70 +98,64 @@ public class PdfBoxGenerator {
      * @throws IOException If there's an error during PDF creation
      */
     public Path createCertificatePdfWithQrData(String title, String name, String subtitle, byte[] qrCodeData) throws IOException {
-        Path pdfPath = Files.createTempFile("cert-", ".pdf");
-        float pageWidth = PDRectangle.A4.getHeight();
-        float pageHeight = PDRectangle.A4.getWidth();
-        try (PDDocument document = new PDDocument()) {
-            PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
-            document.addPage(page);
-
-            PDFont titleFont = getFont(document, "CinzelDecorative-Regular.ttf",
-                    new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD));
-            PDFont nameFont = getFont(document, "GreatVibes-Regular.ttf",
-                    new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE));
-            PDFont textFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
-
-            addBackgroundImage(document, page);
-
-            try (PDPageContentStream contentStream = new PDPageContentStream(
-                    document, page, PDPageContentStream.AppendMode.APPEND, true)) {
-                contentStream.setNonStrokingColor(GOLD_COLOR);
-
-                float centerX = pageWidth / 2;
-                float y = pageHeight - 200;
-                drawCenteredText(contentStream, titleFont, 48, title, centerX, y);
-
-                y -= 50;
-                drawCenteredText(contentStream, textFont, 14, "This certifies that", centerX, y);
-
-                y -= 60;
-                drawCenteredText(contentStream, nameFont, 40, name, centerX, y);
+        return createSingleCertificatePdf(title, name, subtitle, qrCodeData, null);
+    }
 
-                y -= 50;
-                drawCenteredText(contentStream, textFont, 14, "is the proud owner of", centerX, y);
+    /**
+     * Creates a certificate PDF, drawing the QR code from its module matrix as
+     * vector rectangles, so no image is rendered, encoded or decoded.
+     *
+     * @param title    The main title text
+     * @param name     The recipient's name
+     * @param subtitle The subtitle or book title
+     * @param qrMatrix QR code modules, one cell per module (may be null)
+     * @return Path to the generated PDF file
+     * @throws IOException If there's an error during PDF creation
+     */
+    public Path createCertificatePdfWithQrMatrix(String title, String name, String subtitle, BitMatrix qrMatrix) throws IOException {
+        return createCertificatePdfWithQrMatrix(title, name, subtitle, qrMatrix, null);
+    }
 
-                y -= 40;
-                drawCenteredText(contentStream, titleFont, 24, subtitle, centerX, y);
+    /**
+     * Creates a certificate PDF with a vector QR code, using the certificate ID
+     * as the document key. In deterministic mode the trailer ID is derived
+     * from it, so the same certificate always renders to the same bytes.
+     *
+     * @param title         The main title text
+     * @param name          The recipient's name
+     * @param subtitle      The subtitle or book title
+     * @param qrMatrix      QR code modules, one cell per module (may be null)
+     * @param certificateId The certificate ID (may be null)
+     * @return Path to the generated PDF file
+     * @throws IOException If there's an error during PDF creation
+     */
+    public Path createCertificatePdfWithQrMatrix(String title, String name, String subtitle,
+                                                 BitMatrix qrMatrix, String certificateId) throws IOException {
+        return createSingleCertificatePdf(title, name, subtitle, null, qrMatrix, certificateId);
+    }
 
-                y -= 50;
-                drawCenteredText(contentStream, textFont, 14,
-                        "and has earned the author's eternal gratitude.", centerX, y);
+    private Path createSingleCertificatePdf(String title, String name, String subtitle,
+                                            byte[] qrCodeData, BitMatrix qrMatrix) throws IOException {
+        return createSingleCertificatePdf(title, name, subtitle, qrCodeData, qrMatrix, null);
+    }
 
-                if (qrCodeData != null && qrCodeData.length > 0) {
-                    final float qrX = 80f;
-                    final float qrY = 80f;
-                    final float qrSize = 100f;
-                    try {
-                        addQRCode(document, contentStream, qrCodeData, qrX, qrY);
-                    } catch (IOException | IllegalArgumentException e) {
-                        logger.warn("Error adding QR code, drawing placeholder", e);
-                        contentStream.setStrokingColor(Color.BLACK);
-                        contentStream.addRect(qrX, qrY, qrSize, qrSize);
-                        contentStream.stroke();
-                    }
-                    // Center "Scan to verify certificate authenticity" below the QR code
-                    drawCenteredText(contentStream, textFont, 8,
-                            "Scan to verify certificate authenticity",
-                            qrX + qrSize / 2f,
-                            qrY - 20f);
-                }
-            }
+    private Path createSingleCertificatePdf(String title, String name, String subtitle,
+                                            byte[] qrCodeData, BitMatrix qrMatrix,
+                                            String certificateId) throws IOException {
+        String documentKey = new CertificatePage(title, name, subtitle, qrMatrix, certificateId).documentKey();
+        Path pdfPath = Files.createTempFile("cert-", ".pdf");
+        float pageWidth = PDRectangle.A4.getHeight();
+        float pageHeight = PDRectangle.A4.getWidth();
+        try (PDDocument document = new PDDocument()) {
+            addCertificatePage(document, loadSharedResources(document),
+                    title, name, subtitle, qrCodeData, qrMatrix);
 
             try {
                 document.getDocumentCatalog().getAcroForm();
                 document.setAllSecurityToBeRemoved(true);
                 System.setProperty("org.apache.pdfbox.font.subset", "false");
                 document.getDocumentInformation().setCustomMetadataValue("DisableFontSubsetting", "true");
+                applyDocumentIdentity(document, documentKey);
                 document.save(pdfPath.toFile());
                 logger.debug("PDF created at {}", pdfPath.toAbsolutePath());
             } catch (Exception e) {
@@ -153,11 +185,15 @@ public class PdfBoxGenerator {
                             y2 -= 50;
                             drawCenteredText(contentStream, stdFont, 14,
                                     "and has earned the author's eternal gratitude.", pageWidth / 2, y2);
-                            if (qrCodeData != null && qrCodeData.length > 0) {
+                            if (qrMatrix != null) {
+                                drawQRCode(contentStream, qrMatrix, 80, 80, 100f);
+                                drawCenteredText(contentStream, stdFont, 8, "Scan to verify", 80, 60);
+                            } else if (qrCodeData != null && qrCodeData.length > 0) {
                                 addQRCode(simpleDoc, contentStream, qrCodeData, 80, 80);
                                 drawCenteredText(contentStream, stdFont, 8, "Scan to verify", 80, 60);
                             }
                         }
+                        applyDocumentIdentity(simpleDoc, documentKey);
                         simpleDoc.save(pdfPath.toFile());
                     }
                     logger.debug("Successfully created simplified PDF with standard fonts only");
@@ -169,6 +205,202 @@ public class PdfBoxGenerator {
         }
         return pdfPath;
     }
+
+    /**
+     * Creates a single PDF with one certificate per page. The fonts and the
+     * background image are added to the document once and every page refers
+     * to the same objects, so the file grows only by each page's text and QR code.
+     *
+     * @param pages The certificates to render, in page order
+     * @return Path to the generated PDF file
+     * @throws IOException If there's an error during PDF creation
+     */
+    public Path createCombinedCertificatePdf(List<CertificatePage> pages) throws IOException {
+        if (pages.isEmpty()) {
+            throw new IllegalArgumentException("At least one certificate page is required");
+        }
+        Path pdfPath = Files.createTempFile("cert-batch-", ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            SharedResources resources = loadSharedResources(document);
+            for (CertificatePage page : pages) {
+                addCertificatePage(document, resources,
+                        page.title(), page.name(), page.subtitle(), null, page.qrMatrix());
+            }
+            document.setAllSecurityToBeRemoved(true);
+            System.setProperty("org.apache.pdfbox.font.subset", "false");
+            document.getDocumentInformation().setCustomMetadataValue("DisableFontSubsetting", "true");
+            applyDocumentIdentity(document,
+                    String.join(",", pages.stream().map(CertificatePage::documentKey).toList()));
+            document.save(pdfPath.toFile());
+            logger.debug("Combined PDF with {} certificates created at {}", pages.size(), pdfPath.toAbsolutePath());
+        }
+        return pdfPath;
+    }
+
+    /**
+     * Lays out a certificate entirely in memory and returns the PDF bytes.
+     * Nothing is written to disk, so this is suited to unsigned previews.
+     *
+     * @param page The certificate to render
+     * @return The PDF document
+     * @throws IOException If there's an error during PDF creation
+     */
+    public byte[] createPreviewPdf(CertificatePage page) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addCertificatePage(document, loadSharedResources(document),
+                    page.title(), page.name(), page.subtitle(), null, page.qrMatrix());
+            applyDocumentIdentity(document, page.documentKey());
+            var out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Lays out a certificate in memory and rasterizes it at the given
+     * resolution, without ever serializing the PDF.
+     *
+     * @param page The certificate to render
+     * @param dpi  Output resolution in dots per inch (72 is one pixel per point)
+     * @return The rendered page
+     * @throws IOException If there's an error during layout or rendering
+     */
+    public BufferedImage renderPreviewImage(CertificatePage page, float dpi) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addCertificatePage(document, loadSharedResources(document),
+                    page.title(), page.name(), page.subtitle(), null, page.qrMatrix());
+            return new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.RGB);
+        }
+    }
+
+    /**
+     * Text and QR code for one certificate page.
+     *
+     * @param title         The main title text
+     * @param name          The recipient's name
+     * @param subtitle      The subtitle or book title
+     * @param qrMatrix      QR code modules, one cell per module (may be null)
+     * @param certificateId The certificate ID, used as the page's document key (may be null)
+     */
+    public record CertificatePage(String title, String name, String subtitle, BitMatrix qrMatrix,
+                                  String certificateId) {
+
+        public CertificatePage(String title, String name, String subtitle, BitMatrix qrMatrix) {
+            this(title, name, subtitle, qrMatrix, null);
+        }
+
+        String documentKey() {
+            return certificateId != null ? certificateId : String.join("\n", title, name, subtitle);
+        }
+    }
+
+    /**
+     * Fonts and background loaded into a document once and reused by every page.
+     */
+    private record SharedResources(PDFont titleFont, PDFont nameFont, PDFont textFont,
+                                   PDImageXObject background) {}
+
+    /**
+     * In deterministic mode, replaces the time-based values PDFBox would
+     * otherwise write: the trailer ID becomes a hash of the document key and
+     * the creation date is fixed. Pages, fonts and images are always added in
+     * the same order, so the object numbering is already stable.
+     */
+    private void applyDocumentIdentity(PDDocument document, String documentKey) {
+        if (!deterministic) {
+            return;
+        }
+        byte[] id = Arrays.copyOf(sha256(documentKey), 16);
+        COSArray idArray = new COSArray();
+        idArray.add(new COSString(id));
+        idArray.add(new COSString(id));
+        document.getDocument().getTrailer().setItem(COSName.ID, idArray);
+
+        var creationDate = GregorianCalendar.from(FIXED_CREATION_DATE.atZone(ZoneOffset.UTC));
+        document.getDocumentInformation().setCreationDate(creationDate);
+        document.getDocumentInformation().setModificationDate(creationDate);
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private SharedResources loadSharedResources(PDDocument document) {
+        PDFont titleFont = getFont(document, "CinzelDecorative-Regular.ttf",
+                new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD));
+        PDFont nameFont = getFont(document, "GreatVibes-Regular.ttf",
+                new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE));
+        PDFont textFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        return new SharedResources(titleFont, nameFont, textFont, loadBackgroundImage(document));
+    }
+
+    private void addCertificatePage(PDDocument document, SharedResources resources,
+                                    String title, String name, String subtitle,
+                                    byte[] qrCodeData, BitMatrix qrMatrix) throws IOException {
+        float pageWidth = PDRectangle.A4.getHeight();
+        float pageHeight = PDRectangle.A4.getWidth();
+        PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
+        document.addPage(page);
+
+        PDFont titleFont = resources.titleFont();
+        PDFont nameFont = resources.nameFont();
+        PDFont textFont = resources.textFont();
+
+        addBackgroundImage(document, page, resources.background());
+
+        try (PDPageContentStream contentStream = new PDPageContentStream(
+                document, page, PDPageContentStream.AppendMode.APPEND, true)) {
+            contentStream.setNonStrokingColor(GOLD_COLOR);
+
+            float centerX = pageWidth / 2;
+            float y = pageHeight - 200;
+            drawCenteredText(contentStream, titleFont, 48, title, centerX, y);
+
+            y -= 50;
+            drawCenteredText(contentStream, textFont, 14, "This certifies that", centerX, y);
+
+            y -= 60;
+            drawCenteredText(contentStream, nameFont, 40, name, centerX, y);
+
+            y -= 50;
+            drawCenteredText(contentStream, textFont, 14, "is the proud owner of", centerX, y);
+
+            y -= 40;
+            drawCenteredText(contentStream, titleFont, 24, subtitle, centerX, y);
+
+            y -= 50;
+            drawCenteredText(contentStream, textFont, 14,
+                    "and has earned the author's eternal gratitude.", centerX, y);
+
+            if (qrMatrix != null || (qrCodeData != null && qrCodeData.length > 0)) {
+                final float qrX = 80f;
+                final float qrY = 80f;
+                final float qrSize = 100f;
+                try {
+                    if (qrMatrix != null) {
+                        drawQRCode(contentStream, qrMatrix, qrX, qrY, qrSize);
+                    } else {
+                        addQRCode(document, contentStream, qrCodeData, qrX, qrY);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.warn("Error adding QR code, drawing placeholder", e);
+                    contentStream.setStrokingColor(Color.BLACK);
+                    contentStream.addRect(qrX, qrY, qrSize, qrSize);
+                    contentStream.stroke();
+                }
+                // Center "Scan to verify certificate authenticity" below the QR code
+                drawCenteredText(contentStream, textFont, 8,
+                        "Scan to verify certificate authenticity",
+                        qrX + qrSize / 2f,
+                        qrY - 20f);
+            }
+        }
+    }
+
     /**
      * Adds an in-memory QR code to the certificate.
      */
@@ -184,6 +416,45 @@ public class PdfBoxGenerator {
         contentStream.drawImage(qrImage, x, y, qrSize, qrSize);
     }
     
+    /**
+     * Draws a QR code as filled rectangles straight from its module matrix,
+     * on a white square so it scans against the dark background. Adjacent dark
+     * modules in a row are merged into one rectangle to keep the content stream small.
+     */
+    private void drawQRCode(PDPageContentStream contentStream,
+                            BitMatrix qrMatrix,
+                            float x,
+                            float y,
+                            float size) throws IOException {
+        int modules = qrMatrix.getWidth();
+        float moduleSize = size / modules;
+
+        contentStream.saveGraphicsState();
+        contentStream.setNonStrokingColor(Color.WHITE);
+        contentStream.addRect(x, y, size, size);
+        contentStream.fill();
+
+        contentStream.setNonStrokingColor(Color.BLACK);
+        for (int row = 0; row < qrMatrix.getHeight(); row++) {
+            // Matrix rows run top to bottom; PDF y coordinates run bottom to top
+            float rowY = y + size - (row + 1) * moduleSize;
+            int col = 0;
+            while (col < modules) {
+                if (!qrMatrix.get(col, row)) {
+                    col++;
+                    continue;
+                }
+                int runStart = col;
+                while (col < modules && qrMatrix.get(col, row)) {
+                    col++;
+                }
+                contentStream.addRect(x + runStart * moduleSize, rowY, (col - runStart) * moduleSize, moduleSize);
+            }
+        }
+        contentStream.fill();
+        contentStream.restoreGraphicsState();
+    }
+
     /**
      * Gets a font, loading from classpath resources
      */
@@ -210,27 +481,36 @@ public class PdfBoxGenerator {
         }
     }
     
+    /**
+     * Loads the background image into the document, or returns null if it
+     * can't be loaded
+     */
+    private PDImageXObject loadBackgroundImage(PDDocument document) {
+        var imageResource = new ClassPathResource("images/certificate-bg.png");
+        try (var imageStream = imageResource.getInputStream()) {
+            return PDImageXObject.createFromByteArray(document, imageStream.readAllBytes(), "background");
+        } catch (IOException e) {
+            logger.warn("Error loading background image", e);
+            return null;
+        }
+    }
+
     /**
      * Add background image to the PDF page
      */
-    private void addBackgroundImage(PDDocument document, PDPage page) {
-        try {
-            var imageResource = new ClassPathResource("images/certificate-bg.png");
-            try (var imageStream = imageResource.getInputStream()) {
-                PDImageXObject backgroundImage = PDImageXObject.createFromByteArray(document, 
-                        imageStream.readAllBytes(), "background");
-                
-                // Create a content stream to draw the background
-                try (PDPageContentStream contentStream = new PDPageContentStream(document, page, 
-                        PDPageContentStream.AppendMode.PREPEND, true)) {
-                    // Draw the image at full page size
-                    contentStream.drawImage(backgroundImage, 0, 0, page.getMediaBox().getWidth(), 
-                            page.getMediaBox().getHeight());
-                }
-            }
+    private void addBackgroundImage(PDDocument document, PDPage page, PDImageXObject backgroundImage) {
+        if (backgroundImage == null) {
+            // Continue without background if image can't be loaded
+            return;
+        }
+        // Create a content stream to draw the background
+        try (PDPageContentStream contentStream = new PDPageContentStream(document, page,
+                PDPageContentStream.AppendMode.PREPEND, true)) {
+            // Draw the image at full page size
+            contentStream.drawImage(backgroundImage, 0, 0, page.getMediaBox().getWidth(),
+                    page.getMediaBox().getHeight());
         } catch (IOException e) {
             logger.warn("Error adding background image", e);
-            // Continue without background if image can't be loaded
         }
     }
     
@@ -1,11 +1,15 @@
 package com.kousen.cert.service;
 
+import com.google.zxing.common.BitMatrix;
 import com.kousen.cert.model.CertificateRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service for creating PDF certificates
@@ -55,22 +59,88 @@ public class PdfService {
      */
     public Path createPdf(CertificateRequest request, String certificateId) throws IOException {
         try {
-            // Generate QR code in-memory
-            byte[] qrCodeData = qrCodeGenerator.generateQrCodeData(
+            // Encode the QR code as a module matrix; the PDF draws it as vectors
+            BitMatrix qrMatrix = qrCodeGenerator.generateQrCodeMatrix(
                     request.purchaserName(),
                     request.bookTitle(),
-                    certificateId,
-                    220);
+                    certificateId);
 
-            // Create PDF with PDFBox using in-memory QR code
-
-            return pdfGenerator.createCertificatePdfWithQrData(
+            return pdfGenerator.createCertificatePdfWithQrMatrix(
                     "Certificate of Ownership",
                     request.purchaserName(),
                     request.bookTitle(),
-                    qrCodeData);
+                    qrMatrix,
+                    certificateId);
         } catch (Exception e) {
             throw new IOException("Failed to generate PDF: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Creates one PDF with a certificate page per request, each page's QR
+     * code linking to its own certificate ID.
+     *
+     * @param requests The certificate requests, in page order
+     * @param certificateIds The IDs assigned to the certificates, in the same order
+     * @return Path to the generated PDF file
+     * @throws IOException If there's an error during PDF creation
+     */
+    public Path createCombinedPdf(List<CertificateRequest> requests, List<String> certificateIds) throws IOException {
+        try {
+            List<PdfBoxGenerator.CertificatePage> pages = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                pages.add(certificatePage(requests.get(i), certificateIds.get(i)));
+            }
+            return pdfGenerator.createCombinedCertificatePdf(pages);
+        } catch (Exception e) {
+            throw new IOException("Failed to generate PDF: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lays out an unsigned certificate in memory for previewing. The QR code
+     * carries no certificate ID, since nothing has been issued.
+     *
+     * @param request The certificate request with recipient and book info
+     * @return The PDF document bytes
+     * @throws IOException If there's an error during PDF creation
+     */
+    public byte[] createPreviewPdf(CertificateRequest request) throws IOException {
+        try {
+            return pdfGenerator.createPreviewPdf(certificatePage(request, null));
+        } catch (Exception e) {
+            throw new IOException("Failed to generate preview: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rasterizes an unsigned certificate for previewing, without producing a
+     * PDF file.
+     *
+     * @param request The certificate request with recipient and book info
+     * @param dpi     Output resolution in dots per inch
+     * @return The rendered certificate
+     * @throws IOException If there's an error during layout or rendering
+     */
+    public BufferedImage renderPreview(CertificateRequest request, float dpi) throws IOException {
+        try {
+            return pdfGenerator.renderPreviewImage(certificatePage(request, null), dpi);
+        } catch (Exception e) {
+            throw new IOException("Failed to render preview: " + e.getMessage(), e);
+        }
+    }
+
+    private PdfBoxGenerator.CertificatePage certificatePage(CertificateRequest request,
+                                                            String certificateId) throws IOException {
+        BitMatrix qrMatrix = qrCodeGenerator.generateQrCodeMatrix(
+                request.purchaserName(),
+                request.bookTitle(),
+                certificateId);
+        return new PdfBoxGenerator.CertificatePage(
+                "Certificate of Ownership",
+                request.purchaserName(),
+                request.bookTitle(),
+                qrMatrix,
+                certificateId);
+    }
 }
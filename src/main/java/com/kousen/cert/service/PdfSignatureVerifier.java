@@ -1,20 +1,36 @@
 package com.kousen.cert.service;
 
+import com.kousen.cert.service.TailSignatureLocator.SignatureLocation;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.util.DateConverter;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSTypedData;
 import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationVerifier;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.security.Security;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.List;
 
@@ -27,13 +43,30 @@ public class PdfSignatureVerifier {
 
     private static final Logger logger = LoggerFactory.getLogger(PdfSignatureVerifier.class);
 
-    private final KeyStoreProvider keyStoreProvider;
+    // DER encoding of this service's certificate; signer certificates are
+    // recognized by comparing encodings
+    private final byte[] trustedEncoding;
+
+    // Verifier for this service's certificate, built once and shared: it
+    // creates a fresh Signature and MessageDigest for each check, so
+    // concurrent batch workers and request threads can all use it
+    private final SignerInformationVerifier trustedVerifier;
 
     public PdfSignatureVerifier(KeyStoreProvider keyStoreProvider) {
-        this.keyStoreProvider = keyStoreProvider;
         if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
             Security.addProvider(new BouncyCastleProvider());
         }
+        X509Certificate trustedCertificate = keyStoreProvider.certificate();
+        try {
+            this.trustedEncoding = trustedCertificate.getEncoded();
+            this.trustedVerifier = new JcaSimpleSignerInfoVerifierBuilder()
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(trustedCertificate);
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Unable to read signing certificate", e);
+        } catch (OperatorCreationException e) {
+            throw new IllegalStateException("Unable to prepare signature verifier", e);
+        }
     }
 
     /**
@@ -61,8 +94,60 @@ public class PdfSignatureVerifier {
         }
     }
 
+    /**
+     * Verifies the signature of a PDF. Files signed once and not modified
+     * since, like the certificates this service issues, are checked by
+     * reading the signature straight from the end of the file; anything else
+     * goes through a full PDFBox parse.
+     */
     public VerificationResult verify(byte[] pdfBytes) {
-        try (var doc = Loader.loadPDF(pdfBytes)) {
+        return verify(ByteBuffer.wrap(pdfBytes), () -> Loader.loadPDF(pdfBytes));
+    }
+
+    /**
+     * Verifies the signature of a PDF file without reading it onto the heap.
+     * The file is memory-mapped, the signed ranges are digested straight from
+     * the mapping, and only the CMS blob is copied out.
+     *
+     * @param pdfFile The PDF to verify
+     * @return Signature verification details
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public VerificationResult verify(Path pdfFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pdfFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return VerificationResult.unsigned("The file is too large to verify.");
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return verify(mapped, () -> Loader.loadPDF(pdfFile.toFile()));
+        }
+    }
+
+    VerificationResult verifyFullParse(byte[] pdfBytes) {
+        return verifyFullParse(ByteBuffer.wrap(pdfBytes), () -> Loader.loadPDF(pdfBytes));
+    }
+
+    /**
+     * Opens the document for a full parse, from memory or from a file.
+     */
+    @FunctionalInterface
+    private interface DocumentLoader {
+        PDDocument load() throws IOException;
+    }
+
+    private VerificationResult verify(ByteBuffer pdf, DocumentLoader loader) {
+        VerificationResult result = verifyFromTail(pdf);
+        if (result != null) {
+            return result;
+        }
+        logger.debug("Signature not found in file tail, parsing full PDF");
+        return verifyFullParse(pdf, loader);
+    }
+
+    private VerificationResult verifyFullParse(ByteBuffer pdf, DocumentLoader loader) {
+        try (var doc = loader.load()) {
             List<PDSignature> signatures = doc.getSignatureDictionaries();
             if (signatures.isEmpty()) {
                 return VerificationResult.unsigned("The PDF does not contain a digital signature.");
@@ -70,48 +155,11 @@ public class PdfSignatureVerifier {
 
             // Verify the most recent signature (incremental saves append signatures)
             PDSignature signature = signatures.getLast();
-            byte[] cmsBytes = signature.getContents(pdfBytes);
-            byte[] signedContent = signature.getSignedContent(pdfBytes);
-
-            CMSSignedData cms = new CMSSignedData(new CMSProcessableByteArray(signedContent), cmsBytes);
-            SignerInformation signer = cms.getSignerInfos().getSigners().iterator().next();
-            Collection<X509CertificateHolder> matches = cms.getCertificates().getMatches(signer.getSID());
-            if (matches.isEmpty()) {
-                return new VerificationResult(true, false, false, false, null, null,
-                        "Signature found but the signer certificate is missing from the CMS data.");
-            }
-            X509CertificateHolder certHolder = matches.iterator().next();
-
-            boolean intact;
-            try {
-                intact = signer.verify(new JcaSimpleSignerInfoVerifierBuilder()
-                        .setProvider(BouncyCastleProvider.PROVIDER_NAME)
-                        .build(certHolder));
-            } catch (Exception e) {
-                // BC throws (rather than returning false) for some mismatches
-                intact = false;
-            }
-            boolean ours = Arrays.equals(certHolder.getEncoded(),
-                    keyStoreProvider.certificate().getEncoded());
-            boolean coversAll = coversEntireDocument(signature, pdfBytes.length);
-
-            String signerName = certHolder.getSubject().toString();
-            String signedAt = signature.getSignDate() != null
-                    ? DateTimeFormatter.ISO_INSTANT.format(signature.getSignDate().toInstant().atOffset(ZoneOffset.UTC))
-                    : null;
-
-            String message;
-            if (!intact) {
-                message = "The document has been modified since it was signed, or the signature is invalid.";
-            } else if (!ours) {
-                message = "The signature is cryptographically valid but was not produced by this service's certificate.";
-            } else if (!coversAll) {
-                message = "The signature is valid but content was appended to the document after signing.";
-            } else {
-                message = "The signature is valid and the document is exactly as signed by this service. "
-                        + "(Remember: the signing certificate is self-signed, so trust it accordingly.)";
-            }
-            return new VerificationResult(true, intact, ours, coversAll, signerName, signedAt, message);
+            byte[] cmsBytes = signature.getContents();
+            var signedContent = new ByteRangeContent(pdf, signature.getByteRange());
+
+            CMSSignedData cms = new CMSSignedData(signedContent, cmsBytes);
+            return evaluate(cms, coversEntireDocument(signature, pdf.limit()), signature.getSignDate());
         } catch (Exception e) {
             logger.warn("Failed to verify PDF signature: {}", e.getMessage());
             return VerificationResult.unsigned(
@@ -119,6 +167,76 @@ public class PdfSignatureVerifier {
         }
     }
 
+    /**
+     * Verifies the signature without building the PDF object graph: finds the
+     * last {@code /ByteRange} near the end of the file, decodes the CMS blob
+     * from the {@code /Contents} gap it describes and digests the two signed
+     * slices of the file in place.
+     *
+     * @return the result, or null if the file doesn't have the simple layout
+     *         this relies on and needs a full parse
+     */
+    private VerificationResult verifyFromTail(ByteBuffer pdf) {
+        SignatureLocation location = TailSignatureLocator.locate(pdf);
+        if (location == null) {
+            return null;
+        }
+        try {
+            CMSSignedData cms = new CMSSignedData(new ByteRangeContent(pdf, location.byteRange()),
+                    location.contents());
+            Calendar signDate = location.signDate() != null ? DateConverter.toCalendar(location.signDate()) : null;
+            // The locator only accepts byte ranges that span the whole file
+            return evaluate(cms, true, signDate);
+        } catch (Exception e) {
+            logger.debug("Could not verify signature from file tail: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private VerificationResult evaluate(CMSSignedData cms, boolean coversAll, Calendar signDate) throws Exception {
+        SignerInformation signer = cms.getSignerInfos().getSigners().iterator().next();
+        Collection<X509CertificateHolder> matches = cms.getCertificates().getMatches(signer.getSID());
+        if (matches.isEmpty()) {
+            return new VerificationResult(true, false, false, false, null, null,
+                    "Signature found but the signer certificate is missing from the CMS data.");
+        }
+        X509CertificateHolder certHolder = matches.iterator().next();
+
+        // Settles whether the prepared verifier applies
+        boolean ours = MessageDigest.isEqual(certHolder.getEncoded(), trustedEncoding);
+
+        boolean intact;
+        try {
+            SignerInformationVerifier verifier = ours
+                    ? trustedVerifier
+                    : new JcaSimpleSignerInfoVerifierBuilder()
+                            .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                            .build(certHolder);
+            intact = signer.verify(verifier);
+        } catch (Exception e) {
+            // BC throws (rather than returning false) for some mismatches
+            intact = false;
+        }
+
+        String signerName = certHolder.getSubject().toString();
+        String signedAt = signDate != null
+                ? DateTimeFormatter.ISO_INSTANT.format(signDate.toInstant().atOffset(ZoneOffset.UTC))
+                : null;
+
+        String message;
+        if (!intact) {
+            message = "The document has been modified since it was signed, or the signature is invalid.";
+        } else if (!ours) {
+            message = "The signature is cryptographically valid but was not produced by this service's certificate.";
+        } else if (!coversAll) {
+            message = "The signature is valid but content was appended to the document after signing.";
+        } else {
+            message = "The signature is valid and the document is exactly as signed by this service. "
+                    + "(Remember: the signing certificate is self-signed, so trust it accordingly.)";
+        }
+        return new VerificationResult(true, intact, ours, coversAll, signerName, signedAt, message);
+    }
+
     /**
      * A PDF signature's byte range must start at offset 0 and, together with the
      * signature contents gap, span the entire file; otherwise data was appended
@@ -131,4 +249,58 @@ public class PdfSignatureVerifier {
         }
         return byteRange[0] == 0 && byteRange[2] + byteRange[3] == fileLength;
     }
+
+    /**
+     * The signed content of a PDF: the two slices of the file either side of
+     * the signature, written straight from the heap array or memory mapping.
+     */
+    private record ByteRangeContent(ByteBuffer pdf, int[] byteRange) implements CMSTypedData {
+
+        // Copy size when the file is mapped rather than backed by an array
+        private static final int CHUNK_SIZE = 64 * 1024;
+
+        ByteRangeContent {
+            if (byteRange == null || byteRange.length != 4) {
+                throw new IllegalArgumentException("Signature has no valid byte range");
+            }
+            for (int i = 0; i < 4; i += 2) {
+                if (byteRange[i] < 0 || byteRange[i + 1] < 0
+                        || (long) byteRange[i] + byteRange[i + 1] > pdf.limit()) {
+                    throw new IllegalArgumentException("Signature byte range lies outside the file");
+                }
+            }
+        }
+
+        @Override
+        public ASN1ObjectIdentifier getContentType() {
+            return CMSObjectIdentifiers.data;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            writeRange(out, byteRange[0], byteRange[1]);
+            writeRange(out, byteRange[2], byteRange[3]);
+        }
+
+        @Override
+        public Object getContent() {
+            byte[] content = new byte[byteRange[1] + byteRange[3]];
+            pdf.get(byteRange[0], content, 0, byteRange[1]);
+            pdf.get(byteRange[2], content, byteRange[1], byteRange[3]);
+            return content;
+        }
+
+        private void writeRange(OutputStream out, int offset, int length) throws IOException {
+            if (pdf.hasArray()) {
+                out.write(pdf.array(), pdf.arrayOffset() + offset, length);
+                return;
+            }
+            byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+            for (int written = 0; written < length; written += chunk.length) {
+                int n = Math.min(chunk.length, length - written);
+                pdf.get(offset + written, chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+    }
 }
@@ -22,17 +22,29 @@ import java.nio.file.Path;
 import java.security.*;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.GregorianCalendar;
 
 public class PdfSigner implements SignatureInterface {
 
     private final KeyStoreProvider provider;
+    private final Clock clock;
     private PrivateKey privateKey;
     private Certificate[] certificateChain;
+    private String certificateFingerprint;
 
     public PdfSigner(KeyStoreProvider provider) {
+        this(provider, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock source of the signing time, so tests can pin it
+     */
+    public PdfSigner(KeyStoreProvider provider, Clock clock) {
         this.provider = provider;
+        this.clock = clock;
         if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
             Security.addProvider(new BouncyCastleProvider());
         }
@@ -56,11 +68,19 @@ public class PdfSigner implements SignatureInterface {
             if (privateKey == null || certificateChain == null) {
                 throw new IllegalStateException("Key or certificate chain not found");
             }
+            certificateFingerprint = provider.certificateFingerprint();
         } catch (Exception e) {
             throw new IllegalStateException("Failed to initialize key material: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * SHA-256 of the certificate embedded in every signature this signer makes.
+     */
+    public String certificateFingerprint() {
+        return certificateFingerprint;
+    }
+
     public Path sign(Path in) throws Exception {
         Path signed = Files.createTempFile("cert-signed-", ".pdf");
 
@@ -73,7 +93,7 @@ public class PdfSigner implements SignatureInterface {
             sig.setName("Ken Kousen");
             sig.setLocation("Connecticut, USA");
             sig.setReason("Certificate of Ownership");
-            sig.setSignDate(Calendar.getInstance());
+            sig.setSignDate(GregorianCalendar.from(ZonedDateTime.now(clock)));
 
             // Set signature size
             options.setPreferredSignatureSize(SignatureOptions.DEFAULT_SIGNATURE_SIZE * 2);
@@ -1,11 +1,18 @@
 package com.kousen.cert.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.kousen.cert.config.ServerUrlConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -18,16 +25,51 @@ import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 
 /**
- * Generates QR codes for certificate verification
+ * Generates QR codes for certificate verification. Codes without a
+ * certificate ID, as drawn on previews, are kept in a bounded cache keyed by
+ * URL and size, so a repeated preview is only encoded once. Issued
+ * certificates embed their unique ID, so their codes never repeat and are
+ * encoded directly rather than churning the cache.
  */
 @Component
 public class QrCodeGenerator {
 
+    // Default cache budget when not configured: roughly 16 MB of matrices
+    static final long DEFAULT_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+
     private final ServerUrlConfig serverConfig;
+    private final Cache<QrKey, BitMatrix> matrixCache;
     
-    @Autowired
     public QrCodeGenerator(ServerUrlConfig serverConfig) {
+        this(serverConfig, null, DEFAULT_CACHE_MAX_BYTES);
+    }
+
+    @Autowired
+    public QrCodeGenerator(ServerUrlConfig serverConfig,
+                           MeterRegistry meterRegistry,
+                           @Value("${certificate.qr.cache.max-bytes:16777216}") long cacheMaxBytes) {
         this.serverConfig = serverConfig;
+        // Caffeine's W-TinyLFU admission keeps one-off previews from evicting
+        // the ones that repeat
+        this.matrixCache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher(QrCodeGenerator::weigh)
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, matrixCache, "qr.codes");
+        }
+    }
+
+    /**
+     * Cache key: the encoded URL and the requested size in pixels (0 for
+     * module-resolution matrices).
+     */
+    private record QrKey(String url, int size) {}
+
+    private static int weigh(QrKey key, BitMatrix matrix) {
+        // BitMatrix stores 32 modules per int
+        return key.url().length() * 2 + matrix.getRowSize() * matrix.getHeight() * Integer.BYTES;
     }
     
     /**
@@ -48,8 +90,7 @@ public class QrCodeGenerator {
         
         try {
             // Generate QR code
-            var qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(verificationUrl, BarcodeFormat.QR_CODE, size, size);
+            BitMatrix bitMatrix = encode(verificationUrl, size, true);
             
             // Write to file
             MatrixToImageWriter.writeToPath(bitMatrix, "PNG", qrCodePath);
@@ -89,8 +130,7 @@ public class QrCodeGenerator {
     public byte[] generateQrCodeData(String name, String bookTitle, String certificateId, int size) throws IOException {
         String verificationUrl = buildVerificationUrl(name, bookTitle, certificateId);
         try {
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(verificationUrl, BarcodeFormat.QR_CODE, size, size);
+            BitMatrix bitMatrix = encode(verificationUrl, size, isBlank(certificateId));
             java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
             MatrixToImageWriter.writeToStream(bitMatrix, "PNG", baos);
             return baos.toByteArray();
@@ -99,6 +139,61 @@ public class QrCodeGenerator {
         }
     }
     
+    /**
+     * Encodes the verification QR code as a module matrix, one cell per QR
+     * module including the quiet zone, without rendering an image. Callers
+     * scale it to whatever size they draw it at, so the cost does not depend
+     * on the output resolution.
+     *
+     * @param name          The name of the certificate holder
+     * @param bookTitle     The book title
+     * @param certificateId The unique ID assigned to the certificate (may be null)
+     * @return The QR code modules
+     * @throws IOException If there's an error during QR code encoding
+     */
+    public BitMatrix generateQrCodeMatrix(String name, String bookTitle, String certificateId) throws IOException {
+        String verificationUrl = buildVerificationUrl(name, bookTitle, certificateId);
+        try {
+            // A requested size of 0 yields the smallest matrix: one cell per module
+            return encode(verificationUrl, 0, isBlank(certificateId));
+        } catch (Exception e) {
+            throw new IOException("Failed to generate QR code matrix: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Encodes a URL at the given size. If {@code cached}, a matrix cached for
+     * the same URL and size is reused; a copy is returned, so callers may
+     * modify it.
+     */
+    private BitMatrix encode(String url, int size, boolean cached) throws WriterException {
+        if (!cached) {
+            return new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, size, size);
+        }
+        try {
+            return matrixCache.get(new QrKey(url, size), key -> {
+                try {
+                    return new QRCodeWriter().encode(key.url(), BarcodeFormat.QR_CODE, key.size(), key.size());
+                } catch (WriterException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).clone();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof WriterException writerException) {
+                throw writerException;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isBlank(String certificateId) {
+        return certificateId == null || certificateId.isBlank();
+    }
+
+    CacheStats cacheStats() {
+        return matrixCache.stats();
+    }
+    
     /**
      * Builds a verification URL for the certificate
      */
@@ -108,16 +203,17 @@ public class QrCodeGenerator {
 
     private String buildVerificationUrl(String name, String bookTitle, String certificateId) {
         String baseUrl = serverConfig.getUrl();
-        String date = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
 
         // Create the verification URL with parameters
         String url = String.format(Locale.US,
-                "%s/verify-certificate?name=%s&book=%s&date=%s",
+                "%s/verify-certificate?name=%s&book=%s",
                 baseUrl,
                 encodeUrlParam(name),
-                encodeUrlParam(bookTitle),
-                date);
-        if (certificateId != null && !certificateId.isBlank()) {
+                encodeUrlParam(bookTitle));
+        if (!serverConfig.isStableUrls()) {
+            url += "&date=" + LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        }
+        if (!isBlank(certificateId)) {
             url += "&id=" + encodeUrlParam(certificateId);
         }
         return url;
@@ -0,0 +1,206 @@
+package com.kousen.cert.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the signature of a PDF that was signed once and not modified since,
+ * by scanning backwards from the end of the file instead of parsing it. An
+ * incremental save puts the signature dictionary in the last few kilobytes,
+ * and its {@code /ByteRange} says exactly where the {@code /Contents} hex
+ * string is. Anything that doesn't fit that layout is left to a full parse.
+ * <p>
+ * Works on a {@link ByteBuffer} with absolute reads, so the file may be a
+ * heap array or a memory-mapped upload; only the CMS blob is copied out.
+ */
+final class TailSignatureLocator {
+
+    // How far from the end of the file to look for the signature dictionary
+    static final int TAIL_WINDOW = 64 * 1024;
+
+    // How far the dictionary delimiters may be from the entries inside it
+    private static final int DICTIONARY_SPAN = 4096;
+
+    private static final byte[] BYTE_RANGE_KEY = "/ByteRange".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DICTIONARY_START = "<<".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DICTIONARY_END = ">>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final Pattern SUB_FILTER = Pattern.compile("/SubFilter\\s*/([^\\s/<>\\[\\]()]+)");
+    private static final Pattern SIGN_DATE = Pattern.compile("/M\\s*\\(([^)]*)\\)");
+    private static final Set<String> DETACHED_SUB_FILTERS = Set.of("adbe.pkcs7.detached", "ETSI.CAdES.detached");
+
+    /**
+     * Where a signature lives in the file.
+     *
+     * @param byteRange the signed ranges as {offset, length, offset, length}
+     * @param contents  the decoded CMS blob, including any zero padding
+     * @param signDate  the raw {@code /M} date string, or null if absent
+     */
+    record SignatureLocation(int[] byteRange, byte[] contents, String signDate) {}
+
+    private TailSignatureLocator() {}
+
+    /**
+     * @param pdf the whole file, from index 0 to its limit
+     * @return the signature, or null if the file needs a full parse: no
+     *         signature near the end, a byte range that doesn't span the whole
+     *         file, or a signature that isn't a detached CMS signature
+     */
+    static SignatureLocation locate(ByteBuffer pdf) {
+        int windowStart = Math.max(0, pdf.limit() - TAIL_WINDOW);
+        int keyOffset = lastIndexOf(pdf, BYTE_RANGE_KEY, windowStart, pdf.limit());
+        if (keyOffset < 0) {
+            return null;
+        }
+        int[] byteRange = new int[4];
+        int arrayEnd = parseByteRange(pdf, keyOffset + BYTE_RANGE_KEY.length, byteRange);
+        if (arrayEnd < 0) {
+            return null;
+        }
+
+        int gapStart = byteRange[1];
+        int gapEnd = byteRange[2];
+        if (byteRange[0] != 0 || gapStart <= 0 || gapEnd <= gapStart + 1
+                || (long) gapEnd + byteRange[3] != pdf.limit()) {
+            return null;
+        }
+        if (pdf.get(gapStart) != '<' || pdf.get(gapEnd - 1) != '>') {
+            return null;
+        }
+        byte[] contents = decodeHex(pdf, gapStart + 1, gapEnd - 1);
+        if (contents == null) {
+            return null;
+        }
+
+        // The dictionary encloses both the /ByteRange entry and the /Contents gap
+        int entriesStart = Math.min(keyOffset, gapStart);
+        int dictionaryStart = lastIndexOf(pdf, DICTIONARY_START,
+                Math.max(0, entriesStart - DICTIONARY_SPAN), entriesStart);
+        int entriesEnd = Math.max(arrayEnd, gapEnd);
+        int dictionaryEnd = indexOf(pdf, DICTIONARY_END,
+                entriesEnd, (int) Math.min(pdf.limit(), (long) entriesEnd + DICTIONARY_SPAN));
+        if (dictionaryStart < 0 || dictionaryEnd < 0) {
+            return null;
+        }
+        String dictionary = latin1(pdf, dictionaryStart, gapStart) + latin1(pdf, gapEnd, dictionaryEnd);
+
+        Matcher subFilter = SUB_FILTER.matcher(dictionary);
+        if (!subFilter.find() || !DETACHED_SUB_FILTERS.contains(subFilter.group(1))) {
+            return null;
+        }
+        Matcher signDate = SIGN_DATE.matcher(dictionary);
+        return new SignatureLocation(byteRange, contents, signDate.find() ? signDate.group(1) : null);
+    }
+
+    /**
+     * Parses {@code [a b c d]} of non-negative integers starting at the given
+     * offset into {@code byteRange}.
+     *
+     * @return the offset just past the closing bracket, or -1 if malformed
+     */
+    private static int parseByteRange(ByteBuffer pdf, int offset, int[] byteRange) {
+        int i = skipWhitespace(pdf, offset);
+        if (i >= pdf.limit() || pdf.get(i) != '[') {
+            return -1;
+        }
+        i++;
+        for (int n = 0; n < 4; n++) {
+            i = skipWhitespace(pdf, i);
+            long value = 0;
+            int digitsStart = i;
+            while (i < pdf.limit() && Character.isDigit(pdf.get(i))) {
+                value = value * 10 + (pdf.get(i) - '0');
+                if (value > Integer.MAX_VALUE) {
+                    return -1;
+                }
+                i++;
+            }
+            if (i == digitsStart) {
+                return -1;
+            }
+            byteRange[n] = (int) value;
+        }
+        i = skipWhitespace(pdf, i);
+        return i < pdf.limit() && pdf.get(i) == ']' ? i + 1 : -1;
+    }
+
+    private static int skipWhitespace(ByteBuffer pdf, int offset) {
+        int i = offset;
+        while (i < pdf.limit() && isWhitespace(pdf.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    /**
+     * Decodes the hex digits in {@code [from, to)}, or returns null if any
+     * byte isn't a hex digit or the count is odd.
+     */
+    private static byte[] decodeHex(ByteBuffer pdf, int from, int to) {
+        int length = to - from;
+        if (length % 2 != 0) {
+            return null;
+        }
+        byte[] decoded = new byte[length / 2];
+        for (int i = 0; i < decoded.length; i++) {
+            int high = Character.digit(pdf.get(from + 2 * i), 16);
+            int low = Character.digit(pdf.get(from + 2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            decoded[i] = (byte) ((high << 4) | low);
+        }
+        return decoded;
+    }
+
+    /**
+     * Finds the last occurrence of {@code needle} lying entirely within
+     * {@code [from, to)}, or -1.
+     */
+    private static int lastIndexOf(ByteBuffer haystack, byte[] needle, int from, int to) {
+        for (int i = to - needle.length; i >= from; i--) {
+            if (matchesAt(haystack, needle, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first occurrence of {@code needle} lying entirely within
+     * {@code [from, to)}, or -1.
+     */
+    private static int indexOf(ByteBuffer haystack, byte[] needle, int from, int to) {
+        for (int i = from; i <= to - needle.length; i++) {
+            if (matchesAt(haystack, needle, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(ByteBuffer haystack, byte[] needle, int offset) {
+        for (int j = 0; j < needle.length; j++) {
+            if (haystack.get(offset + j) != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String latin1(ByteBuffer bytes, int from, int to) {
+        if (to <= from) {
+            return "";
+        }
+        byte[] text = new byte[to - from];
+        bytes.get(from, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.kousen.cert.analytics.config;
+
+import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class AnalyticsConfigTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AnalyticsConfig config = new AnalyticsConfig();
+    private final CertificateMetadataRepository repository = mock(CertificateMetadataRepository.class);
+    private final CertificateMetadataService metadataService =
+            new CertificateMetadataService(repository, new IssuedCertificateFilter(repository, false, false, 1000, 0.01));
+    private AnalyticsExecutor analytics;
+    private AnalyticsExecutor metadata;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        release.countDown();
+        if (analytics != null) {
+            analytics.destroy();
+        }
+        if (metadata != null) {
+            metadata.destroy();
+        }
+    }
+
+    @Test
+    void shouldStillSaveMetadataWhenBacklogsAreFull() throws Exception {
+        // Given - both executors with their only worker busy and their queue full
+        analytics = config.analyticsTaskExecutor(meterRegistry(), "bounded", 1, 1, 1, "drop-oldest", 8);
+        metadata = config.metadataTaskExecutor(meterRegistry(), 1, 1, 1);
+        analytics.execute(this::block);
+        analytics.execute(() -> {});
+        analytics.execute(() -> {});
+        metadata.execute(this::block);
+        CompletableFuture<Void> queued = metadata.submitCompletable(() -> save("cert-1"));
+
+        // When
+        CompletableFuture<Void> overflow = metadata.submitCompletable(() -> save("cert-2"));
+
+        // Then - the overflowing save ran on the caller, the queued one runs once a worker frees up
+        assertThat(overflow).isCompleted();
+        verify(repository).save(any());
+        release.countDown();
+        queued.get();
+        verify(repository, timeout(5000).times(2)).save(any());
+        assertThat(registry.counter("metadata.executor.rejected").count()).isEqualTo(1);
+        assertThat(registry.counter("metadata.executor.dropped").count()).isZero();
+        assertThat(registry.counter("analytics.executor.dropped").count()).isEqualTo(1);
+    }
+
+    private Void save(String certificateId) throws Exception {
+        return metadataService.saveCertificateMetadata(certificateId, Path.of(certificateId + ".pdf"), "cafebabe", 42L,
+                        "f00d")
+                .get();
+    }
+
+    private ObjectProvider<MeterRegistry> meterRegistry() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        return beanFactory.getBeanProvider(MeterRegistry.class);
+    }
+
+    private void block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
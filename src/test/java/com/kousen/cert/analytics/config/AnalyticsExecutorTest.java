@@ -0,0 +1,156 @@
+package com.kousen.cert.analytics.config;
+
+import com.kousen.cert.analytics.config.AnalyticsExecutor.Overflow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalyticsExecutorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AnalyticsExecutor executor;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        release.countDown();
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    void shouldDropOldestWaitingTaskWhenQueueIsFull() throws Exception {
+        // Given - one worker busy, one slot in the queue
+        executor = AnalyticsExecutor.bounded(1, 1, 1, Overflow.DROP_OLDEST, registry);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        executor.execute(this::block);
+        executor.execute(() -> ran.add("oldest"));
+
+        // When
+        executor.execute(() -> ran.add("newest"));
+        release.countDown();
+        executor.destroy();
+
+        // Then
+        assertThat(ran).containsExactly("newest");
+        assertThat(registry.counter("analytics.executor.rejected").count()).isEqualTo(1);
+        assertThat(registry.counter("analytics.executor.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFailTheFutureOfADroppedTask() {
+        // Given
+        executor = AnalyticsExecutor.bounded(1, 1, 1, Overflow.DROP_OLDEST, registry);
+        executor.execute(this::block);
+        CompletableFuture<String> oldest = executor.submitCompletable(() -> "oldest");
+
+        // When
+        executor.execute(() -> {});
+
+        // Then
+        assertThat(oldest).isCompletedExceptionally();
+        assertThatThrownBy(oldest::join).hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void shouldRunOnCallerWhenQueueIsFull() {
+        // Given
+        executor = AnalyticsExecutor.bounded(1, 1, 1, Overflow.CALLER_RUNS, registry);
+        executor.execute(this::block);
+        executor.execute(() -> {});
+        assertThat(executor.queueDepth()).isEqualTo(1);
+
+        // When
+        AtomicInteger ranOn = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        executor.execute(() -> ranOn.set(Thread.currentThread() == caller ? 1 : 2));
+
+        // Then
+        assertThat(ranOn.get()).isEqualTo(1);
+        assertThat(registry.counter("analytics.executor.rejected").count()).isEqualTo(1);
+        assertThat(registry.counter("analytics.executor.dropped").count()).isZero();
+    }
+
+    @Test
+    void shouldLimitConcurrencyOnVirtualThreads() throws InterruptedException {
+        // Given
+        executor = AnalyticsExecutor.virtual(2, 10, Overflow.DROP_OLDEST, registry);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                block();
+                running.decrementAndGet();
+            });
+        }
+
+        // Then
+        awaitUntil(() -> running.get() == 2 && executor.queueDepth() == 3);
+        assertThat(peak.get()).isEqualTo(2);
+        assertThat(registry.get("analytics.executor.queue.depth").gauge().value()).isEqualTo(3.0);
+    }
+
+    @Test
+    void shouldDropNewTaskWhenVirtualBacklogIsFull() throws InterruptedException {
+        // Given - one running, one waiting
+        executor = AnalyticsExecutor.virtual(1, 1, Overflow.DROP_OLDEST, registry);
+        executor.execute(this::block);
+        awaitUntil(() -> executor.queueDepth() == 0);
+        executor.execute(() -> {});
+
+        // When
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(ran::incrementAndGet);
+
+        // Then
+        assertThat(ran.get()).isZero();
+        assertThat(registry.counter("analytics.executor.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordLatencyFromSubmissionToCompletion() throws InterruptedException {
+        executor = AnalyticsExecutor.virtual(1, 10, Overflow.DROP_OLDEST, registry);
+
+        executor.execute(() -> {});
+
+        awaitUntil(() -> registry.timer("analytics.executor.latency").count() == 1);
+    }
+
+    @Test
+    void shouldParseConfiguredNames() {
+        assertThat(AnalyticsExecutor.Mode.from("virtual")).isEqualTo(AnalyticsExecutor.Mode.VIRTUAL);
+        assertThat(Overflow.from("caller-runs")).isEqualTo(Overflow.CALLER_RUNS);
+    }
+
+    private void block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5 seconds").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
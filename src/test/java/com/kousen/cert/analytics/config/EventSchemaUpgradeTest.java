@@ -0,0 +1,52 @@
+package com.kousen.cert.analytics.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventSchemaUpgradeTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final EventSchemaUpgrade upgrade =
+            new EventSchemaUpgrade(jdbcTemplate, mock(EntityManagerFactory.class), false);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // A PostgreSQL database with every legacy column still in place
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*) FROM information_schema"),
+                eq(Integer.class), anyString())).thenReturn(1);
+    }
+
+    @Test
+    void shouldSkipColumnsWithNothingLeftToCopy() {
+        // Given - only book titles still have rows to copy
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class))).thenReturn(false);
+        when(jdbcTemplate.queryForObject(contains("book_title IS NOT NULL AND book_id IS NULL"), eq(Boolean.class)))
+                .thenReturn(true);
+
+        // When
+        upgrade.migrateLegacyColumns();
+
+        // Then
+        verify(jdbcTemplate).update(startsWith("INSERT INTO event_dimensions"), eq("BOOK"));
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO event_dimensions"), eq("USER_AGENT"));
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO event_dimensions"), eq("ENDPOINT"));
+        verify(jdbcTemplate, never()).queryForList(contains("ip_address"), anyLong());
+        verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE"));
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.ui.ConcurrentModel;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
@@ -83,6 +84,19 @@ class AnalyticsControllerTest {
         assertThat(response.getBody().successRate()).isEqualTo(95.2);
     }
 
+    @Test
+    void shouldReturnUniquePurchasersForRangeAndBook() {
+        var controller = new AnalyticsController(analyticsService);
+        Instant from = Instant.parse("2025-01-01T00:00:00Z");
+        Instant to = Instant.parse("2025-04-01T00:00:00Z");
+        var counted = new AnalyticsDTO.UniquePurchasers(from, to, "Kotlin Cookbook", 17);
+        when(analyticsService.getUniquePurchasers(from, to, "Kotlin Cookbook")).thenReturn(counted);
+
+        var response = controller.getUniquePurchasers(from, to, "Kotlin Cookbook");
+
+        assertThat(response.getBody()).isEqualTo(counted);
+    }
+
     @Test
     void shouldPopulateDashboardModel() {
         var controller = new AnalyticsDashboardController(analyticsService);
@@ -18,6 +18,8 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -109,4 +111,27 @@ class AnalyticsIntegrationTest {
         assertEquals(initialCount + 1, eventRepository.count());
         assertTrue(eventRepository.findByCertificateId("test-456").size() > 0);
     }
+
+    @Test
+    void shouldReadBackDictionaryEncodedColumns() {
+        // Given
+        for (String id : new String[]{"dict-1", "dict-2"}) {
+            CertificateEvent event = new CertificateEvent(CertificateEvent.EventType.GENERATED, id);
+            event.setBookTitle("Mockito Made Clear");
+            event.setUserAgent("Mozilla/5.0 (Macintosh; Intel Mac OS X 14_5)");
+            event.setIpAddress("203.0.113.195");
+            eventRepository.save(event);
+        }
+
+        // When
+        CertificateEvent stored = eventRepository.findByCertificateId("dict-2").get(0);
+        List<Object[]> popularity = eventRepository.findBookPopularity(CertificateEvent.EventType.GENERATED);
+
+        // Then
+        assertEquals("Mockito Made Clear", stored.getBookTitle());
+        assertEquals("Mozilla/5.0 (Macintosh; Intel Mac OS X 14_5)", stored.getUserAgent());
+        assertEquals("203.0.113.195", stored.getIpAddress());
+        assertTrue(popularity.stream().anyMatch(row ->
+                "Mockito Made Clear".equals(row[0]) && ((Number) row[1]).longValue() == 2));
+    }
 }
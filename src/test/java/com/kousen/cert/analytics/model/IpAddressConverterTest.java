@@ -0,0 +1,40 @@
+package com.kousen.cert.analytics.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressConverterTest {
+
+    private final IpAddressConverter converter = new IpAddressConverter();
+
+    @Test
+    void shouldStoreIpv4AsFourBytes() {
+        byte[] stored = converter.convertToDatabaseColumn("203.0.113.195");
+
+        assertThat(stored).containsExactly(203, 0, 113, 195);
+        assertThat(converter.convertToEntityAttribute(stored)).isEqualTo("203.0.113.195");
+    }
+
+    @Test
+    void shouldStoreIpv6AsSixteenBytes() {
+        byte[] stored = converter.convertToDatabaseColumn("2001:db8::1");
+
+        assertThat(stored).hasSize(16);
+        assertThat(converter.convertToEntityAttribute(stored)).isEqualTo("2001:db8:0:0:0:0:0:1");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"unknown", "example.com", "999.1.1.1"})
+    void shouldNotStoreValuesThatAreNotIpLiterals(String value) {
+        assertThat(converter.convertToDatabaseColumn(value)).isNull();
+    }
+
+    @Test
+    void shouldPassNullThrough() {
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+    }
+}
@@ -0,0 +1,102 @@
+package com.kousen.cert.analytics.repository;
+
+import com.kousen.cert.analytics.model.EventDimension.Kind;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventDictionaryTest {
+
+    private static final String BOOK = "Modern Java Recipes";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private EventDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new EventDictionary(jdbcTemplate, TransactionOperations::withoutTransaction);
+    }
+
+    @Test
+    void shouldAddLabelSeenForTheFirstTime() {
+        // Given
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq("BOOK"), eq(BOOK)))
+                .thenReturn(List.of(), List.of(7));
+
+        // When
+        int key = dictionary.keyOf(Kind.BOOK, BOOK);
+
+        // Then
+        assertThat(key).isEqualTo(7);
+        verify(jdbcTemplate).update(anyString(), eq("BOOK"), eq(BOOK));
+        assertThat(dictionary.labelOf(7)).isEqualTo(BOOK);
+    }
+
+    @Test
+    void shouldLookUpEachLabelOnce() {
+        // Given
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq("BOOK"), eq(BOOK)))
+                .thenReturn(List.of(3));
+
+        // When
+        dictionary.keyOf(Kind.BOOK, BOOK);
+        int key = dictionary.keyOf(Kind.BOOK, BOOK);
+
+        // Then
+        assertThat(key).isEqualTo(3);
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(Integer.class), eq("BOOK"), eq(BOOK));
+        verify(jdbcTemplate, never()).update(anyString(), eq("BOOK"), eq(BOOK));
+    }
+
+    @Test
+    void shouldUseKeyAddedConcurrentlyByAnotherInstance() {
+        // Given
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq("ENDPOINT"), eq("GET /api/books")))
+                .thenReturn(List.of(), List.of(12));
+        when(jdbcTemplate.update(anyString(), eq("ENDPOINT"), eq("GET /api/books")))
+                .thenThrow(new DuplicateKeyException("uk_event_dimensions_kind_label"));
+
+        // When
+        int key = dictionary.keyOf(Kind.ENDPOINT, "GET /api/books");
+
+        // Then
+        assertThat(key).isEqualTo(12);
+    }
+
+    @Test
+    void shouldTruncateLabelsLongerThanColumn() {
+        // Given
+        String userAgent = "x".repeat(EventDictionary.MAX_LABEL_LENGTH + 20);
+        String stored = userAgent.substring(0, EventDictionary.MAX_LABEL_LENGTH);
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq("USER_AGENT"), eq(stored)))
+                .thenReturn(List.of(5));
+
+        // When / Then
+        assertThat(dictionary.keyOf(Kind.USER_AGENT, userAgent)).isEqualTo(5);
+    }
+
+    @Test
+    void shouldReturnNullForUnknownKey() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(99))).thenReturn(List.of());
+
+        assertThat(dictionary.labelOf(99)).isNull();
+    }
+}
@@ -3,8 +3,9 @@ package com.kousen.cert.analytics.service;
 import com.kousen.cert.analytics.model.AnalyticsDTO;
 import com.kousen.cert.analytics.model.AnalyticsRequestContext;
 import com.kousen.cert.analytics.model.CertificateEvent;
+import com.kousen.cert.analytics.model.CertificateGeneration;
 import com.kousen.cert.analytics.model.CertificateEvent.EventType;
-import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
 import com.kousen.cert.analytics.repository.CertificateEventRepository;
 import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -20,7 +21,7 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,13 +37,29 @@ class AnalyticsServiceTest {
     @Mock
     private CertificateMetadataRepository metadataRepository;
 
+    @Mock
+    private VerificationCounter verificationCounter;
+
+    @Mock
+    private AggregatedMetricsRepository metricsRepository;
+
+    @Mock
+    private UniquePurchaserCounter uniquePurchaserCounter;
+
     private MeterRegistry meterRegistry;
+    private EventColumnStore columnStore;
     private AnalyticsService analyticsService;
 
     @BeforeEach
     void setUp() {
         meterRegistry = new SimpleMeterRegistry();
-        analyticsService = new AnalyticsService(eventRepository, metadataRepository, meterRegistry);
+        // Not loaded until a test calls rebuild, so the dashboard queries the repository
+        columnStore = new EventColumnStore(eventRepository, true);
+        // Nothing sampled, so every event is saved as it is tracked
+        EventSampler eventSampler = new EventSampler(eventRepository, metricsRepository, meterRegistry, columnStore,
+                Map.of(), 100, 0.99);
+        analyticsService = new AnalyticsService(eventRepository, metadataRepository, meterRegistry,
+                verificationCounter, eventSampler, columnStore, uniquePurchaserCounter);
     }
 
     @Test
@@ -79,15 +96,39 @@ class AnalyticsServiceTest {
         assertEquals(1.0, meterRegistry.counter("certificates.generated", "book", bookTitle).count());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldTrackBatchOfGeneratedCertificatesWithSingleSave() throws Exception {
+        // Given
+        AnalyticsRequestContext requestContext = new AnalyticsRequestContext("127.0.0.1", "Test Browser");
+        List<CertificateGeneration> generations = List.of(
+            new CertificateGeneration("cert-1", "Ada Lovelace", null, "Modern Java Recipes", 100L),
+            new CertificateGeneration("cert-2", "Grace Hopper", "grace@example.com", "Kotlin Cookbook", 200L)
+        );
+
+        // When
+        analyticsService.trackCertificatesGenerated(generations, requestContext).get();
+
+        // Then
+        ArgumentCaptor<List<CertificateEvent>> eventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(eventRepository).saveAll(eventsCaptor.capture());
+        verify(eventRepository, never()).save(any());
+
+        List<CertificateEvent> events = eventsCaptor.getValue();
+        assertEquals(2, events.size());
+        assertEquals("cert-2", events.get(1).getCertificateId());
+        assertEquals("grace@example.com", events.get(1).getPurchaserEmail());
+        assertEquals(EventType.GENERATED, events.get(0).getEventType());
+        assertEquals("127.0.0.1", events.get(0).getIpAddress());
+        assertEquals(1.0, meterRegistry.counter("certificates.generated", "book", "Kotlin Cookbook").count());
+    }
+
     @Test
     void shouldTrackCertificateVerified() throws Exception {
         // Given
         String certificateId = "test-cert-123";
-        CertificateMetadata metadata = new CertificateMetadata(certificateId, "test.pdf");
         AnalyticsRequestContext requestContext = new AnalyticsRequestContext("192.168.1.1", null);
 
-        when(metadataRepository.findById(certificateId)).thenReturn(Optional.of(metadata));
-
         // When
         CompletableFuture<Void> future = analyticsService.trackCertificateVerified(certificateId, requestContext);
         future.get();
@@ -98,10 +139,9 @@ class AnalyticsServiceTest {
             event.getCertificateId().equals(certificateId)
         ));
 
-        verify(metadataRepository).save(argThat(m -> 
-            m.getVerificationCount() == 1 &&
-            m.getLastVerifiedAt() != null
-        ));
+        // The count is left to the counter's batched flush, not read and saved per scan
+        verify(verificationCounter).record(eq(certificateId), any(Instant.class));
+        verify(metadataRepository, never()).save(any());
 
         assertEquals(1.0, meterRegistry.counter("certificates.verified").count());
     }
@@ -115,7 +155,7 @@ class AnalyticsServiceTest {
         when(metadataRepository.countTotalCertificates()).thenReturn(100L);
         when(eventRepository.countEventsSince(eq(EventType.GENERATED), any())).thenReturn(10L, 50L, 80L);
         when(metadataRepository.sumTotalVerifications()).thenReturn(200L);
-        when(eventRepository.countUniquePurchasers()).thenReturn(75L);
+        when(uniquePurchaserCounter.countAll()).thenReturn(75L);
         when(eventRepository.findAverageDuration(EventType.GENERATED)).thenReturn(1250.0);
 
         List<Object[]> bookPopularity = Arrays.asList(
@@ -156,6 +196,70 @@ class AnalyticsServiceTest {
         assertNotNull(dashboard.systemMetrics());
     }
 
+    @Test
+    void shouldAggregateDashboardFromColumnStoreOnceLoaded() throws Exception {
+        // Given
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        when(eventRepository.streamDashboardColumns(EventType.API_CALL)).thenReturn(java.util.stream.Stream.of(
+            new Object[]{1L, yesterday, EventType.GENERATED, "Kotlin Cookbook", 900L},
+            new Object[]{2L, yesterday, EventType.GENERATED, "Modern Java Recipes", 1100L}
+        ));
+        when(uniquePurchaserCounter.countAll()).thenReturn(2L);
+        columnStore.rebuild();
+        analyticsService.trackCertificateGenerated("cert-3", "Ada Lovelace", "ada@example.com",
+            "Modern Java Recipes", 1000L, new AnalyticsRequestContext("127.0.0.1", "Test Browser")).get();
+
+        // When
+        AnalyticsDTO.DashboardData dashboard = analyticsService.getDashboardData();
+
+        // Then
+        assertEquals(3L, dashboard.summary().certificatesThisWeek());
+        assertEquals(2L, dashboard.summary().uniquePurchasers());
+        assertEquals(1000.0, dashboard.summary().averageGenerationTime());
+        assertEquals("Modern Java Recipes", dashboard.summary().mostPopularBook());
+        assertEquals(2L, dashboard.bookPopularity().get(0).count());
+        assertEquals(3L, dashboard.dailyTrend().stream().mapToLong(AnalyticsDTO.TimeSeriesData::count).sum());
+        verify(eventRepository, never()).findBookPopularity(any());
+        verify(eventRepository, never()).findDailyEventCounts(any(), any(), any());
+    }
+
+    @Test
+    void shouldCountUniquePurchasersForRangeAndBook() {
+        // Given
+        Instant from = Instant.parse("2025-01-01T00:00:00Z");
+        Instant to = Instant.parse("2025-04-01T00:00:00Z");
+        when(uniquePurchaserCounter.countBetween(from, to)).thenReturn(40L);
+        when(uniquePurchaserCounter.countBetween("Kotlin Cookbook", from, to)).thenReturn(17L);
+
+        // When
+        AnalyticsDTO.UniquePurchasers all = analyticsService.getUniquePurchasers(from, to, null);
+        AnalyticsDTO.UniquePurchasers book = analyticsService.getUniquePurchasers(from, to, "Kotlin Cookbook");
+
+        // Then
+        assertEquals(new AnalyticsDTO.UniquePurchasers(from, to, null, 40L), all);
+        assertEquals(new AnalyticsDTO.UniquePurchasers(from, to, "Kotlin Cookbook", 17L), book);
+    }
+
+    @Test
+    void shouldDefaultUniquePurchaserRangeToLastThirtyDays() {
+        when(uniquePurchaserCounter.countBetween(any(Instant.class), any(Instant.class))).thenReturn(3L);
+
+        AnalyticsDTO.UniquePurchasers counted = analyticsService.getUniquePurchasers(null, null, " ");
+
+        assertEquals(30, ChronoUnit.DAYS.between(counted.from(), counted.to()));
+        assertNull(counted.bookTitle());
+        assertEquals(3L, counted.count());
+    }
+
+    @Test
+    void shouldRejectUniquePurchaserRangeEndingBeforeItStarts() {
+        Instant from = Instant.parse("2025-04-01T00:00:00Z");
+
+        assertThrows(IllegalArgumentException.class,
+            () -> analyticsService.getUniquePurchasers(from, from.minusSeconds(1), null));
+        verifyNoInteractions(uniquePurchaserCounter);
+    }
+
     @Test
     void shouldExtractIpAddressFromXForwardedFor() throws Exception {
         // Given
@@ -179,7 +283,8 @@ class AnalyticsServiceTest {
         AnalyticsRequestContext requestContext = new AnalyticsRequestContext("127.0.0.1", "Test Browser");
 
         // When
-        CompletableFuture<Void> future = analyticsService.trackApiUsage(endpoint, responseTime, requestContext);
+        CompletableFuture<Void> future = analyticsService.trackApiUsage(
+                endpoint, responseTime, 200, EventSampler.Decision.KEEP, requestContext);
         future.get(); // Wait for async completion
 
         // Then
@@ -192,9 +297,6 @@ class AnalyticsServiceTest {
         assertEquals(responseTime, savedEvent.getDurationMs());
         assertEquals("127.0.0.1", savedEvent.getIpAddress());
         assertEquals("Test Browser", savedEvent.getUserAgent());
-
-        // Verify metrics
-        assertEquals(1.0, meterRegistry.counter("api.calls", "endpoint", endpoint).count());
     }
 
     private CertificateEvent createTestEvent(EventType type, String certId, String purchaser, String book) {
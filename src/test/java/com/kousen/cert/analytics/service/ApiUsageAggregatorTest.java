@@ -0,0 +1,106 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ApiUsageAggregatorTest {
+
+    private static final String ENDPOINT = "POST /api/certificates";
+
+    @Mock
+    private AggregatedMetricsRepository metricsRepository;
+
+    @Mock
+    private EventSampler eventSampler;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ApiUsageAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        aggregator = new ApiUsageAggregator(metricsRepository, meterRegistry, eventSampler);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFlushOneSummaryPerEndpoint() {
+        // Given
+        for (long millis = 1; millis <= 100; millis++) {
+            aggregator.record(ENDPOINT, millis, false);
+        }
+        aggregator.record("GET /api/certificates/{id}", 7, false);
+
+        // When
+        aggregator.flush();
+
+        // Then
+        ArgumentCaptor<List<AggregatedMetrics>> captor = ArgumentCaptor.forClass(List.class);
+        verify(metricsRepository).saveAll(captor.capture());
+        Map<String, Double> certificates = captor.getValue().stream()
+                .filter(metric -> metric.getMetricKey().equals(ENDPOINT))
+                .collect(Collectors.toMap(AggregatedMetrics::getMetricName, AggregatedMetrics::getMetricValue));
+        assertThat(certificates).containsEntry("api_usage_count", 100.0)
+                .containsEntry("api_total_response_time", 5050.0)
+                .containsEntry("api_max_response_time", 100.0)
+                .containsEntry("api_p95_response_time", 100.0);
+        assertThat(captor.getValue()).hasSize(8)
+                .allMatch(metric -> metric.getTimeFrame().equals("interval"));
+        assertThat(aggregator.pendingCalls(ENDPOINT)).isZero();
+    }
+
+    @Test
+    void shouldExportEveryCallToMicrometer() {
+        aggregator.record(ENDPOINT, 250, false);
+        aggregator.record(ENDPOINT, 150, false);
+
+        assertThat(meterRegistry.counter("api.calls", "endpoint", ENDPOINT).count()).isEqualTo(2.0);
+        assertThat(meterRegistry.timer("api.response.time", "endpoint", ENDPOINT).count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSkipWriteWhenNothingWasRecorded() {
+        aggregator.flush();
+
+        verify(metricsRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void shouldNotRetainCountsWhenWriteFails() {
+        // Given
+        aggregator.record(ENDPOINT, 10, false);
+        when(metricsRepository.saveAll(anyList())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        // When
+        aggregator.flush();
+
+        // Then
+        assertThat(aggregator.pendingCalls(ENDPOINT)).isZero();
+    }
+
+    @Test
+    void shouldLeaveRawEventDecisionToSampler() {
+        when(eventSampler.decide(EventType.API_CALL, 900L, true)).thenReturn(EventSampler.Decision.KEEP);
+
+        assertThat(aggregator.record(ENDPOINT, 900, true)).isEqualTo(EventSampler.Decision.KEEP);
+    }
+}
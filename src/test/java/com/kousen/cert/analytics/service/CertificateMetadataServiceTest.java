@@ -2,6 +2,7 @@ package com.kousen.cert.analytics.service;
 
 import com.kousen.cert.analytics.model.CertificateMetadata;
 import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import com.kousen.cert.service.TimeOrderedIds;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -9,10 +10,16 @@ import org.mockito.ArgumentCaptor;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -22,12 +29,14 @@ class CertificateMetadataServiceTest {
     Path tempDir;
 
     private CertificateMetadataRepository repository;
+    private IssuedCertificateFilter issuedFilter;
     private CertificateMetadataService service;
 
     @BeforeEach
     void setUp() {
         repository = mock(CertificateMetadataRepository.class);
-        service = new CertificateMetadataService(repository);
+        issuedFilter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+        service = new CertificateMetadataService(repository, issuedFilter);
     }
 
     @Test
@@ -49,6 +58,35 @@ class CertificateMetadataServiceTest {
         assertThat(saved.getFileHash()).hasSize(64).matches("[0-9a-f]+");
     }
 
+    @Test
+    void shouldSaveMetadataWithPrecomputedHashWithoutReadingFile() throws Exception {
+        // When - the file does not exist, so any read would fail
+        service.saveCertificateMetadata("cert-5", tempDir.resolve("never-read.pdf"), "cafebabe", 42L, "f00d").get();
+
+        // Then
+        ArgumentCaptor<CertificateMetadata> captor = ArgumentCaptor.forClass(CertificateMetadata.class);
+        verify(repository).save(captor.capture());
+        assertThat(captor.getValue().getFilename()).isEqualTo("never-read.pdf");
+        assertThat(captor.getValue().getFileHash()).isEqualTo("cafebabe");
+        assertThat(captor.getValue().getFileSize()).isEqualTo(42L);
+        assertThat(captor.getValue().getSignerFingerprint()).isEqualTo("f00d");
+    }
+
+    @Test
+    void shouldSaveBatchOfMetadataInOneCall() throws Exception {
+        // Given
+        List<CertificateMetadata> batch = List.of(
+                new CertificateMetadata("cert-a", "a.pdf"),
+                new CertificateMetadata("cert-b", "b.pdf"));
+
+        // When
+        service.saveAllCertificateMetadata(batch).get();
+
+        // Then
+        verify(repository).saveAll(batch);
+        verify(repository, never()).save(any());
+    }
+
     @Test
     void shouldSaveMetadataWithoutHashWhenFileMissing() throws Exception {
         // When
@@ -73,9 +111,47 @@ class CertificateMetadataServiceTest {
     @Test
     void shouldReturnMetadataByFilename() {
         CertificateMetadata metadata = new CertificateMetadata("cert-4", "file.pdf");
-        when(repository.findByFilename("file.pdf")).thenReturn(Optional.of(metadata));
+        when(repository.findFirstByFilename("file.pdf")).thenReturn(Optional.of(metadata));
 
         assertThat(service.getCertificateMetadataByFilename("file.pdf")).isEqualTo(metadata);
         assertThat(service.getCertificateMetadataByFilename("nope.pdf")).isNull();
     }
+
+    @Test
+    void shouldReturnMetadataByFileHash() {
+        CertificateMetadata metadata = new CertificateMetadata("cert-5", "file.pdf");
+        when(repository.findFirstByFileHash("abc123")).thenReturn(Optional.of(metadata));
+
+        assertThat(service.getCertificateMetadataByFileHash("abc123")).isEqualTo(metadata);
+        assertThat(service.getCertificateMetadataByFileHash("def456")).isNull();
+    }
+
+    @Test
+    void shouldSkipDatabaseForIdThatWasNeverIssued() {
+        // Given
+        when(repository.streamAllCertificateIds()).thenReturn(Stream.of("cert-1", "cert-2"));
+        issuedFilter.rebuild();
+        String forged = new UUID(Instant.parse("2024-01-01T00:00:00Z").toEpochMilli() << 16 | 0x7000L,
+                0x8000_0000_0000_0001L).toString();
+
+        // When
+        CertificateMetadata metadata = service.getCertificateMetadata(forged);
+
+        // Then
+        assertThat(metadata).isNull();
+        verify(repository, never()).findById(forged);
+    }
+
+    @Test
+    void shouldQueryDatabaseForIdIssuedSinceFilterWasLoaded() {
+        // Given - issued by another instance after this one loaded its filter
+        when(repository.streamAllCertificateIds()).thenReturn(Stream.empty());
+        issuedFilter.rebuild();
+        String issuedElsewhere = TimeOrderedIds.next();
+        CertificateMetadata metadata = new CertificateMetadata(issuedElsewhere, "cert.pdf");
+        when(repository.findById(issuedElsewhere)).thenReturn(Optional.of(metadata));
+
+        // When/Then
+        assertThat(service.getCertificateMetadata(issuedElsewhere)).isEqualTo(metadata);
+    }
 }
@@ -0,0 +1,123 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.CertificateEvent;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventColumnStoreTest {
+
+    private static final Instant JAN_1 = Instant.parse("2024-01-01T10:00:00Z");
+    private static final Instant JAN_2 = Instant.parse("2024-01-02T23:30:00Z");
+
+    @Mock
+    private CertificateEventRepository repository;
+
+    private static Object[] row(long id, Instant timestamp, EventType type, String book, Long durationMs) {
+        return new Object[]{id, timestamp, type, book, durationMs};
+    }
+
+    private static CertificateEvent event(long id, Instant timestamp, String book) {
+        CertificateEvent event = new CertificateEvent(EventType.GENERATED, "cert-" + id);
+        event.setId(id);
+        event.setTimestamp(timestamp);
+        event.setBookTitle(book);
+        event.setDurationMs(100L);
+        return event;
+    }
+
+    private EventColumnStore loadedStore() {
+        when(repository.streamDashboardColumns(EventType.API_CALL)).thenReturn(Stream.of(
+                row(1, JAN_1, EventType.GENERATED, "Modern Java Recipes", 800L),
+                row(2, JAN_1, EventType.GENERATED, "Modern Java Recipes", 1200L),
+                row(3, JAN_2, EventType.GENERATED, "Mockito Made Clear", null),
+                row(4, JAN_2, EventType.FAILED, "Mockito Made Clear", 50L)));
+        EventColumnStore store = new EventColumnStore(repository, true);
+        store.rebuild();
+        return store;
+    }
+
+    @Test
+    void shouldAnswerDashboardQueriesAfterLoading() {
+        EventColumnStore store = loadedStore();
+
+        assertThat(store.isReady()).isTrue();
+        assertThat(store.countEventsSince(EventType.GENERATED, JAN_1)).isEqualTo(1);
+        assertThat(store.countEventsSince(EventType.FAILED, Instant.EPOCH)).isEqualTo(1);
+        assertThat(store.averageDuration(EventType.GENERATED)).isEqualTo(1000.0);
+        assertThat(store.averageDuration(EventType.VERIFIED)).isNull();
+    }
+
+    @Test
+    void shouldCountBooksMostPopularFirst() {
+        EventColumnStore store = loadedStore();
+
+        assertThat(store.bookCounts(EventType.GENERATED))
+                .containsExactly(
+                        entry("Modern Java Recipes", 2L),
+                        entry("Mockito Made Clear", 1L));
+    }
+
+    @Test
+    void shouldCountByUtcDayWithinRange() {
+        EventColumnStore store = loadedStore();
+
+        assertThat(store.dailyCounts(EventType.GENERATED, Instant.parse("2024-01-01T00:00:00Z"), JAN_2))
+                .containsExactly(
+                        entry(LocalDate.of(2024, 1, 1), 2L),
+                        entry(LocalDate.of(2024, 1, 2), 1L));
+        assertThat(store.dailyCounts(EventType.GENERATED, JAN_2.plusSeconds(1), Instant.now())).isEmpty();
+    }
+
+    @Test
+    void shouldAddEventsStoredDuringLoadOnlyOnce() {
+        // Given - one event the load will also read, and one it won't
+        EventColumnStore store = new EventColumnStore(repository, true);
+        when(repository.streamDashboardColumns(EventType.API_CALL)).thenReturn(Stream.<Object[]>of(
+                row(1, JAN_1, EventType.GENERATED, "Modern Java Recipes", 800L)));
+        store.add(event(1, JAN_1, "Modern Java Recipes"));
+        store.add(event(2, JAN_2, "Mockito Made Clear"));
+        assertThat(store.isReady()).isFalse();
+
+        // When
+        store.rebuild();
+
+        // Then
+        assertThat(store.countEventsSince(EventType.GENERATED, Instant.EPOCH)).isEqualTo(2);
+        assertThat(store.bookCounts(EventType.GENERATED))
+                .containsOnly(entry("Modern Java Recipes", 1L), entry("Mockito Made Clear", 1L));
+    }
+
+    @Test
+    void shouldIgnoreApiCalls() {
+        EventColumnStore store = loadedStore();
+
+        store.add(new CertificateEvent(EventType.API_CALL, "call-1"));
+
+        assertThat(store.countEventsSince(EventType.API_CALL, Instant.EPOCH)).isZero();
+    }
+
+    @Test
+    void shouldStayUnreadyWhenDisabled() {
+        EventColumnStore store = new EventColumnStore(repository, false);
+
+        store.rebuild();
+
+        assertThat(store.isReady()).isFalse();
+        verify(repository, never()).streamDashboardColumns(EventType.API_CALL);
+    }
+}
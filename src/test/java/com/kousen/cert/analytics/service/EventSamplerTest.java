@@ -0,0 +1,189 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.model.CertificateEvent;
+import com.kousen.cert.analytics.model.CertificateEvent.EventType;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import com.kousen.cert.analytics.service.EventSampler.Decision;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventSamplerTest {
+
+    @Mock
+    private CertificateEventRepository eventRepository;
+
+    @Mock
+    private AggregatedMetricsRepository metricsRepository;
+
+    @Mock
+    private EventColumnStore columnStore;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private EventSampler sampler(double apiCallRate, int reservoirSize) {
+        return new EventSampler(eventRepository, metricsRepository, meterRegistry, columnStore,
+                Map.of(EventType.API_CALL, apiCallRate), reservoirSize, 0.99);
+    }
+
+    @Test
+    void shouldAlwaysKeepUnsampledTypes() {
+        EventSampler sampler = sampler(0.0, 10);
+        CertificateEvent generated = new CertificateEvent(EventType.GENERATED, "cert-1");
+
+        sampler.record(generated);
+
+        verify(eventRepository).save(generated);
+        verify(columnStore).add(generated);
+    }
+
+    @Test
+    void shouldAlwaysKeepFailures() {
+        EventSampler sampler = sampler(0.0, 10);
+
+        assertThat(sampler.decide(EventType.API_CALL, 5L, true)).isEqualTo(Decision.KEEP);
+        assertThat(sampler.decide(EventType.API_CALL, 5L, false)).isEqualTo(Decision.DROP);
+    }
+
+    @Test
+    void shouldKeepEventsSlowerThanPreviousWindowPercentile() {
+        // Given - a window of fast calls and one slow one
+        EventSampler sampler = sampler(0.0, 10);
+        for (int i = 0; i < 99; i++) {
+            sampler.decide(EventType.API_CALL, 8L, false);
+        }
+        sampler.decide(EventType.API_CALL, 900L, false);
+
+        // When
+        sampler.flush();
+
+        // Then
+        assertThat(sampler.slowThreshold(EventType.API_CALL)).isEqualTo(10);
+        assertThat(sampler.decide(EventType.API_CALL, 1200L, false)).isEqualTo(Decision.KEEP);
+        assertThat(sampler.decide(EventType.API_CALL, 3L, false)).isEqualTo(Decision.DROP);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldStoreAtMostReservoirSizePerWindow() {
+        // Given
+        EventSampler sampler = sampler(0.5, 5);
+
+        // When
+        for (int i = 0; i < 50; i++) {
+            CertificateEvent event = new CertificateEvent(EventType.API_CALL, "call-" + i);
+            sampler.store(event, Decision.SAMPLE);
+        }
+        sampler.flush();
+
+        // Then
+        verify(eventRepository, never()).save(any());
+        ArgumentCaptor<List<CertificateEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(eventRepository).saveAll(events.capture());
+        assertThat(events.getValue()).hasSize(5);
+        verify(columnStore).addAll(events.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldWriteExactCountsForSampledTypes() {
+        // Given
+        EventSampler sampler = sampler(0.0, 10);
+        for (int i = 0; i < 7; i++) {
+            sampler.decide(EventType.API_CALL, 5L, false);
+        }
+        sampler.decide(EventType.API_CALL, 5L, true);
+        sampler.record(new CertificateEvent(EventType.GENERATED, "cert-1"));
+
+        // When
+        sampler.flush();
+
+        // Then - unsampled types are counted from their rows, so get no summary
+        ArgumentCaptor<List<AggregatedMetrics>> rows = ArgumentCaptor.forClass(List.class);
+        verify(metricsRepository).saveAll(rows.capture());
+        Map<String, Double> counts = rows.getValue().stream()
+                .peek(row -> assertThat(row.getMetricKey()).isEqualTo("API_CALL"))
+                .collect(Collectors.toMap(AggregatedMetrics::getMetricName, AggregatedMetrics::getMetricValue));
+        assertThat(counts).containsEntry("event_count", 8.0).containsEntry("event_sampled_out", 7.0);
+        assertThat(meterRegistry.counter("analytics.events", "type", "API_CALL", "outcome", "sampled_out").count())
+                .isEqualTo(7.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldCountSampledEventsThatCannotBeWrittenAsSampledOut() {
+        // Given
+        EventSampler sampler = sampler(0.5, 10);
+        when(eventRepository.saveAll(any())).thenThrow(new DataAccessResourceFailureException("Database down"));
+        for (int i = 0; i < 3; i++) {
+            sampler.store(new CertificateEvent(EventType.API_CALL, "call-" + i), Decision.SAMPLE);
+        }
+
+        // When
+        sampler.flush();
+
+        // Then
+        verify(columnStore, never()).addAll(any());
+        ArgumentCaptor<List<AggregatedMetrics>> rows = ArgumentCaptor.forClass(List.class);
+        verify(metricsRepository).saveAll(rows.capture());
+        assertThat(rows.getValue())
+                .filteredOn(row -> row.getMetricName().equals("event_sampled_out"))
+                .singleElement()
+                .satisfies(row -> assertThat(row.getMetricValue()).isEqualTo(3.0));
+        assertThat(meterRegistry.counter("analytics.events", "type", "API_CALL", "outcome", "stored").count())
+                .isZero();
+        assertThat(meterRegistry.counter("analytics.events", "type", "API_CALL", "outcome", "sampled_out").count())
+                .isEqualTo(3.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldKeepCountsWhenTheyCannotBeWritten() {
+        // Given
+        EventSampler sampler = sampler(0.0, 10);
+        when(metricsRepository.saveAll(any()))
+                .thenThrow(new DataAccessResourceFailureException("Database down"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        for (int i = 0; i < 4; i++) {
+            sampler.decide(EventType.API_CALL, 5L, false);
+        }
+        sampler.flush();
+        sampler.decide(EventType.API_CALL, 5L, false);
+
+        // When
+        sampler.flush();
+
+        // Then - the failed window's counts are written with the next one
+        ArgumentCaptor<List<AggregatedMetrics>> rows = ArgumentCaptor.forClass(List.class);
+        verify(metricsRepository, times(2)).saveAll(rows.capture());
+        Map<String, Double> counts = rows.getAllValues().get(1).stream()
+                .collect(Collectors.toMap(AggregatedMetrics::getMetricName, AggregatedMetrics::getMetricValue));
+        assertThat(counts).containsEntry("event_count", 5.0).containsEntry("event_sampled_out", 5.0);
+    }
+
+    @Test
+    void shouldRejectInvalidSampleRate() {
+        assertThatThrownBy(() -> sampler(1.5, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("API_CALL");
+    }
+}
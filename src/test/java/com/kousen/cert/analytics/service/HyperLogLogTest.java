@@ -0,0 +1,89 @@
+package com.kousen.cert.analytics.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    private static HyperLogLog sketchOf(int from, int to) {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = from; i < to; i++) {
+            sketch.add("user" + i + "@example.com");
+        }
+        return sketch;
+    }
+
+    @Test
+    void shouldEstimateLargeCountsWithinThreeStandardErrors() {
+        HyperLogLog sketch = sketchOf(0, 100_000);
+
+        // Standard error at precision 12 is about 1.6%
+        assertThat(sketch.estimate()).isCloseTo(100_000L, within(5_000L));
+    }
+
+    @Test
+    void shouldCountSmallSetsAlmostExactly() {
+        HyperLogLog sketch = sketchOf(0, 50);
+        sketch.add("user0@example.com");
+
+        assertThat(sketch.estimate()).isCloseTo(50L, within(1L));
+        assertThat(new HyperLogLog(12).estimate()).isZero();
+    }
+
+    @Test
+    void shouldMergeToTheCountOfTheUnion() {
+        // Given - two overlapping days
+        HyperLogLog monday = sketchOf(0, 30_000);
+        HyperLogLog tuesday = sketchOf(20_000, 50_000);
+
+        // When
+        HyperLogLog both = monday.copy();
+        both.merge(tuesday);
+
+        // Then - the overlap is counted once, and the copy left monday alone
+        assertThat(both.estimate()).isCloseTo(50_000L, within(2_500L));
+        assertThat(monday.estimate()).isCloseTo(30_000L, within(1_500L));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 20_000})
+    void shouldRoundTripThroughBytes(int count) {
+        HyperLogLog sketch = sketchOf(0, count);
+
+        byte[] bytes = sketch.toBytes();
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+
+        assertThat(restored.precision()).isEqualTo(12);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    void shouldStoreQuietDaysSparsely() {
+        assertThat(sketchOf(0, 100).toBytes()).hasSizeLessThanOrEqualTo(2 + 100 * 3);
+        assertThat(sketchOf(0, 20_000).toBytes()).hasSize(2 + 4096);
+    }
+
+    @Test
+    void shouldRejectInvalidPrecisionAndMismatchedMerge() {
+        assertThatThrownBy(() -> new HyperLogLog(3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(17)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(12).merge(new HyperLogLog(10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectMalformedBytes() {
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{12}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{12, 0, 1, 2}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{12, 1, 0x7f, 0x7f, 3}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
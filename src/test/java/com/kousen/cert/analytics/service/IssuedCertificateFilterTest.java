@@ -0,0 +1,161 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import com.kousen.cert.service.TimeOrderedIds;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IssuedCertificateFilterTest {
+
+    private final CertificateMetadataRepository repository = mock(CertificateMetadataRepository.class);
+    private final Random random = new Random(42);
+
+    // A time-ordered ID created long before any filter in these tests is loaded
+    private String oldId() {
+        return idAt(Instant.parse("2024-01-01T00:00:00Z").plusMillis(random.nextInt(86_400_000)));
+    }
+
+    private String idAt(Instant created) {
+        return new UUID(created.toEpochMilli() << 16 | 0x7000L | (random.nextLong() & 0x0FFFL),
+                random.nextLong() & 0x3FFF_FFFF_FFFF_FFFFL | 0x8000_0000_0000_0000L).toString();
+    }
+
+    @Test
+    void shouldRecognizeEveryIssuedIdAndFewOthers() {
+        // Given
+        List<String> issued = IntStream.range(0, 1000).mapToObj(i -> oldId()).toList();
+        when(repository.streamAllCertificateIds()).thenReturn(issued.stream());
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+
+        // When
+        filter.rebuild();
+
+        // Then - no false negatives, and false positives near the configured 1%
+        assertThat(issued).allMatch(filter::mightContain);
+        long falsePositives = IntStream.range(0, 10_000)
+                .filter(i -> filter.mightContain(oldId()))
+                .count();
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    void shouldAcceptEverythingUntilLoaded() {
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+
+        assertThat(filter.mightContain("anything")).isTrue();
+    }
+
+    @Test
+    void shouldAcceptEverythingWhenDisabled() {
+        var filter = new IssuedCertificateFilter(repository, false, false, 1000, 0.01);
+
+        filter.rebuild();
+
+        assertThat(filter.mightContain("anything")).isTrue();
+        verify(repository, never()).streamAllCertificateIds();
+    }
+
+    @Test
+    void shouldIncludeIdsAddedAfterLoading() {
+        // Given - an ID created before loading whose metadata wasn't saved in time to be loaded
+        when(repository.streamAllCertificateIds()).thenReturn(Stream.empty());
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+        filter.rebuild();
+        String lateId = oldId();
+
+        // When
+        filter.add(lateId);
+
+        // Then
+        assertThat(filter.mightContain(lateId)).isTrue();
+        assertThat(filter.mightContain(oldId())).isFalse();
+    }
+
+    @Test
+    void shouldAcceptIdsNotCreatedBeforeLoading() {
+        // Given
+        when(repository.streamAllCertificateIds()).thenReturn(Stream.empty());
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+        filter.rebuild();
+
+        // Then - possibly issued by another instance since, or created at an unknown time
+        assertThat(filter.mightContain(TimeOrderedIds.next())).isTrue();
+        assertThat(filter.mightContain(UUID.randomUUID().toString())).isTrue();
+        assertThat(filter.mightContain("not-an-id")).isTrue();
+    }
+
+    @Test
+    void shouldRejectIdsStampedInTheFutureEvenBeforeLoading() {
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+
+        assertThat(filter.mightContain(idAt(Instant.now().plus(Duration.ofHours(1))))).isFalse();
+        assertThat(filter.mightContain(TimeOrderedIds.next())).isTrue();
+    }
+
+    @Test
+    void shouldTrustMissesUpToShortlyBeforeTheLatestRefresh() {
+        // Given - loaded at startup
+        Clock clock = mock(Clock.class);
+        Instant startup = Instant.parse("2025-06-01T12:00:00Z");
+        when(clock.instant()).thenReturn(startup);
+        when(repository.streamAllCertificateIds()).thenReturn(Stream.empty());
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01, clock);
+        filter.rebuild();
+        String forged = idAt(startup.plus(Duration.ofMinutes(5)));
+        String issuedElsewhere = idAt(startup.plus(Duration.ofMinutes(2)));
+        assertThat(filter.mightContain(forged)).isTrue();
+
+        // When - refreshed half an hour later, reaching back the ten minute settle time
+        when(clock.instant()).thenReturn(startup.plus(Duration.ofMinutes(30)));
+        when(repository.streamCertificateIdsCreatedAfter(startup.minus(Duration.ofMinutes(10))))
+                .thenReturn(Stream.of(issuedElsewhere));
+        filter.refresh();
+
+        // Then
+        assertThat(filter.mightContain(issuedElsewhere)).isTrue();
+        assertThat(filter.mightContain(forged)).isFalse();
+    }
+
+    @Test
+    void shouldNotRefreshBeforeLoading() {
+        var filter = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+
+        filter.refresh();
+
+        verify(repository, never()).streamCertificateIdsCreatedAfter(any());
+    }
+
+    @Test
+    void shouldTrustLegacyIdMissesOnlyWhenConfigured() {
+        // Given
+        String legacy = UUID.randomUUID().toString();
+        when(repository.streamAllCertificateIds()).thenAnswer(invocation -> Stream.of(legacy));
+        var lookedUp = new IssuedCertificateFilter(repository, true, false, 1000, 0.01);
+        var trusted = new IssuedCertificateFilter(repository, true, true, 1000, 0.01);
+
+        // When
+        lookedUp.rebuild();
+        trusted.rebuild();
+
+        // Then
+        String forged = UUID.randomUUID().toString();
+        assertThat(lookedUp.mightContain(forged)).isTrue();
+        assertThat(trusted.mightContain(forged)).isFalse();
+        assertThat(trusted.mightContain(legacy)).isTrue();
+    }
+}
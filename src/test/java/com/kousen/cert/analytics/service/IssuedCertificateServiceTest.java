@@ -0,0 +1,55 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.model.IssuedCertificate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IssuedCertificateServiceTest {
+
+    private CertificateMetadataService metadataService;
+    private IssuedCertificateService issuedCertificateService;
+
+    @BeforeEach
+    void setUp() {
+        metadataService = mock(CertificateMetadataService.class);
+        issuedCertificateService = new IssuedCertificateService(metadataService, null, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldServeRepeatedScansFromMemory() {
+        // Given
+        CertificateMetadata metadata = new CertificateMetadata("cert-123", "ada.pdf");
+        metadata.setCreatedAt(Instant.parse("2025-04-18T15:30:00Z"));
+        metadata.setFileHash("abc123");
+        when(metadataService.getCertificateMetadata("cert-123")).thenReturn(metadata);
+
+        // When
+        Optional<IssuedCertificate> first = issuedCertificateService.lookup("cert-123");
+        Optional<IssuedCertificate> second = issuedCertificateService.lookup("cert-123");
+
+        // Then
+        assertThat(first).contains(new IssuedCertificate("cert-123", metadata.getCreatedAt(), "abc123"));
+        assertThat(second).isEqualTo(first);
+        verify(metadataService, times(1)).getCertificateMetadata("cert-123");
+        assertThat(issuedCertificateService.cacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRememberUnknownIds() {
+        assertThat(issuedCertificateService.lookup("bogus-id")).isEmpty();
+        assertThat(issuedCertificateService.lookup("bogus-id")).isEmpty();
+
+        verify(metadataService, times(1)).getCertificateMetadata("bogus-id");
+    }
+}
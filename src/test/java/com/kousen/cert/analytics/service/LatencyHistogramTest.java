@@ -0,0 +1,40 @@
+package com.kousen.cert.analytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    void shouldReportBucketBoundAsPercentile() {
+        // 95 calls at 10ms or less, 5 slow ones
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 95; i++) {
+            histogram.record(8);
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.record(480);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.drain();
+
+        assertThat(snapshot.total()).isEqualTo(100);
+        assertThat(snapshot.percentile(0.95)).isEqualTo(10);
+        // Capped at the largest duration rather than the 500ms bucket bound
+        assertThat(snapshot.percentile(0.99)).isEqualTo(480);
+    }
+
+    @Test
+    void shouldStartAfreshAfterDrain() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(20_000);
+        histogram.drain();
+
+        LatencyHistogram.Snapshot snapshot = histogram.drain();
+
+        assertThat(snapshot.total()).isZero();
+        assertThat(snapshot.max()).isZero();
+        assertThat(snapshot.percentile(0.99)).isZero();
+    }
+}
@@ -1,7 +1,6 @@
 package com.kousen.cert.analytics.service;
 
 import com.kousen.cert.analytics.model.AggregatedMetrics;
-import com.kousen.cert.analytics.model.CertificateEvent;
 import com.kousen.cert.analytics.model.CertificateEvent.EventType;
 import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
 import com.kousen.cert.analytics.repository.CertificateEventRepository;
@@ -14,6 +13,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Collections;
@@ -32,6 +33,9 @@ class MetricsAggregationServiceTest {
     @Mock
     private AggregatedMetricsRepository metricsRepository;
 
+    @Mock
+    private UniquePurchaserCounter uniquePurchaserCounter;
+
     @Captor
     private ArgumentCaptor<AggregatedMetrics> metricsCaptor;
 
@@ -39,7 +43,7 @@ class MetricsAggregationServiceTest {
 
     @BeforeEach
     void setUp() {
-        aggregationService = new MetricsAggregationService(eventRepository, metricsRepository);
+        aggregationService = new MetricsAggregationService(eventRepository, metricsRepository, uniquePurchaserCounter);
     }
 
     @Test
@@ -59,22 +63,17 @@ class MetricsAggregationServiceTest {
         // Mock verification count
         when(eventRepository.countEventsBetween(eq(EventType.VERIFIED), any(), any())).thenReturn(15L);
 
-        // Mock API events
-        CertificateEvent apiEvent1 = new CertificateEvent(EventType.API_CALL, "api-1");
-        apiEvent1.setEndpoint("/api/certificates");
-        apiEvent1.setDurationMs(100L);
-
-        CertificateEvent apiEvent2 = new CertificateEvent(EventType.API_CALL, "api-2");
-        apiEvent2.setEndpoint("/api/certificates");
-        apiEvent2.setDurationMs(200L);
-
-        CertificateEvent apiEvent3 = new CertificateEvent(EventType.API_CALL, "api-3");
-        apiEvent3.setEndpoint("/api/verify");
-        apiEvent3.setDurationMs(150L);
-
-        List<CertificateEvent> apiEvents = Arrays.asList(apiEvent1, apiEvent2, apiEvent3);
-        when(eventRepository.findByEventTypeAndTimestampBetween(eq(EventType.API_CALL), any(), any()))
-            .thenReturn(apiEvents);
+        // Mock API usage summaries flushed during the day
+        when(metricsRepository.findInWindow(eq("api_usage_count"), eq("interval"), any(), any()))
+            .thenReturn(Arrays.asList(
+                new AggregatedMetrics("api_usage_count", "POST /api/certificates", "interval", 1.0, yesterday),
+                new AggregatedMetrics("api_usage_count", "POST /api/certificates", "interval", 1.0, yesterday),
+                new AggregatedMetrics("api_usage_count", "POST /api/verify", "interval", 1.0, yesterday)));
+        when(metricsRepository.findInWindow(eq("api_total_response_time"), eq("interval"), any(), any()))
+            .thenReturn(Arrays.asList(
+                new AggregatedMetrics("api_total_response_time", "POST /api/certificates", "interval", 100.0, yesterday),
+                new AggregatedMetrics("api_total_response_time", "POST /api/certificates", "interval", 200.0, yesterday),
+                new AggregatedMetrics("api_total_response_time", "POST /api/verify", "interval", 150.0, yesterday)));
 
         // Mock error count
         when(eventRepository.countEventsBetween(eq(EventType.FAILED), any(), any())).thenReturn(2L);
@@ -99,14 +98,14 @@ class MetricsAggregationServiceTest {
         // Verify API usage metrics were saved
         verify(metricsRepository).save(argThat(metric -> 
             metric.getMetricName().equals("api_usage_count") &&
-            metric.getMetricKey().equals("/api/certificates") &&
+            metric.getMetricKey().equals("POST /api/certificates") &&
             metric.getMetricValue() == 2.0 &&
             metric.getTimeFrame().equals("daily")
         ));
 
         verify(metricsRepository).save(argThat(metric -> 
             metric.getMetricName().equals("api_usage_count") &&
-            metric.getMetricKey().equals("/api/verify") &&
+            metric.getMetricKey().equals("POST /api/verify") &&
             metric.getMetricValue() == 1.0 &&
             metric.getTimeFrame().equals("daily")
         ));
@@ -114,14 +113,14 @@ class MetricsAggregationServiceTest {
         // Verify API response time metrics were saved
         verify(metricsRepository).save(argThat(metric -> 
             metric.getMetricName().equals("api_avg_response_time") &&
-            metric.getMetricKey().equals("/api/certificates") &&
+            metric.getMetricKey().equals("POST /api/certificates") &&
             metric.getMetricValue() == 150.0 &&
             metric.getTimeFrame().equals("daily")
         ));
 
         verify(metricsRepository).save(argThat(metric -> 
             metric.getMetricName().equals("api_avg_response_time") &&
-            metric.getMetricKey().equals("/api/verify") &&
+            metric.getMetricKey().equals("POST /api/verify") &&
             metric.getMetricValue() == 150.0 &&
             metric.getTimeFrame().equals("daily")
         ));
@@ -133,8 +132,11 @@ class MetricsAggregationServiceTest {
             metric.getTimeFrame().equals("daily")
         ));
 
-        // Verify old metrics were cleaned up
-        verify(metricsRepository).deleteByCalculatedAtBefore(any());
+        // Verify yesterday's unique purchasers were recorded
+        verify(uniquePurchaserCounter).recordDay(LocalDate.now(ZoneOffset.UTC).minusDays(1));
+
+        // Verify old metrics were cleaned up, keeping unique purchaser sketches
+        verify(metricsRepository).deleteByCalculatedAtBeforeAndMetricNameNot(any(), eq(UniquePurchaserCounter.METRIC));
     }
 
     @Test
@@ -152,10 +154,6 @@ class MetricsAggregationServiceTest {
         // Mock verification count
         when(eventRepository.countEventsBetween(eq(EventType.VERIFIED), any(), any())).thenReturn(30L);
 
-        // Mock API events (empty list for simplicity)
-        when(eventRepository.findByEventTypeAndTimestampBetween(eq(EventType.API_CALL), any(), any()))
-            .thenReturn(Collections.emptyList());
-
         // Mock error count
         when(eventRepository.countEventsBetween(eq(EventType.FAILED), any(), any())).thenReturn(5L);
 
@@ -0,0 +1,209 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.model.AggregatedMetrics;
+import com.kousen.cert.analytics.repository.AggregatedMetricsRepository;
+import com.kousen.cert.analytics.repository.CertificateEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UniquePurchaserCounterTest {
+
+    private static final Instant JAN_1 = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant JAN_2 = Instant.parse("2024-01-02T00:00:00Z");
+    private static final Instant JAN_3 = Instant.parse("2024-01-03T00:00:00Z");
+    private static final Instant JAN_4 = Instant.parse("2024-01-04T00:00:00Z");
+
+    @Mock
+    private CertificateEventRepository eventRepository;
+
+    @Mock
+    private AggregatedMetricsRepository metricsRepository;
+
+    @Captor
+    private ArgumentCaptor<List<AggregatedMetrics>> savedCaptor;
+
+    private UniquePurchaserCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        counter = new UniquePurchaserCounter(eventRepository, metricsRepository, 12, Duration.ofDays(1));
+    }
+
+    private static Object[] purchase(Instant timestamp, String email, String book) {
+        return new Object[]{timestamp, email, book};
+    }
+
+    private static AggregatedMetrics stored(String key, Instant day, int precision, String... emails) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (String email : emails) {
+            sketch.add(email);
+        }
+        AggregatedMetrics row = new AggregatedMetrics(UniquePurchaserCounter.METRIC, key,
+                UniquePurchaserCounter.TIME_FRAME, (double) sketch.estimate(), day);
+        row.setSketch(sketch.toBytes());
+        return row;
+    }
+
+    @Test
+    void shouldCountShortRangesExactly() {
+        // Given
+        Instant end = JAN_1.plus(Duration.ofHours(6));
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_1);
+        when(eventRepository.findPurchasesBetween(JAN_1, end)).thenReturn(List.of(
+                purchase(JAN_1, "alice@example.com", "Modern Java Recipes"),
+                purchase(JAN_1.plusSeconds(60), "alice@example.com", "Kotlin Cookbook"),
+                purchase(JAN_1.plusSeconds(120), "bob@example.com", "Kotlin Cookbook")));
+
+        // When/Then
+        assertThat(counter.countBetween(JAN_1, end)).isEqualTo(2);
+        assertThat(counter.countBetween("Modern Java Recipes", JAN_1, end)).isEqualTo(1);
+        verify(metricsRepository, never()).findInWindow(any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldComputeAndStoreMissingDays() {
+        // Given - no sketches stored yet
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_1);
+        when(metricsRepository.findInWindow(UniquePurchaserCounter.METRIC, UniquePurchaserCounter.TIME_FRAME,
+                JAN_1, JAN_4)).thenReturn(List.of());
+        when(eventRepository.findPurchasesBetween(JAN_1, JAN_4)).thenReturn(List.of(
+                purchase(JAN_1.plusSeconds(3600), "alice@example.com", "Modern Java Recipes"),
+                purchase(JAN_2.plusSeconds(3600), "alice@example.com", "Kotlin Cookbook"),
+                purchase(JAN_2.plusSeconds(7200), "bob@example.com", "Modern Java Recipes")));
+
+        // When
+        long count = counter.countBetween(JAN_1, JAN_4);
+
+        // Then - one sketch over all books per day, even an empty one, plus one per book sold that day
+        assertThat(count).isEqualTo(2);
+        verify(metricsRepository).saveAll(savedCaptor.capture());
+        List<AggregatedMetrics> saved = savedCaptor.getValue();
+        assertThat(saved).hasSize(6);
+        assertThat(saved).filteredOn(row -> row.getMetricKey().equals(UniquePurchaserCounter.ALL_BOOKS))
+                .extracting(AggregatedMetrics::getTimestamp, AggregatedMetrics::getMetricValue)
+                .containsExactly(
+                        tuple(JAN_1, 1.0),
+                        tuple(JAN_2, 2.0),
+                        tuple(JAN_3, 0.0));
+        assertThat(saved).allSatisfy(row -> assertThat(row.getSketch()).isNotNull());
+    }
+
+    @Test
+    void shouldMergeStoredDaysWithPartialDaysFromEvents() {
+        // Given - whole days Jan 2 and 3 are stored; the edges are read from events
+        Instant start = JAN_1.plus(Duration.ofHours(12));
+        Instant end = JAN_4.plus(Duration.ofHours(6));
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_1);
+        when(metricsRepository.findInWindow(UniquePurchaserCounter.METRIC, UniquePurchaserCounter.TIME_FRAME,
+                JAN_2, JAN_4)).thenReturn(List.of(
+                stored(UniquePurchaserCounter.ALL_BOOKS, JAN_2, 12, "alice@example.com", "bob@example.com"),
+                stored("Kotlin Cookbook", JAN_2, 12, "bob@example.com"),
+                stored(UniquePurchaserCounter.ALL_BOOKS, JAN_3, 12, "carol@example.com")));
+        when(eventRepository.findPurchasesBetween(start, JAN_2)).thenReturn(List.<Object[]>of(
+                purchase(start.plusSeconds(60), "dave@example.com", "Kotlin Cookbook")));
+        when(eventRepository.findPurchasesBetween(JAN_4, end)).thenReturn(List.<Object[]>of(
+                purchase(JAN_4.plusSeconds(60), "alice@example.com", "Modern Java Recipes")));
+
+        // When/Then
+        assertThat(counter.countBetween(start, end)).isEqualTo(4);
+        assertThat(counter.countBetween("Kotlin Cookbook", start, end)).isEqualTo(2);
+        verify(metricsRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void shouldClampRangeStartingFarInThePastToTheFirstPurchase() {
+        // Given - the first purchase was on Jan 2
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_2);
+        when(metricsRepository.findInWindow(UniquePurchaserCounter.METRIC, UniquePurchaserCounter.TIME_FRAME,
+                JAN_2, JAN_4)).thenReturn(List.of());
+        when(eventRepository.findPurchasesBetween(JAN_2, JAN_4)).thenReturn(List.<Object[]>of(
+                purchase(JAN_2.plusSeconds(60), "alice@example.com", "Kotlin Cookbook")));
+
+        // When
+        long count = counter.countBetween(Instant.parse("0001-01-01T00:00:00Z"), JAN_4);
+
+        // Then - only the days since the first purchase are computed and stored
+        assertThat(count).isEqualTo(1);
+        verify(metricsRepository).saveAll(savedCaptor.capture());
+        assertThat(savedCaptor.getValue()).filteredOn(row -> row.getMetricKey().equals(UniquePurchaserCounter.ALL_BOOKS))
+                .extracting(AggregatedMetrics::getTimestamp)
+                .containsExactly(JAN_2, JAN_3);
+    }
+
+    @Test
+    void shouldCountNothingInRangeBeforeTheFirstPurchase() {
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_4);
+
+        assertThat(counter.countBetween(JAN_1, JAN_3)).isZero();
+        counter.recordDay(LocalDate.ofInstant(JAN_1, ZoneOffset.UTC));
+
+        verify(metricsRepository, never()).findInWindow(any(), any(), any(), any());
+        verify(metricsRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void shouldRecomputeDaysStoredAtAnotherPrecision() {
+        // Given
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(JAN_1);
+        when(metricsRepository.findInWindow(UniquePurchaserCounter.METRIC, UniquePurchaserCounter.TIME_FRAME,
+                JAN_1, JAN_2)).thenReturn(List.of(
+                stored(UniquePurchaserCounter.ALL_BOOKS, JAN_1, 10, "alice@example.com")));
+        when(eventRepository.findPurchasesBetween(JAN_1, JAN_2)).thenReturn(List.<Object[]>of(
+                purchase(JAN_1.plusSeconds(60), "alice@example.com", null)));
+
+        // When
+        counter.recordDay(LocalDate.ofInstant(JAN_1, ZoneOffset.UTC));
+
+        // Then
+        verify(metricsRepository).saveAll(savedCaptor.capture());
+        assertThat(savedCaptor.getValue()).singleElement()
+                .satisfies(row -> assertThat(HyperLogLog.fromBytes(row.getSketch()).precision()).isEqualTo(12));
+    }
+
+    @Test
+    void shouldCountRecentHistoryExactly() {
+        Instant first = Instant.now().minus(Duration.ofHours(2));
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(first);
+        when(eventRepository.findPurchasesBetween(eq(first), any())).thenReturn(List.of(
+                purchase(first, "alice@example.com", "Modern Java Recipes"),
+                purchase(first.plusSeconds(60), "bob@example.com", "Modern Java Recipes")));
+
+        assertThat(counter.countAll()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCountNoPurchasersBeforeTheFirstPurchase() {
+        when(eventRepository.findFirstPurchaseTime()).thenReturn(null);
+
+        assertThat(counter.countAll()).isZero();
+    }
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        assertThatThrownBy(() -> new UniquePurchaserCounter(eventRepository, metricsRepository, 20, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new UniquePurchaserCounter(eventRepository, metricsRepository, 12,
+                Duration.ofDays(-1))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package com.kousen.cert.analytics.service;
+
+import com.kousen.cert.analytics.repository.CertificateMetadataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VerificationCounterTest {
+
+    private static final Instant EARLIER = Instant.parse("2025-04-18T15:30:00Z");
+    private static final Instant LATER = Instant.parse("2025-04-18T15:31:00Z");
+
+    private CertificateMetadataRepository repository;
+    private VerificationCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CertificateMetadataRepository.class);
+        counter = new VerificationCounter(repository, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void shouldCoalesceScansIntoOneUpdatePerCertificate() {
+        // Given
+        counter.record("cert-1", LATER);
+        counter.record("cert-1", EARLIER);
+        counter.record("cert-1", EARLIER);
+        counter.record("cert-2", EARLIER);
+
+        // When
+        counter.flush();
+
+        // Then - counts are summed and the latest scan time wins
+        verify(repository).addVerifications("cert-1", 3, LATER);
+        verify(repository).addVerifications("cert-2", 1, EARLIER);
+        assertThat(counter.pendingCertificates()).isZero();
+    }
+
+    @Test
+    void shouldNotTouchDatabaseWhenNothingWasScanned() {
+        counter.record("cert-1", EARLIER);
+        counter.flush();
+
+        counter.flush();
+
+        verify(repository, times(1)).addVerifications(anyString(), anyInt(), any());
+    }
+
+    @Test
+    void shouldKeepCountsWhenFlushFails() {
+        // Given
+        when(repository.addVerifications(anyString(), anyInt(), any()))
+                .thenThrow(new DataAccessResourceFailureException("Database down"));
+        counter.record("cert-1", EARLIER);
+        counter.record("cert-1", LATER);
+
+        // When
+        counter.flush();
+
+        // Then - retried on the next flush
+        assertThat(counter.pendingCertificates()).isEqualTo(1);
+        org.mockito.Mockito.reset(repository);
+        counter.flush();
+        verify(repository).addVerifications("cert-1", 2, LATER);
+    }
+
+    @Test
+    void shouldNotLoseConcurrentScans() throws Exception {
+        // Given
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 10_000; i++) {
+            pool.execute(() -> counter.record("popular", EARLIER));
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        counter.flush();
+
+        // Then
+        verify(repository).addVerifications("popular", 10_000, EARLIER);
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void shouldNotLoseScansThatRaceAFlush() throws Exception {
+        // Given - flushed counts are summed as they are written
+        AtomicLong written = new AtomicLong();
+        when(repository.addVerifications(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            written.addAndGet(invocation.<Integer>getArgument(1));
+            return 1;
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            pool.execute(() -> {
+                // Sparse scans over many certificates, so entries keep going idle and being removed
+                for (int i = 0; i < 20_000; i++) {
+                    counter.record("cert-" + ThreadLocalRandom.current().nextInt(500), EARLIER);
+                }
+            });
+        }
+        pool.shutdown();
+
+        // When - flushing continuously while the scans run
+        while (!pool.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            counter.flush();
+        }
+        counter.flush();
+
+        // Then
+        assertThat(written.get()).isEqualTo(160_000);
+        assertThat(counter.pendingCertificates()).isZero();
+    }
+}
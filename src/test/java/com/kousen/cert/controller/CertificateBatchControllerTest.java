@@ -0,0 +1,144 @@
+package com.kousen.cert.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
+import com.kousen.cert.config.SecurityConfig;
+import com.kousen.cert.model.CertificateBatchRequest;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateBatchService;
+import com.kousen.cert.service.CertificateBatchService.BatchItem;
+import com.kousen.cert.service.CertificateStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(CertificateBatchController.class)
+@Import(SecurityConfig.class)
+@ActiveProfiles("test")
+class CertificateBatchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private CertificateBatchService batchService;
+
+    @MockitoBean
+    private AnalyticsService analyticsService;
+
+    @MockitoBean
+    private ApiUsageAggregator apiUsageAggregator;
+
+    @Test
+    void shouldStreamZipOfIssuedCertificates() throws Exception {
+        // Given
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest grace = new CertificateRequest("Grace Hopper", "Kotlin Cookbook", Optional.empty());
+        when(batchService.issueAll(any(), any())).thenReturn(List.of(
+                new BatchItem(0, ada, "cert-1",
+                        new CertificateStorageService.StoredCertificate(Path.of("ada.pdf"), "abc", 3), 10, null),
+                new BatchItem(1, grace, "cert-2", null, 5, "Signer unavailable")));
+        doAnswer(invocation -> {
+            invocation.<java.io.OutputStream>getArgument(1).write("ZIP".getBytes());
+            return null;
+        }).when(batchService).writeArchive(any(), any());
+
+        // When
+        MvcResult result = mockMvc.perform(post("/api/certificates/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CertificateBatchRequest(List.of(ada, grace)))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(header().string("X-Certificates-Issued", "1"))
+                .andExpect(header().string("X-Certificates-Failed", "1"))
+                .andExpect(content().string("ZIP"));
+    }
+
+    @Test
+    void shouldReturnCombinedPdfWhenRequested() throws Exception {
+        // Given
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        Path combined = Files.createTempFile("test-batch-", ".pdf");
+        Files.writeString(combined, "%PDF-combined");
+        when(batchService.issueCombined(any(), any())).thenReturn(new CertificateBatchService.CombinedBatch(
+                List.of("cert-1"), new CertificateStorageService.StoredCertificate(combined, "abc", 13)));
+
+        try {
+            // When/Then
+            mockMvc.perform(post("/api/certificates/batch")
+                            .param("format", "pdf")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(new CertificateBatchRequest(List.of(ada)))))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                    .andExpect(header().string("X-Certificates-Issued", "1"))
+                    .andExpect(content().string("%PDF-combined"));
+        } finally {
+            Files.deleteIfExists(combined);
+        }
+    }
+
+    @Test
+    void shouldAskClientToRetryWhenWorkersAreBacklogged() throws Exception {
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        when(batchService.issueAll(any(), any())).thenThrow(new RejectedExecutionException("Backlog full"));
+
+        mockMvc.perform(post("/api/certificates/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CertificateBatchRequest(List.of(ada)))))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    @Test
+    void shouldRejectEmptyBatch() throws Exception {
+        mockMvc.perform(post("/api/certificates/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CertificateBatchRequest(List.of()))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors.certificates").exists());
+    }
+
+    @Test
+    void shouldRejectBatchWithInvalidItem() throws Exception {
+        CertificateRequest invalid = new CertificateRequest("", "Modern Java Recipes", Optional.empty());
+
+        mockMvc.perform(post("/api/certificates/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CertificateBatchRequest(List.of(invalid)))))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -1,18 +1,29 @@
 package com.kousen.cert.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousen.cert.analytics.model.CertificateMetadata;
 import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
 import com.kousen.cert.analytics.service.CertificateMetadataService;
 import com.kousen.cert.config.SecurityConfig;
 import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateIssuanceService;
 import com.kousen.cert.service.CertificateStorageService;
+import com.kousen.cert.service.CertificateVerificationService;
+import com.kousen.cert.service.KeyStoreProvider;
 import com.kousen.cert.service.PdfService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.pdfbox.pdmodel.PDDocument; // Import PDFBox
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -26,16 +37,18 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(CertificateController.class)
-@Import(SecurityConfig.class)
+@Import({SecurityConfig.class, CertificateIssuanceService.class, CertificateVerificationService.class})
 @org.springframework.test.context.ActiveProfiles("test")
 class CertificateControllerTest {
 
@@ -45,6 +58,9 @@ class CertificateControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private KeyStoreProvider keyStoreProvider;
+
     @MockitoBean
     private PdfService pdfService;
     
@@ -53,10 +69,22 @@ class CertificateControllerTest {
     
     @MockitoBean
     private AnalyticsService analyticsService;
+
+    @MockitoBean
+    private ApiUsageAggregator apiUsageAggregator;
     
     @MockitoBean
     private CertificateMetadataService metadataService;
 
+    @TestConfiguration
+    static class MetricsConfig {
+        @Bean
+        @Primary
+        MeterRegistry testMeterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
     @Test
     void shouldCreateCertificateAndReturnPdf() throws Exception {
         // Given
@@ -79,7 +107,8 @@ class CertificateControllerTest {
         Files.copy(tempPdf, storedPdf, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
 
         when(pdfService.createPdf(any(), any())).thenReturn(tempPdf);
-        when(storageService.storeCertificate(any(), any())).thenReturn(storedPdf);
+        when(storageService.storeCertificate(any(), any())).thenReturn(
+                new CertificateStorageService.StoredCertificate(storedPdf, "abc123", Files.size(storedPdf)));
 
         // When/Then
         mockMvc.perform(post("/api/certificates")
@@ -119,6 +148,24 @@ class CertificateControllerTest {
                 .andExpect(jsonPath("$.documentIntact").value(false));
     }
 
+    @Test
+    void shouldVerifyCopyOfIssuedCertificateFromItsRecord() throws Exception {
+        // Given - bytes that aren't even a PDF, but whose hash matches a stored certificate
+        CertificateMetadata issued = new CertificateMetadata("cert-123", "certificate.pdf");
+        issued.setSignerFingerprint(keyStoreProvider.certificateFingerprint());
+        when(metadataService.getCertificateMetadataByFileHash(anyString())).thenReturn(issued);
+        when(metadataService.countCertificatesByFileHash(anyString())).thenReturn(1L);
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "certificate.pdf", MediaType.APPLICATION_PDF_VALUE, "issued-bytes".getBytes());
+
+        // When/Then
+        mockMvc.perform(multipart("/api/certificates/verify").file(file))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.documentIntact").value(true))
+                .andExpect(jsonPath("$.signedByThisService").value(true))
+                .andExpect(jsonPath("$.message").value(org.hamcrest.Matchers.containsString("cert-123")));
+    }
+
     @Test
     void shouldRejectEmptyUploadForVerification() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
@@ -139,7 +186,7 @@ class CertificateControllerTest {
 
     @Test
     void shouldReturn404WhenStoredCertificateNotFound() throws Exception {
-        when(storageService.getCertificate("missing.pdf"))
+        when(storageService.loadCertificate("missing.pdf"))
                 .thenThrow(new java.io.IOException("Certificate not found: missing.pdf"));
 
         mockMvc.perform(get("/api/certificates/stored/missing.pdf"))
@@ -162,7 +209,7 @@ class CertificateControllerTest {
         try {
             Files.writeString(tempPdf, "Test PDF content");
             String filename = tempPdf.getFileName().toString();
-            when(storageService.getCertificate(filename)).thenReturn(tempPdf);
+            when(storageService.loadCertificate(filename)).thenReturn(new FileSystemResource(tempPdf));
             var metadata = new com.kousen.cert.analytics.model.CertificateMetadata("cert-9", filename);
             when(metadataService.getCertificateMetadataByFilename(filename)).thenReturn(metadata);
 
@@ -177,6 +224,57 @@ class CertificateControllerTest {
         }
     }
 
+    @Test
+    void shouldAnswerConditionalDownloadWithNotModified() throws Exception {
+        // Given
+        Path tempPdf = Files.createTempFile("test-cert-", ".pdf");
+        try {
+            Files.writeString(tempPdf, "Test PDF content");
+            String filename = tempPdf.getFileName().toString();
+            when(storageService.loadCertificate(filename)).thenReturn(new FileSystemResource(tempPdf));
+            var metadata = new com.kousen.cert.analytics.model.CertificateMetadata("cert-10", filename);
+            metadata.setFileHash("abc123");
+            when(metadataService.getCertificateMetadataByFilename(filename)).thenReturn(metadata);
+
+            // When/Then - the stored hash is the entity tag
+            mockMvc.perform(get("/api/certificates/stored/" + filename))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("ETag", "\"abc123\""))
+                    .andExpect(header().string("Accept-Ranges", "bytes"));
+
+            // A matching If-None-Match is answered without a body or a tracked download
+            mockMvc.perform(get("/api/certificates/stored/" + filename)
+                            .header("If-None-Match", "\"abc123\""))
+                    .andExpect(status().isNotModified())
+                    .andExpect(content().string(""));
+
+            org.mockito.Mockito.verify(analyticsService, org.mockito.Mockito.times(1))
+                    .trackCertificateDownloaded(org.mockito.ArgumentMatchers.eq("cert-10"), any());
+        } finally {
+            Files.deleteIfExists(tempPdf);
+        }
+    }
+
+    @Test
+    void shouldServeByteRangeOfStoredCertificate() throws Exception {
+        // Given
+        Path tempPdf = Files.createTempFile("test-cert-", ".pdf");
+        try {
+            Files.writeString(tempPdf, "Test PDF content");
+            String filename = tempPdf.getFileName().toString();
+            when(storageService.loadCertificate(filename)).thenReturn(new FileSystemResource(tempPdf));
+
+            // When/Then
+            mockMvc.perform(get("/api/certificates/stored/" + filename)
+                            .header("Range", "bytes=0-3"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string("Content-Range", "bytes 0-3/16"))
+                    .andExpect(content().string("Test"));
+        } finally {
+            Files.deleteIfExists(tempPdf);
+        }
+    }
+
     @Test
     void shouldTrackErrorWhenGenerationFails() throws Exception {
         // Given
@@ -258,7 +356,7 @@ class CertificateControllerTest {
             
             // Set up the mock to return the real file
             String filename = tempPdf.getFileName().toString();
-            when(storageService.getCertificate(filename)).thenReturn(tempPdf);
+            when(storageService.loadCertificate(filename)).thenReturn(new FileSystemResource(tempPdf));
             
             // When/Then - should work with a real file
             mockMvc.perform(get("/api/certificates/stored/" + filename))
@@ -0,0 +1,139 @@
+package com.kousen.cert.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
+import com.kousen.cert.config.SecurityConfig;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateJobService;
+import com.kousen.cert.service.CertificateJobService.JobState;
+import com.kousen.cert.service.CertificateJobService.JobStatus;
+import com.kousen.cert.service.CertificateStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(CertificateJobController.class)
+@Import(SecurityConfig.class)
+@ActiveProfiles("test")
+class CertificateJobControllerTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T12:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private CertificateJobService jobService;
+
+    @MockitoBean
+    private CertificateStorageService storageService;
+
+    @MockitoBean
+    private AnalyticsService analyticsService;
+
+    @MockitoBean
+    private ApiUsageAggregator apiUsageAggregator;
+
+    private final CertificateRequest request = new CertificateRequest(
+            "Adm. Grace Hopper", "Making Java Groovy", Optional.empty());
+
+    @Test
+    void shouldAcceptJobAndReturnLocation() throws Exception {
+        when(jobService.submit(any(), any())).thenReturn(status("job-1", JobState.QUEUED, null));
+
+        mockMvc.perform(post("/api/certificates/jobs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/certificates/jobs/job-1"))
+                .andExpect(jsonPath("$.jobId").value("job-1"))
+                .andExpect(jsonPath("$.state").value("QUEUED"));
+    }
+
+    @Test
+    void shouldAnswerServiceUnavailableWhenQueueIsFull() throws Exception {
+        when(jobService.submit(any(), any())).thenThrow(new RejectedExecutionException("full"));
+
+        mockMvc.perform(post("/api/certificates/jobs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void shouldReturnJobStatus() throws Exception {
+        when(jobService.getStatus("job-1"))
+                .thenReturn(Optional.of(status("job-1", JobState.SUCCEEDED, "certificate_test.pdf")));
+
+        mockMvc.perform(get("/api/certificates/jobs/job-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.certificateId").value("cert-job-1"));
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownJob() throws Exception {
+        when(jobService.getStatus("missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/certificates/jobs/missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldDownloadCertificateOfFinishedJob() throws Exception {
+        when(jobService.getStatus("job-1"))
+                .thenReturn(Optional.of(status("job-1", JobState.SUCCEEDED, "certificate_test.pdf")));
+        when(storageService.loadCertificate("certificate_test.pdf"))
+                .thenReturn(new ByteArrayResource("%PDF-test".getBytes()));
+
+        mockMvc.perform(get("/api/certificates/jobs/job-1/certificate"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                .andExpect(content().string("%PDF-test"));
+    }
+
+    @Test
+    void shouldRejectDownloadWhileJobIsRunning() throws Exception {
+        when(jobService.getStatus("job-1"))
+                .thenReturn(Optional.of(status("job-1", JobState.RUNNING, null)));
+
+        mockMvc.perform(get("/api/certificates/jobs/job-1/certificate"))
+                .andExpect(status().isConflict());
+    }
+
+    private static JobStatus status(String jobId, JobState state, String filename) {
+        boolean finished = state == JobState.SUCCEEDED || state == JobState.FAILED;
+        return new JobStatus(jobId, state, NOW,
+                state == JobState.QUEUED ? null : NOW,
+                finished ? NOW.plusMillis(250) : null,
+                state == JobState.QUEUED ? null : 0L,
+                finished ? 250L : null,
+                filename != null ? "cert-" + jobId : null,
+                filename,
+                null);
+    }
+}
@@ -0,0 +1,109 @@
+package com.kousen.cert.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
+import com.kousen.cert.config.SecurityConfig;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificatePreviewService;
+import com.kousen.cert.service.CertificatePreviewService.Preview;
+import com.kousen.cert.service.CertificatePreviewService.PreviewFormat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(CertificatePreviewController.class)
+@Import(SecurityConfig.class)
+@ActiveProfiles("test")
+class CertificatePreviewControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private CertificatePreviewService previewService;
+
+    @MockitoBean
+    private AnalyticsService analyticsService;
+
+    @MockitoBean
+    private ApiUsageAggregator apiUsageAggregator;
+
+    private final CertificateRequest request = new CertificateRequest(
+            "Ada Lovelace", "Kotlin Cookbook", Optional.empty());
+
+    @Test
+    void shouldReturnPngThumbnailByDefault() throws Exception {
+        when(previewService.render(any(), eq(PreviewFormat.PNG), eq(72)))
+                .thenReturn(new Preview("PNG".getBytes(), PreviewFormat.PNG));
+
+        mockMvc.perform(post("/api/certificates/preview")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().exists("X-Certificate-Preview"))
+                .andExpect(content().string("PNG"));
+
+        // Previews are not recorded as API usage
+        verify(analyticsService, never()).trackApiUsage(anyString(), anyLong(), anyInt(), any(), any());
+        verify(apiUsageAggregator, never()).record(anyString(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void shouldReturnPdfPreviewWhenRequested() throws Exception {
+        when(previewService.render(any(), eq(PreviewFormat.PDF), anyInt()))
+                .thenReturn(new Preview("%PDF-preview".getBytes(), PreviewFormat.PDF));
+
+        mockMvc.perform(post("/api/certificates/preview")
+                        .param("format", "pdf")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                .andExpect(content().string("%PDF-preview"));
+    }
+
+    @Test
+    void shouldRejectUnsupportedFormat() throws Exception {
+        mockMvc.perform(post("/api/certificates/preview")
+                        .param("format", "gif")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectInvalidRequest() throws Exception {
+        CertificateRequest invalid = new CertificateRequest("", "Kotlin Cookbook", Optional.empty());
+
+        mockMvc.perform(post("/api/certificates/preview")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(invalid)))
+                .andExpect(status().isBadRequest());
+    }
+}
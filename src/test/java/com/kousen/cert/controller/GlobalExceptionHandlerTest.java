@@ -9,6 +9,7 @@ import org.springframework.http.ProblemDetail;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.util.Collections;
 import java.util.Iterator;
@@ -105,4 +106,18 @@ class GlobalExceptionHandlerTest {
         assertThat(detail.getDetail()).isEqualTo("Something was wrong with the request");
         assertThat(detail.getProperties()).containsKey("timestamp");
     }
+
+    @Test
+    void shouldBuildProblemDetailForOversizedUpload() {
+        // Given
+        var ex = new MaxUploadSizeExceededException(10 * 1024 * 1024);
+
+        // When
+        ProblemDetail detail = handler.handleMaxUploadSizeExceeded(ex);
+
+        // Then
+        assertThat(detail.getStatus()).isEqualTo(413);
+        assertThat(detail.getTitle()).isEqualTo("Payload Too Large");
+        assertThat(detail.getProperties()).containsEntry("maxUploadSize", 10L * 1024 * 1024);
+    }
 }
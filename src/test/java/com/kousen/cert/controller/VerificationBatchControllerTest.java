@@ -0,0 +1,119 @@
+package com.kousen.cert.controller;
+
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.ApiUsageAggregator;
+import com.kousen.cert.config.SecurityConfig;
+import com.kousen.cert.service.BatchVerificationService;
+import com.kousen.cert.service.BatchVerificationService.FileVerification;
+import com.kousen.cert.service.BatchVerificationService.SpooledFile;
+import com.kousen.cert.service.BatchVerificationService.VerificationBatch;
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(VerificationBatchController.class)
+@Import(SecurityConfig.class)
+@ActiveProfiles("test")
+class VerificationBatchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private BatchVerificationService batchVerificationService;
+
+    @MockitoBean
+    private AnalyticsService analyticsService;
+
+    @MockitoBean
+    private ApiUsageAggregator apiUsageAggregator;
+
+    @Test
+    void shouldStreamOneJsonLinePerFile() throws Exception {
+        // Given
+        VerificationResult valid = new VerificationResult(true, true, true, true, "CN=Test", null, "ok");
+        when(batchVerificationService.submit(any())).thenAnswer(invocation -> {
+            List<SpooledFile> files = invocation.getArgument(0);
+            return (VerificationBatch) onResult -> {
+                onResult.accept(new FileVerification(1, files.get(1).filename(), null, "Disk gone"));
+                onResult.accept(new FileVerification(0, files.get(0).filename(), valid, null));
+            };
+        });
+
+        // When
+        MvcResult result = mockMvc.perform(multipart("/api/certificates/verify/batch")
+                        .file(new MockMultipartFile("files", "ada.pdf", MediaType.APPLICATION_PDF_VALUE, "a".getBytes()))
+                        .file(new MockMultipartFile("files", "grace.pdf", MediaType.APPLICATION_PDF_VALUE, "g".getBytes())))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then - lines arrive in completion order
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string("X-Certificates-Submitted", "2"))
+                .andReturn().getResponse().getContentAsString();
+        List<String> lines = body.lines().toList();
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).contains("\"filename\":\"grace.pdf\"", "\"error\":\"Disk gone\"");
+        assertThat(lines.get(1)).contains("\"filename\":\"ada.pdf\"", "\"documentIntact\":true");
+        verify(batchVerificationService).checkBatchSize(2);
+    }
+
+    @Test
+    void shouldSpoolArchiveThroughService() throws Exception {
+        when(batchVerificationService.submit(any())).thenReturn(onResult -> {});
+        MockMultipartFile archive = new MockMultipartFile(
+                "archive", "certificates.zip", "application/zip", "PK".getBytes());
+
+        mockMvc.perform(multipart("/api/certificates/verify/batch").file(archive))
+                .andExpect(request().asyncStarted());
+
+        verify(batchVerificationService).spoolArchive(any());
+    }
+
+    @Test
+    void shouldAskClientToRetryWhenWorkersAreBacklogged() throws Exception {
+        when(batchVerificationService.submit(any()))
+                .thenThrow(new RejectedExecutionException("Backlog full"));
+
+        mockMvc.perform(multipart("/api/certificates/verify/batch")
+                        .file(new MockMultipartFile("files", "ada.pdf", MediaType.APPLICATION_PDF_VALUE, "a".getBytes())))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    @Test
+    void shouldRejectRequestWithoutFiles() throws Exception {
+        doThrow(new IllegalArgumentException("No PDF files to verify"))
+                .when(batchVerificationService).checkBatchSize(anyInt());
+
+        mockMvc.perform(multipart("/api/certificates/verify/batch"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -1,8 +1,8 @@
 package com.kousen.cert.controller;
 
-import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.model.IssuedCertificate;
 import com.kousen.cert.analytics.service.AnalyticsService;
-import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,6 +12,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Instant;
+import java.util.Optional;
+
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -27,8 +30,8 @@ class VerificationControllerTest {
     static class TestConfig {
         @Bean
         @Primary
-        public CertificateMetadataService testMetadataService() {
-            return mock(CertificateMetadataService.class);
+        public IssuedCertificateService testIssuedCertificateService() {
+            return mock(IssuedCertificateService.class);
         }
 
         @Bean
@@ -40,8 +43,9 @@ class VerificationControllerTest {
         @Bean
         @Primary
         public VerificationController verificationController(AnalyticsService analyticsService,
-                                                             CertificateMetadataService metadataService) {
-            return new VerificationController("Test certificate fingerprint", analyticsService, metadataService);
+                                                             IssuedCertificateService issuedCertificateService) {
+            return new VerificationController("Test certificate fingerprint", analyticsService,
+                    issuedCertificateService);
         }
     }
 
@@ -49,7 +53,7 @@ class VerificationControllerTest {
     private MockMvc mockMvc;
 
     @Autowired
-    private CertificateMetadataService metadataService;
+    private IssuedCertificateService issuedCertificateService;
 
     @Test
     void shouldReturnVerificationPageWithDefaultValues() throws Exception {
@@ -88,9 +92,8 @@ class VerificationControllerTest {
     @Test
     void shouldConfirmCertificateWhenRecordExists() throws Exception {
         // Given
-        CertificateMetadata metadata = new CertificateMetadata("cert-123", "john_doe.pdf");
-        metadata.setFileHash("abc123hash");
-        when(metadataService.getCertificateMetadata("cert-123")).thenReturn(metadata);
+        when(issuedCertificateService.lookup("cert-123"))
+                .thenReturn(Optional.of(new IssuedCertificate("cert-123", null, "abc123hash")));
 
         // When/Then
         mockMvc.perform(get("/verify-certificate").param("id", "cert-123"))
@@ -100,10 +103,22 @@ class VerificationControllerTest {
                 .andExpect(model().attribute("fileHash", "abc123hash"));
     }
 
+    @Test
+    void shouldTakeIssueDateFromRecordWhenUrlOmitsIt() throws Exception {
+        // Given
+        when(issuedCertificateService.lookup("cert-123")).thenReturn(Optional.of(
+                new IssuedCertificate("cert-123", Instant.parse("2025-04-18T15:30:00Z"), "abc123hash")));
+
+        // When/Then
+        mockMvc.perform(get("/verify-certificate").param("id", "cert-123"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("issueDate", "2025-04-18"));
+    }
+
     @Test
     void shouldReportMissingRecordForUnknownCertificateId() throws Exception {
         // Given
-        when(metadataService.getCertificateMetadata("bogus-id")).thenReturn(null);
+        when(issuedCertificateService.lookup("bogus-id")).thenReturn(Optional.empty());
 
         // When/Then
         mockMvc.perform(get("/verify-certificate").param("id", "bogus-id"))
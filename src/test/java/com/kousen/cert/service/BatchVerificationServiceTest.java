@@ -0,0 +1,188 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.service.BatchVerificationService.FileVerification;
+import com.kousen.cert.service.BatchVerificationService.SpooledFile;
+import com.kousen.cert.service.BatchVerificationService.VerificationBatch;
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchVerificationServiceTest {
+
+    private static final VerificationResult VALID =
+            new VerificationResult(true, true, true, true, "CN=Test", null, "ok");
+
+    @TempDir
+    Path tempDir;
+
+    private CertificateVerificationService verificationService;
+    private BatchVerificationService batchService;
+
+    @BeforeEach
+    void setUp() {
+        verificationService = mock(CertificateVerificationService.class);
+        batchService = new BatchVerificationService(verificationService, 2, 1, 3, DataSize.ofBytes(64));
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    void shouldReportEveryFileAndDeleteSpooledCopies() throws Exception {
+        // Given
+        SpooledFile ada = spooled("ada.pdf");
+        SpooledFile grace = spooled("grace.pdf");
+        when(verificationService.verify(any(Path.class))).thenReturn(VALID);
+
+        // When
+        List<FileVerification> results = new CopyOnWriteArrayList<>();
+        batchService.verifyAll(List.of(ada, grace), results::add);
+
+        // Then
+        assertThat(results).extracting(FileVerification::filename).containsExactlyInAnyOrder("ada.pdf", "grace.pdf");
+        assertThat(results).extracting(FileVerification::index).containsExactlyInAnyOrder(0, 1);
+        assertThat(results).extracting(FileVerification::result).containsOnly(VALID);
+        assertThat(ada.path()).doesNotExist();
+        assertThat(grace.path()).doesNotExist();
+    }
+
+    @Test
+    void shouldReportUnreadableFileWithoutFailingBatch() throws Exception {
+        // Given
+        SpooledFile ok = spooled("ok.pdf");
+        SpooledFile broken = spooled("broken.pdf");
+        when(verificationService.verify(ok.path())).thenReturn(VALID);
+        when(verificationService.verify(broken.path())).thenThrow(new IOException("Disk gone: " + broken.path()));
+
+        // When
+        List<FileVerification> results = new CopyOnWriteArrayList<>();
+        batchService.verifyAll(List.of(ok, broken), results::add);
+
+        // Then
+        assertThat(results).hasSize(2);
+        FileVerification failed = results.stream().filter(r -> r.index() == 1).findFirst().orElseThrow();
+        assertThat(failed.result()).isNull();
+        assertThat(failed.error()).isEqualTo(BatchVerificationService.FILE_FAILED_MESSAGE);
+    }
+
+    @Test
+    void shouldRejectWholeBatchWhenBacklogIsFull() throws Exception {
+        // Given - a batch of two slow files holds two of the three worker slots
+        SpooledFile slow1 = spooled("slow1.pdf");
+        SpooledFile slow2 = spooled("slow2.pdf");
+        SpooledFile next1 = spooled("next1.pdf");
+        SpooledFile next2 = spooled("next2.pdf");
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        when(verificationService.verify(any(Path.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return VALID;
+        });
+        VerificationBatch first = batchService.submit(List.of(slow1, slow2));
+        try {
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // When/Then - the next batch doesn't fit, so none of it is verified and its files are gone
+            assertThatThrownBy(() -> batchService.submit(List.of(next1, next2)))
+                    .isInstanceOf(RejectedExecutionException.class);
+            verify(verificationService, never()).verify(next1.path());
+            assertThat(next1.path()).doesNotExist();
+            assertThat(next2.path()).doesNotExist();
+        } finally {
+            release.countDown();
+        }
+        List<FileVerification> results = new CopyOnWriteArrayList<>();
+        first.forEachResult(results::add);
+        assertThat(results).extracting(FileVerification::result).containsOnly(VALID);
+    }
+
+    @Test
+    void shouldRefuseMaximumBatchLargerThanBacklog() {
+        assertThatThrownBy(() -> new BatchVerificationService(verificationService, 2, 1, 4, DataSize.ofBytes(64)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldExtractOnlyPdfsFromArchive() throws Exception {
+        byte[] archive = zip("a.pdf", "%PDF-a", "notes.txt", "hello", "nested/b.PDF", "%PDF-b");
+
+        List<SpooledFile> spooled = batchService.spoolArchive(new ByteArrayInputStream(archive));
+
+        try {
+            assertThat(spooled).extracting(SpooledFile::filename).containsExactly("a.pdf", "nested/b.PDF");
+            assertThat(Files.readString(spooled.get(1).path())).isEqualTo("%PDF-b");
+        } finally {
+            for (SpooledFile file : spooled) {
+                Files.deleteIfExists(file.path());
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectArchiveEntryLargerThanUploadLimit() throws Exception {
+        byte[] archive = zip("huge.pdf", "%PDF-" + "x".repeat(100));
+
+        assertThatThrownBy(() -> batchService.spoolArchive(new ByteArrayInputStream(archive)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("huge.pdf");
+    }
+
+    @Test
+    void shouldRejectArchiveWithTooManyPdfs() throws Exception {
+        byte[] archive = zip("1.pdf", "1", "2.pdf", "2", "3.pdf", "3", "4.pdf", "4");
+
+        assertThatThrownBy(() -> batchService.spoolArchive(new ByteArrayInputStream(archive)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maximum of 3");
+    }
+
+    @Test
+    void shouldRejectEmptyBatch() {
+        assertThatThrownBy(() -> batchService.checkBatchSize(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private SpooledFile spooled(String filename) throws IOException {
+        return new SpooledFile(filename, Files.writeString(tempDir.resolve(filename), "%PDF-" + filename));
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
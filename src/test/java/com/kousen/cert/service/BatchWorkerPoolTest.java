@@ -0,0 +1,28 @@
+package com.kousen.cert.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchWorkerPoolTest {
+
+    @Test
+    void shouldFreeSlotsOfTasksTheExecutorRejects() {
+        // Given - a whole batch reserved on a pool that is shutting down
+        BatchWorkerPool pool = new BatchWorkerPool("test-", 1, 1);
+        pool.reserve(pool.capacity());
+        pool.shutdown();
+
+        // When
+        for (int i = 0; i < pool.capacity(); i++) {
+            assertThatThrownBy(() -> pool.execute(() -> {}))
+                    .isInstanceOf(RejectedExecutionException.class);
+        }
+
+        // Then
+        assertThatCode(() -> pool.reserve(pool.capacity())).doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,246 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.analytics.model.CertificateGeneration;
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.service.AnalyticsService;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.analytics.service.IssuedCertificateFilter;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateBatchService.BatchItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CertificateBatchServiceTest {
+
+    private static final AnalyticsRequestContext CONTEXT =
+            new AnalyticsRequestContext("127.0.0.1", "JUnit");
+
+    @TempDir
+    Path tempDir;
+
+    private CertificateIssuanceService issuanceService;
+    private AnalyticsService analyticsService;
+    private CertificateMetadataService metadataService;
+    private IssuedCertificateFilter issuedFilter;
+    private CertificateBatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        issuanceService = mock(CertificateIssuanceService.class);
+        analyticsService = mock(AnalyticsService.class);
+        metadataService = mock(CertificateMetadataService.class);
+        issuedFilter = mock(IssuedCertificateFilter.class);
+        batchService = new CertificateBatchService(issuanceService, analyticsService, metadataService, issuedFilter,
+                2, 1, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldIssueBatchInOrderAndRecordItOnce() throws Exception {
+        // Given
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest grace = new CertificateRequest("Grace Hopper", "Kotlin Cookbook",
+                Optional.of("grace@example.com"));
+        when(issuanceService.produce(eq(ada), anyString())).thenReturn(stored("ada.pdf", "Ada"));
+        when(issuanceService.produce(eq(grace), anyString())).thenReturn(stored("grace.pdf", "Grace"));
+
+        // When
+        List<BatchItem> items = batchService.issueAll(List.of(ada, grace), CONTEXT);
+
+        // Then
+        assertThat(items).extracting(BatchItem::index).containsExactly(0, 1);
+        assertThat(items).allMatch(BatchItem::succeeded);
+        assertThat(items).extracting(BatchItem::certificateId).doesNotHaveDuplicates();
+
+        ArgumentCaptor<List<CertificateGeneration>> generations = ArgumentCaptor.forClass(List.class);
+        verify(analyticsService).trackCertificatesGenerated(generations.capture(), eq(CONTEXT));
+        assertThat(generations.getValue()).extracting(CertificateGeneration::purchaserName)
+                .containsExactly("Ada Lovelace", "Grace Hopper");
+
+        ArgumentCaptor<List<CertificateMetadata>> metadata = ArgumentCaptor.forClass(List.class);
+        verify(metadataService).saveAllCertificateMetadata(metadata.capture());
+        assertThat(metadata.getValue()).extracting(CertificateMetadata::getFilename)
+                .containsExactly("ada.pdf", "grace.pdf");
+        items.forEach(item -> verify(issuedFilter).add(item.certificateId()));
+        verify(analyticsService, never()).trackCertificateError(any(), any());
+    }
+
+    @Test
+    void shouldReportFailedItemsWithoutFailingBatch() throws Exception {
+        // Given
+        CertificateRequest ok = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest bad = new CertificateRequest("Grace Hopper", "Kotlin Cookbook", Optional.empty());
+        when(issuanceService.produce(eq(ok), anyString())).thenReturn(stored("ada.pdf", "Ada"));
+        when(issuanceService.produce(eq(bad), anyString()))
+                .thenThrow(new IOException("Font exploded: /opt/fonts/serif.ttf"));
+
+        // When
+        List<BatchItem> items = batchService.issueAll(List.of(ok, bad), CONTEXT);
+
+        // Then
+        assertThat(items.get(0).succeeded()).isTrue();
+        assertThat(items.get(1).succeeded()).isFalse();
+        assertThat(items.get(1).error()).isEqualTo(CertificateBatchService.ITEM_FAILED_MESSAGE);
+        verify(analyticsService, times(1)).trackCertificateError(CertificateBatchService.ITEM_FAILED_MESSAGE, CONTEXT);
+        verify(analyticsService).trackCertificatesGenerated(any(), eq(CONTEXT));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldIssueCombinedPdfWithMetadataPerCertificate() throws Exception {
+        // Given
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest grace = new CertificateRequest("Grace Hopper", "Kotlin Cookbook", Optional.empty());
+        CertificateStorageService.StoredCertificate combined = stored("batch_2_certificates.pdf", "Both");
+        when(issuanceService.produceCombined(eq(List.of(ada, grace)), any())).thenReturn(combined);
+        when(issuanceService.signerFingerprint()).thenReturn("f00d");
+
+        // When
+        CertificateBatchService.CombinedBatch batch = batchService.issueCombined(List.of(ada, grace), CONTEXT);
+
+        // Then
+        assertThat(batch.stored()).isEqualTo(combined);
+        assertThat(batch.certificateIds()).hasSize(2).doesNotHaveDuplicates();
+
+        ArgumentCaptor<List<CertificateMetadata>> metadata = ArgumentCaptor.forClass(List.class);
+        verify(metadataService).saveAllCertificateMetadata(metadata.capture());
+        assertThat(metadata.getValue()).extracting(CertificateMetadata::getCertificateId)
+                .containsExactlyElementsOf(batch.certificateIds());
+        assertThat(metadata.getValue()).extracting(CertificateMetadata::getFilename)
+                .containsOnly("batch_2_certificates.pdf");
+        assertThat(metadata.getValue()).extracting(CertificateMetadata::getSignerFingerprint).containsOnly("f00d");
+        batch.certificateIds().forEach(id -> verify(issuedFilter).add(id));
+        verify(analyticsService).trackCertificatesGenerated(any(), eq(CONTEXT));
+    }
+
+    @Test
+    void shouldTrackErrorWhenCombinedPdfFails() throws Exception {
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        when(issuanceService.produceCombined(any(), any())).thenThrow(new IOException("Signer unavailable"));
+
+        assertThatThrownBy(() -> batchService.issueCombined(List.of(ada), CONTEXT))
+                .isInstanceOf(IOException.class);
+        verify(analyticsService).trackCertificateError("Signer unavailable", CONTEXT);
+        verify(metadataService, never()).saveAllCertificateMetadata(any());
+    }
+
+    @Test
+    void shouldRejectBatchLargerThanMaximum() {
+        CertificateRequest req = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+
+        assertThatThrownBy(() -> batchService.issueAll(List.of(req, req, req, req), CONTEXT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maximum of 3");
+    }
+
+    @Test
+    void shouldRejectWholeBatchWhenBacklogIsFull() throws Exception {
+        // Given - a batch of two slow certificates holds two of the three worker slots
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest grace = new CertificateRequest("Grace Hopper", "Kotlin Cookbook", Optional.empty());
+        CertificateStorageService.StoredCertificate adaPdf = stored("ada.pdf", "Ada");
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        when(issuanceService.produce(eq(ada), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return adaPdf;
+        });
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<BatchItem>> first = caller.submit(() -> batchService.issueAll(List.of(ada, ada), CONTEXT));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // When/Then - the next batch doesn't fit, so none of it is issued
+            assertThatThrownBy(() -> batchService.issueAll(List.of(grace, grace), CONTEXT))
+                    .isInstanceOf(RejectedExecutionException.class);
+            verify(issuanceService, never()).produce(eq(grace), anyString());
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).allMatch(BatchItem::succeeded);
+        } finally {
+            release.countDown();
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void shouldRefuseMaximumBatchLargerThanBacklog() {
+        assertThatThrownBy(() -> new CertificateBatchService(issuanceService, analyticsService, metadataService,
+                issuedFilter, 2, 1, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldWriteZipWithCertificatesAndManifest() throws Exception {
+        // Given
+        CertificateRequest ada = new CertificateRequest("Ada Lovelace", "Modern Java Recipes", Optional.empty());
+        CertificateRequest grace = new CertificateRequest("Hopper, Grace", "Kotlin Cookbook", Optional.empty());
+        List<BatchItem> items = List.of(
+                new BatchItem(0, ada, "cert-1", stored("ada.pdf", "Ada PDF"), 10, null),
+                new BatchItem(1, grace, "cert-2", null, 5, "Signer unavailable"));
+
+        // When
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeArchive(items, out);
+
+        // Then
+        Map<String, String> entries = new HashMap<>();
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(entries).containsOnlyKeys("ada.pdf", CertificateBatchService.MANIFEST_NAME);
+        assertThat(entries.get("ada.pdf")).isEqualTo("Ada PDF");
+        assertThat(entries.get(CertificateBatchService.MANIFEST_NAME))
+                .contains("0,cert-1,Ada Lovelace,Modern Java Recipes,ada.pdf,")
+                .contains("1,,\"Hopper, Grace\",Kotlin Cookbook,,,FAILED,Signer unavailable");
+    }
+
+    private CertificateStorageService.StoredCertificate stored(String filename, String content) throws IOException {
+        Path path = tempDir.resolve(filename);
+        Files.writeString(path, content);
+        return new CertificateStorageService.StoredCertificate(path, "abc123", Files.size(path));
+    }
+}
@@ -0,0 +1,185 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.AnalyticsRequestContext;
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificateJobService.JobState;
+import com.kousen.cert.service.CertificateJobService.JobStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CertificateJobServiceTest {
+
+    private static final CertificateRequest REQUEST = new CertificateRequest(
+            "Test User", "Modern Java Recipes", Optional.empty());
+    private static final AnalyticsRequestContext CONTEXT =
+            new AnalyticsRequestContext("127.0.0.1", "JUnit");
+
+    private CertificateIssuanceService issuanceService;
+    private CertificateJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        issuanceService = mock(CertificateIssuanceService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jobService != null) {
+            jobService.shutdown();
+        }
+    }
+
+    @Test
+    void shouldRunQueuedJobAndReportResult() throws Exception {
+        jobService = newJobService(2, 10, false, Clock.systemUTC());
+        when(issuanceService.issue(any(), any())).thenReturn(issued("cert-123", "certificate_test.pdf"));
+
+        JobStatus submitted = jobService.submit(REQUEST, CONTEXT);
+        assertThat(submitted.jobId()).isNotBlank();
+        assertThat(submitted.submittedAt()).isNotNull();
+
+        JobStatus finished = awaitFinished(submitted.jobId());
+        assertThat(finished.state()).isEqualTo(JobState.SUCCEEDED);
+        assertThat(finished.certificateId()).isEqualTo("cert-123");
+        assertThat(finished.filename()).isEqualTo("certificate_test.pdf");
+        assertThat(finished.queuedMillis()).isNotNull();
+        assertThat(finished.runMillis()).isNotNull();
+        assertThat(finished.error()).isNull();
+    }
+
+    @Test
+    void shouldRecordFailedJobs() throws Exception {
+        jobService = newJobService(1, 10, true, Clock.systemUTC());
+        when(issuanceService.issue(any(), any()))
+                .thenThrow(new IOException("Signer unavailable: /opt/certs/keystore.p12"));
+
+        JobStatus finished = awaitFinished(jobService.submit(REQUEST, CONTEXT).jobId());
+
+        // The cause stays in the server log
+        assertThat(finished.state()).isEqualTo(JobState.FAILED);
+        assertThat(finished.error()).isEqualTo(CertificateJobService.JOB_FAILED_MESSAGE)
+                .doesNotContain("keystore");
+        assertThat(finished.certificateId()).isNull();
+    }
+
+    @Test
+    void shouldRejectJobsWhenQueueIsFull() throws Exception {
+        jobService = newJobService(1, 1, false, Clock.systemUTC());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(issuanceService.issue(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return issued("cert-1", "certificate_1.pdf");
+        });
+
+        try {
+            // One job occupies the only worker, the next fills the queue
+            jobService.submit(REQUEST, CONTEXT);
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            JobStatus queued = jobService.submit(REQUEST, CONTEXT);
+            assertThat(jobService.getStatus(queued.jobId()))
+                    .get()
+                    .extracting(JobStatus::state)
+                    .isEqualTo(JobState.QUEUED);
+
+            assertThatThrownBy(() -> jobService.submit(REQUEST, CONTEXT))
+                    .isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldPurgeFinishedJobsAfterRetention() throws Exception {
+        MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        jobService = newJobService(1, 10, false, clock);
+        when(issuanceService.issue(any(), any())).thenReturn(issued("cert-123", "certificate_test.pdf"));
+
+        String jobId = jobService.submit(REQUEST, CONTEXT).jobId();
+        awaitFinished(jobId);
+
+        jobService.purgeExpiredJobs();
+        assertThat(jobService.getStatus(jobId)).isPresent();
+
+        clock.advance(Duration.ofHours(2));
+        jobService.purgeExpiredJobs();
+        assertThat(jobService.getStatus(jobId)).isEmpty();
+    }
+
+    @Test
+    void shouldReturnEmptyStatusForUnknownJob() {
+        jobService = newJobService(1, 10, false, Clock.systemUTC());
+
+        assertThat(jobService.getStatus("no-such-job")).isEmpty();
+    }
+
+    private CertificateJobService newJobService(int workers, int queueCapacity, boolean virtualThreads, Clock clock) {
+        return new CertificateJobService(issuanceService, new SimpleMeterRegistry(),
+                workers, queueCapacity, virtualThreads, Duration.ofHours(1), clock);
+    }
+
+    private static CertificateIssuanceService.IssuedCertificate issued(String certificateId, String filename) {
+        return new CertificateIssuanceService.IssuedCertificate(certificateId,
+                new CertificateStorageService.StoredCertificate(Path.of(filename), "abc123", 16));
+    }
+
+    private JobStatus awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            JobStatus status = jobService.getStatus(jobId).orElseThrow();
+            if (status.state() == JobState.SUCCEEDED || status.state() == JobState.FAILED) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish in time");
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.model.CertificateRequest;
+import com.kousen.cert.service.CertificatePreviewService.Preview;
+import com.kousen.cert.service.CertificatePreviewService.PreviewFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CertificatePreviewServiceTest {
+
+    private final CertificateRequest request =
+            new CertificateRequest("Ada Lovelace", "Kotlin Cookbook", Optional.empty());
+
+    private PdfService pdfService;
+    private CertificatePreviewService previewService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pdfService = mock(PdfService.class);
+        when(pdfService.renderPreview(any(), anyFloat()))
+                .thenReturn(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB));
+        when(pdfService.createPreviewPdf(any())).thenReturn("%PDF-preview".getBytes());
+        previewService = new CertificatePreviewService(pdfService, null, 150, 1024 * 1024);
+    }
+
+    @Test
+    void shouldRenderPngThumbnail() throws Exception {
+        Preview preview = previewService.render(request, PreviewFormat.PNG, 72);
+
+        assertThat(preview.format()).isEqualTo(PreviewFormat.PNG);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(preview.content()));
+        assertThat(image.getWidth()).isEqualTo(40);
+        verify(pdfService).renderPreview(request, 72f);
+    }
+
+    @Test
+    void shouldServeRepeatedPreviewFromCache() throws Exception {
+        // Email doesn't appear on the certificate, so it doesn't split the cache
+        var sameCertificate = new CertificateRequest("Ada Lovelace", "Kotlin Cookbook",
+                Optional.of("ada@example.com"));
+
+        previewService.render(request, PreviewFormat.PNG, 72);
+        previewService.render(sameCertificate, PreviewFormat.PNG, 72);
+        previewService.render(request, PreviewFormat.PNG, 96);
+
+        verify(pdfService, times(1)).renderPreview(any(), eq(72f));
+        verify(pdfService, times(1)).renderPreview(any(), eq(96f));
+        assertThat(previewService.cacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRenderAgainOnceTheDateInTheQrLinkChanges() throws Exception {
+        // Given
+        Clock clock = mock(Clock.class);
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(
+                Instant.parse("2025-04-18T23:59:00Z"),
+                Instant.parse("2025-04-18T23:59:30Z"),
+                Instant.parse("2025-04-19T00:00:30Z"));
+        previewService = new CertificatePreviewService(pdfService, null, 150, 1024 * 1024, clock);
+
+        // When
+        previewService.render(request, PreviewFormat.PNG, 72);
+        previewService.render(request, PreviewFormat.PNG, 72);
+        previewService.render(request, PreviewFormat.PNG, 72);
+
+        // Then - the first repeat is a hit, the one after midnight isn't
+        verify(pdfService, times(2)).renderPreview(any(), eq(72f));
+        assertThat(previewService.cacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldIgnoreResolutionForPdfPreviews() throws Exception {
+        Preview first = previewService.render(request, PreviewFormat.PDF, 72);
+        Preview second = previewService.render(request, PreviewFormat.PDF, 10_000);
+
+        assertThat(second).isSameAs(first);
+        assertThat(new String(first.content())).isEqualTo("%PDF-preview");
+        verify(pdfService, times(1)).createPreviewPdf(any());
+    }
+
+    @Test
+    void shouldRejectResolutionOutOfRange() {
+        assertThatThrownBy(() -> previewService.render(request, PreviewFormat.PNG, 600))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("between " + CertificatePreviewService.MIN_DPI + " and 150");
+    }
+
+    @Test
+    void shouldPropagateRenderingFailures() throws Exception {
+        when(pdfService.renderPreview(any(), anyFloat())).thenThrow(new IOException("Font exploded"));
+
+        assertThatThrownBy(() -> previewService.render(request, PreviewFormat.JPEG, 72))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Font exploded");
+    }
+
+    @Test
+    void shouldParseFormatNames() {
+        assertThat(PreviewFormat.from("png")).isEqualTo(PreviewFormat.PNG);
+        assertThat(PreviewFormat.from("JPG")).isEqualTo(PreviewFormat.JPEG);
+        assertThat(PreviewFormat.from(" pdf ")).isEqualTo(PreviewFormat.PDF);
+        assertThatThrownBy(() -> PreviewFormat.from("webp"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("png, jpeg or pdf");
+    }
+}
@@ -39,7 +39,7 @@ class CertificateStorageServiceTest {
         Files.writeString(tempPdf, "Test PDF content");
         
         // When
-        Path storedPath = storageService.storeCertificate(tempPdf, request);
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
         
         // Then
         assertThat(storedPath).exists();
@@ -60,6 +60,27 @@ class CertificateStorageServiceTest {
         assertThat(retrievedPath).isEqualTo(storedPath);
     }
     
+    @Test
+    void shouldHashCertificateWhileStoringIt() throws Exception {
+        // Given
+        CertificateRequest request = new CertificateRequest(
+                "Hash Tester",
+                "Kotlin Cookbook",
+                Optional.empty()
+        );
+        Path tempPdf = Files.createTempFile(tempDir, "temp-cert-", ".pdf");
+        Files.writeString(tempPdf, "Test PDF content");
+
+        // When
+        var stored = storageService.storeCertificate(tempPdf, request);
+
+        // Then - hash and size describe the bytes actually written
+        byte[] expected = java.security.MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(stored.path()));
+        assertThat(stored.sha256()).isEqualTo(java.util.HexFormat.of().formatHex(expected));
+        assertThat(stored.size()).isEqualTo(Files.size(stored.path()));
+    }
+
     @Test
     void shouldSanitizeFilenames() throws IOException {
         // Given
@@ -74,7 +95,7 @@ class CertificateStorageServiceTest {
         Files.writeString(tempPdf, "Test PDF content");
         
         // When
-        Path storedPath = storageService.storeCertificate(tempPdf, request);
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
         
         // Then - special characters should be sanitized
         String filename = storedPath.getFileName().toString();
@@ -98,7 +119,7 @@ class CertificateStorageServiceTest {
         Files.writeString(tempPdf, "Test PDF content");
         
         // When
-        Path storedPath = storageService.storeCertificate(tempPdf, request);
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
         
         // Then - book title should be abbreviated if needed
         String filename = storedPath.getFileName().toString();
@@ -106,6 +127,94 @@ class CertificateStorageServiceTest {
         assertThat(filename).contains("mockitomadeclear");
     }
 
+    @Test
+    void shouldServeCertificatesMovedToArchiveTier() throws Exception {
+        // Given - a stored certificate last modified long ago
+        CertificateRequest request = new CertificateRequest(
+                "Archie Ved",
+                "Help Your Boss Help You",
+                Optional.empty()
+        );
+        Path tempPdf = Files.createTempFile(tempDir, "temp-cert-", ".pdf");
+        Files.writeString(tempPdf, "Old PDF content ".repeat(100));
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
+        Files.delete(tempPdf);
+        String filename = storedPath.getFileName().toString();
+        byte[] original = Files.readAllBytes(storedPath);
+        Files.setLastModifiedTime(storedPath,
+                java.nio.file.attribute.FileTime.from(java.time.Instant.now().minus(java.time.Duration.ofDays(90))));
+
+        // When
+        int archived = storageService.archiveCertificatesOlderThan(java.time.Duration.ofDays(30));
+
+        // Then - gone from the storage directory, but still served transparently
+        assertThat(archived).isEqualTo(1);
+        assertThat(storedPath).doesNotExist();
+        assertThat(storageService.listAllCertificates()).isEmpty();
+        assertThat(storageService.listArchivedCertificates())
+                .extracting(CertificateStorageService.ArchivedCertificate::filename)
+                .containsExactly(filename);
+
+        var resource = storageService.loadCertificate(filename);
+        assertThat(resource.isFile()).isFalse();
+        assertThat(resource.contentLength()).isEqualTo(original.length);
+        try (var in = resource.getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(original);
+        }
+    }
+
+    @Test
+    void shouldFindArchivedCertificatesWithoutOpeningPacks() throws Exception {
+        // Given - a certificate archived before this instance started
+        CertificateRequest request = new CertificateRequest("Archie Ved", "Kotlin Cookbook", Optional.empty());
+        Path tempPdf = Files.createTempFile(tempDir, "temp-cert-", ".pdf");
+        Files.writeString(tempPdf, "Old PDF content");
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
+        Files.delete(tempPdf);
+        Files.setLastModifiedTime(storedPath,
+                java.nio.file.attribute.FileTime.from(java.time.Instant.now().minus(java.time.Duration.ofDays(90))));
+        storageService.archiveCertificatesOlderThan(java.time.Duration.ofDays(30));
+        String filename = storedPath.getFileName().toString();
+
+        // When - restarted, then a pack becomes unreadable
+        CertificateStorageService restarted = new CertificateStorageService(tempDir.toString());
+        try (var packs = Files.list(tempDir.resolve("archive"))) {
+            for (Path pack : packs.toList()) {
+                Files.writeString(pack, "not a zip");
+            }
+        }
+
+        // Then - the archived certificate is found from the index built at startup,
+        // and an unknown one is not found without reading any pack
+        assertThat(restarted.loadCertificate(filename).getFilename()).isEqualTo(filename);
+        assertThatThrownBy(() -> restarted.loadCertificate("made_up_20240101000000.pdf"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Certificate not found");
+    }
+
+    @Test
+    void shouldKeepRecentCertificatesInStorageDirectory() throws Exception {
+        // Given
+        CertificateRequest request = new CertificateRequest(
+                "Fresh Reader",
+                "Kotlin Cookbook",
+                Optional.empty()
+        );
+        Path tempPdf = Files.createTempFile(tempDir, "temp-cert-", ".pdf");
+        Files.writeString(tempPdf, "New PDF content");
+        Path storedPath = storageService.storeCertificate(tempPdf, request).path();
+
+        // When
+        int archived = storageService.archiveCertificatesOlderThan(java.time.Duration.ofDays(30));
+
+        // Then
+        assertThat(archived).isZero();
+        assertThat(storageService.loadCertificate(storedPath.getFileName().toString()).isFile()).isTrue();
+        assertThatThrownBy(() -> storageService.loadCertificate("unknown.pdf"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Certificate not found");
+    }
+
     @Test
     void shouldRejectPathTraversalInFilename() throws IOException {
         // Given - a file outside the storage directory
@@ -127,4 +236,51 @@ class CertificateStorageServiceTest {
             Files.deleteIfExists(outsideFile);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldNotOverwriteCertificateStoredInSameSecond() throws IOException {
+        // Given
+        CertificateRequest request = new CertificateRequest(
+                "Jane Doe",
+                "Kotlin Cookbook",
+                Optional.empty()
+        );
+        Path first = Files.createTempFile("first-", ".pdf");
+        Path second = Files.createTempFile("second-", ".pdf");
+        Files.writeString(first, "First certificate");
+        Files.writeString(second, "Second certificate");
+
+        try {
+            // When - both land on the same timestamped name unless made unique
+            Path storedFirst = storageService.storeCertificate(first, request).path();
+            Path storedSecond = storageService.storeCertificate(second, request).path();
+
+            // Then
+            assertThat(storedSecond).isNotEqualTo(storedFirst);
+            assertThat(Files.readString(storedFirst)).isEqualTo("First certificate");
+            assertThat(Files.readString(storedSecond)).isEqualTo("Second certificate");
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+
+    @Test
+    void shouldStoreCombinedCertificateUnderBatchName() throws IOException {
+        // Given
+        Path combined = Files.createTempFile("combined-", ".pdf");
+        Files.writeString(combined, "Three certificates");
+
+        try {
+            // When
+            var stored = storageService.storeCombinedCertificate(combined, 3);
+
+            // Then
+            assertThat(stored.path().getParent()).isEqualTo(tempDir);
+            assertThat(stored.path().getFileName().toString()).startsWith("batch_3_certificates_");
+            assertThat(stored.size()).isEqualTo(Files.size(combined));
+        } finally {
+            Files.deleteIfExists(combined);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.kousen.cert.service;
+
+import com.kousen.cert.analytics.model.CertificateMetadata;
+import com.kousen.cert.analytics.service.CertificateMetadataService;
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CertificateVerificationServiceTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static KeyStoreProvider provider;
+
+    private PdfSignatureVerifier signatureVerifier;
+    private CertificateMetadataService metadataService;
+    private CertificateVerificationService verificationService;
+
+    @BeforeAll
+    static void createKeyStore() {
+        provider = new KeyStoreProvider(tempDir.resolve("verification-test-keystore.p12"));
+    }
+
+    @BeforeEach
+    void setUp() {
+        signatureVerifier = mock(PdfSignatureVerifier.class);
+        metadataService = mock(CertificateMetadataService.class);
+        verificationService = new CertificateVerificationService(
+                signatureVerifier, metadataService, provider, null, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void shouldVerifyRepeatedUploadOnlyOnce() {
+        // Given
+        byte[] upload = "%PDF-signed".getBytes(StandardCharsets.UTF_8);
+        VerificationResult result = new VerificationResult(true, true, true, true, "CN=Test", null, "ok");
+        when(signatureVerifier.verify(upload)).thenReturn(result);
+
+        // When
+        VerificationResult first = verificationService.verify(upload);
+        VerificationResult second = verificationService.verify(upload.clone());
+
+        // Then
+        assertThat(first).isEqualTo(result);
+        assertThat(second).isSameAs(first);
+        verify(signatureVerifier, times(1)).verify(any(byte[].class));
+        verify(metadataService, times(1)).getCertificateMetadataByFileHash(anyString());
+        assertThat(verificationService.cacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAnswerFromRecordWhenHashMatchesIssuedCertificate() throws Exception {
+        // Given
+        byte[] upload = "%PDF-issued".getBytes(StandardCharsets.UTF_8);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(upload));
+        CertificateMetadata issued = new CertificateMetadata("cert-123", "certificate.pdf");
+        issued.setCreatedAt(Instant.parse("2025-04-18T15:30:00Z"));
+        issued.setSignerFingerprint(provider.certificateFingerprint());
+        when(metadataService.getCertificateMetadataByFileHash(hash)).thenReturn(issued);
+        when(metadataService.countCertificatesByFileHash(hash)).thenReturn(1L);
+
+        // When
+        VerificationResult result = verificationService.verify(upload);
+
+        // Then - no parsing or signature check at all
+        verify(signatureVerifier, never()).verify(any(byte[].class));
+        assertThat(result.signaturePresent()).isTrue();
+        assertThat(result.documentIntact()).isTrue();
+        assertThat(result.signedByThisService()).isTrue();
+        assertThat(result.coversEntireDocument()).isTrue();
+        assertThat(result.signerName()).contains("Ken Kousen");
+        assertThat(result.signedAt()).isEqualTo("2025-04-18T15:30:00Z");
+        assertThat(result.message()).contains("cert-123");
+    }
+
+    @Test
+    void shouldNotNameOneCertificateForCopyOfCombinedPdf() throws Exception {
+        // Given
+        byte[] upload = "%PDF-combined".getBytes(StandardCharsets.UTF_8);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(upload));
+        CertificateMetadata page = new CertificateMetadata("cert-7", "batch_3_certificates.pdf");
+        page.setSignerFingerprint(provider.certificateFingerprint());
+        when(metadataService.getCertificateMetadataByFileHash(hash)).thenReturn(page);
+        when(metadataService.countCertificatesByFileHash(hash)).thenReturn(3L);
+
+        // When
+        VerificationResult result = verificationService.verify(upload);
+
+        // Then
+        assertThat(result.signedByThisService()).isTrue();
+        assertThat(result.message()).contains("combined PDF of 3 certificates").doesNotContain("cert-7");
+    }
+
+    @Test
+    void shouldCheckSignatureOfCopyNotSignedWithCurrentKey() {
+        // Given - one record from before fingerprints were stored, one signed with an earlier key
+        byte[] legacy = "%PDF-legacy".getBytes(StandardCharsets.UTF_8);
+        byte[] rotated = "%PDF-rotated".getBytes(StandardCharsets.UTF_8);
+        CertificateMetadata legacyRecord = new CertificateMetadata("cert-1", "legacy.pdf");
+        CertificateMetadata rotatedRecord = new CertificateMetadata("cert-2", "rotated.pdf");
+        rotatedRecord.setSignerFingerprint("0".repeat(64));
+        when(metadataService.getCertificateMetadataByFileHash(anyString()))
+                .thenReturn(legacyRecord, rotatedRecord);
+        VerificationResult foreign = new VerificationResult(true, true, false, true, "CN=Old", null, "not ours");
+        when(signatureVerifier.verify(any(byte[].class))).thenReturn(foreign);
+
+        // When/Then
+        assertThat(verificationService.verify(legacy)).isEqualTo(foreign);
+        assertThat(verificationService.verify(rotated)).isEqualTo(foreign);
+        verify(signatureVerifier, times(2)).verify(any(byte[].class));
+        verify(metadataService, never()).countCertificatesByFileHash(anyString());
+    }
+
+    @Test
+    void shouldFallBackToSignatureCheckForUnknownHash() {
+        byte[] upload = "%PDF-elsewhere".getBytes(StandardCharsets.UTF_8);
+        VerificationResult tampered = new VerificationResult(true, false, true, true, "CN=Test", null, "modified");
+        when(signatureVerifier.verify(upload)).thenReturn(tampered);
+
+        assertThat(verificationService.verify(upload)).isEqualTo(tampered);
+    }
+
+    @Test
+    void shouldHashSpooledUploadTheSameAsBytes() throws Exception {
+        // Given
+        byte[] upload = "%PDF-spooled".getBytes(StandardCharsets.UTF_8);
+        Path spooled = Files.write(tempDir.resolve("spooled.pdf"), upload);
+        VerificationResult result = new VerificationResult(true, true, true, true, "CN=Test", null, "ok");
+        when(signatureVerifier.verify(spooled)).thenReturn(result);
+
+        // When
+        VerificationResult fromFile = verificationService.verify(spooled);
+        VerificationResult fromBytes = verificationService.verify(upload);
+
+        // Then - the second call hits the entry the first one cached
+        assertThat(fromFile).isEqualTo(result);
+        assertThat(fromBytes).isSameAs(fromFile);
+        verify(signatureVerifier, never()).verify(any(byte[].class));
+    }
+}
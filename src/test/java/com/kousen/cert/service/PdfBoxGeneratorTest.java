@@ -1,16 +1,36 @@
 package com.kousen.cert.service;
 
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.core.io.ClassPathResource;
 
+import java.awt.image.BufferedImage;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class PdfBoxGeneratorTest {
 
@@ -127,4 +147,134 @@ class PdfBoxGeneratorTest {
         // Cleanup
         Files.deleteIfExists(pdfPath);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldDrawScannableVectorQrCodeWithoutImage() throws Exception {
+        // Given
+        PdfBoxGenerator generator = new PdfBoxGenerator();
+        String url = "https://test-server.com/verify-certificate?name=Jane%20Smith&id=cert-123";
+        BitMatrix matrix = new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, 0, 0);
+
+        // When
+        Path pdfPath = generator.createCertificatePdfWithQrMatrix(
+                "Certificate of Ownership", "Jane Smith", "Kotlin Cookbook", matrix);
+
+        try (PDDocument document = Loader.loadPDF(pdfPath.toFile())) {
+            // Then - the background is the only image on the page
+            PDPage page = document.getPage(0);
+            assertThat(page.getResources().getXObjectNames()).hasSize(1);
+
+            // Render the QR code's corner of the page and scan it
+            float scale = 3f;
+            BufferedImage rendered = new PDFRenderer(document).renderImage(0, scale);
+            float pageHeight = page.getMediaBox().getHeight();
+            int left = (int) ((80 - 10) * scale);
+            int top = (int) ((pageHeight - 180 - 10) * scale);
+            int side = (int) (120 * scale);
+            BufferedImage qrArea = rendered.getSubimage(left, top, side, side);
+
+            var bitmap = new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(qrArea)));
+            Result result = new QRCodeReader().decode(bitmap, Map.of(DecodeHintType.TRY_HARDER, Boolean.TRUE));
+            assertThat(result.getText()).isEqualTo(url);
+        } finally {
+            Files.deleteIfExists(pdfPath);
+        }
+    }
+
+    @Test
+    void shouldCreateCombinedPdfWithSharedResources() throws Exception {
+        // Given
+        PdfBoxGenerator generator = new PdfBoxGenerator();
+        List<PdfBoxGenerator.CertificatePage> pages = List.of(
+                new PdfBoxGenerator.CertificatePage("Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", null),
+                new PdfBoxGenerator.CertificatePage("Certificate of Ownership", "Grace Hopper", "Kotlin Cookbook", null),
+                new PdfBoxGenerator.CertificatePage("Certificate of Ownership", "Alan Turing", "Kotlin Cookbook", null));
+
+        // When
+        Path combined = generator.createCombinedCertificatePdf(pages);
+        Path single = generator.createCertificatePdfWithQrData(
+                "Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", null);
+
+        try (PDDocument document = Loader.loadPDF(combined.toFile())) {
+            // Then - one page per certificate, in order
+            assertThat(document.getNumberOfPages()).isEqualTo(3);
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(2);
+            stripper.setEndPage(2);
+            assertThat(stripper.getText(document)).contains("Grace Hopper");
+
+            // Every page refers to the same background image object
+            Set<COSBase> backgrounds = new HashSet<>();
+            for (PDPage page : document.getPages()) {
+                COSDictionary xObjects = page.getResources().getCOSObject().getCOSDictionary(COSName.XOBJECT);
+                for (COSName name : xObjects.keySet()) {
+                    backgrounds.add(xObjects.getDictionaryObject(name));
+                }
+            }
+            assertThat(backgrounds).hasSize(1);
+
+            // Shared fonts and background mean three pages cost far less than three files
+            assertThat(Files.size(combined)).isLessThan(2 * Files.size(single));
+        } finally {
+            Files.deleteIfExists(combined);
+            Files.deleteIfExists(single);
+        }
+    }
+
+    @Test
+    void shouldRejectEmptyCombinedPdf() {
+        PdfBoxGenerator generator = new PdfBoxGenerator();
+
+        assertThatThrownBy(() -> generator.createCombinedCertificatePdf(List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRenderPreviewInMemory() throws Exception {
+        // Given
+        PdfBoxGenerator generator = new PdfBoxGenerator();
+        var page = new PdfBoxGenerator.CertificatePage(
+                "Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", null);
+
+        // When
+        BufferedImage image = generator.renderPreviewImage(page, 36);
+        byte[] pdf = generator.createPreviewPdf(page);
+
+        // Then - landscape A4 at half a pixel per point
+        assertThat(image.getWidth()).isBetween(420, 421);
+        assertThat(image.getHeight()).isBetween(297, 298);
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            assertThat(new PDFTextStripper().getText(document)).contains("Ada Lovelace");
+        }
+    }
+
+    @Test
+    void shouldRenderIdenticalBytesInDeterministicMode() throws Exception {
+        // Given
+        PdfBoxGenerator generator = new PdfBoxGenerator(true);
+        BitMatrix matrix = new QRCodeWriter().encode("https://example.com/verify-certificate?id=cert-1",
+                BarcodeFormat.QR_CODE, 0, 0);
+
+        // When
+        Path first = generator.createCertificatePdfWithQrMatrix(
+                "Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", matrix, "cert-1");
+        Path second = generator.createCertificatePdfWithQrMatrix(
+                "Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", matrix, "cert-1");
+        Path other = generator.createCertificatePdfWithQrMatrix(
+                "Certificate of Ownership", "Ada Lovelace", "Kotlin Cookbook", matrix, "cert-2");
+
+        try {
+            // Then - same certificate ID gives the same bytes; the ID alone changes the trailer
+            assertThat(Files.readAllBytes(second)).isEqualTo(Files.readAllBytes(first));
+            assertThat(Files.readAllBytes(other)).isNotEqualTo(Files.readAllBytes(first));
+            try (PDDocument document = Loader.loadPDF(first.toFile())) {
+                assertThat(document.getDocumentInformation().getCreationDate().toInstant())
+                        .isEqualTo(PdfBoxGenerator.FIXED_CREATION_DATE);
+            }
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.deleteIfExists(other);
+        }
+    }
+}
@@ -75,7 +75,7 @@ class PdfServiceTest {
     void shouldWrapGenerationFailuresAsIOException() throws Exception {
         // Given - a QR generator that fails
         QrCodeGenerator failingGenerator = mock(QrCodeGenerator.class);
-        when(failingGenerator.generateQrCodeData(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.anyInt()))
+        when(failingGenerator.generateQrCodeMatrix(Mockito.anyString(), Mockito.anyString(), Mockito.any()))
                 .thenThrow(new java.io.IOException("QR generation failed"));
         PdfService service = new PdfService(failingGenerator, new PdfBoxGenerator());
 
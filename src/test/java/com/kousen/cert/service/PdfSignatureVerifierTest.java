@@ -1,14 +1,24 @@
 package com.kousen.cert.service;
 
+import com.kousen.cert.service.PdfSignatureVerifier.VerificationResult;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -48,6 +58,65 @@ class PdfSignatureVerifierTest {
         assertThat(result.signerName()).contains("Ken Kousen");
     }
 
+    @Test
+    void shouldReadSignatureFromFileTailWithoutParsing() {
+        var location = TailSignatureLocator.locate(ByteBuffer.wrap(signedPdfBytes));
+
+        assertThat(location).isNotNull();
+        assertThat(location.byteRange()[0]).isZero();
+        assertThat(location.byteRange()[2] + location.byteRange()[3]).isEqualTo(signedPdfBytes.length);
+        assertThat(location.signDate()).startsWith("D:");
+    }
+
+    @Test
+    void shouldGiveSameResultAsFullParse() {
+        assertThat(verifier.verify(signedPdfBytes)).isEqualTo(verifier.verifyFullParse(signedPdfBytes));
+    }
+
+    @Test
+    void shouldVerifyMemoryMappedFileLikeBytes() throws Exception {
+        Path upload = Files.write(tempDir.resolve("upload.pdf"), signedPdfBytes);
+
+        assertThat(verifier.verify(upload)).isEqualTo(verifier.verify(signedPdfBytes));
+    }
+
+    @Test
+    void shouldFallBackToFullParseForMemoryMappedFile() throws Exception {
+        byte[] extended = Arrays.copyOf(signedPdfBytes, signedPdfBytes.length + 16);
+        Path upload = Files.write(tempDir.resolve("extended.pdf"), extended);
+
+        assertThat(verifier.verify(upload)).isEqualTo(verifier.verifyFullParse(extended));
+    }
+
+    @Test
+    void shouldLeaveUnusualFilesToFullParse() {
+        byte[] extended = Arrays.copyOf(signedPdfBytes, signedPdfBytes.length + 16);
+
+        assertThat(TailSignatureLocator.locate(ByteBuffer.wrap(extended))).isNull();
+        assertThat(TailSignatureLocator.locate(ByteBuffer.wrap("not a pdf at all".getBytes()))).isNull();
+    }
+
+    @Test
+    void shouldRecordSigningTimeFromClock() throws Exception {
+        // Given
+        Instant signingTime = Instant.parse("2025-04-18T15:30:00Z");
+        Path unsigned = tempDir.resolve("unsigned-clock.pdf");
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+            doc.save(unsigned.toFile());
+        }
+
+        // When
+        Path signed = new PdfSigner(provider, Clock.fixed(signingTime, ZoneOffset.UTC)).sign(unsigned);
+
+        // Then
+        try {
+            assertThat(verifier.verify(Files.readAllBytes(signed)).signedAt()).isEqualTo("2025-04-18T15:30:00Z");
+        } finally {
+            Files.deleteIfExists(signed);
+        }
+    }
+
     @Test
     void shouldDetectTamperedDocument() {
         // Tamper with a byte inside the signed range without breaking PDF
@@ -99,22 +168,71 @@ class PdfSignatureVerifierTest {
 
     @Test
     void shouldRejectDocumentSignedByDifferentKey() throws Exception {
-        // Sign with a different self-signed certificate
-        KeyStoreProvider otherProvider = new KeyStoreProvider(tempDir.resolve("other-keystore.p12"));
-        Path unsigned = tempDir.resolve("other-unsigned.pdf");
-        try (PDDocument doc = new PDDocument()) {
-            doc.addPage(new PDPage());
-            doc.save(unsigned.toFile());
-        }
-        Path signed = new PdfSigner(otherProvider).sign(unsigned);
-        byte[] otherSigned = Files.readAllBytes(signed);
-        Files.deleteIfExists(signed);
+        byte[] otherSigned = signWithOtherCertificate("other");
 
         var result = verifier.verify(otherSigned);
 
         assertThat(result.signaturePresent()).isTrue();
         assertThat(result.documentIntact()).isTrue();
         assertThat(result.signedByThisService()).isFalse();
+        assertThat(result).isEqualTo(verifier.verifyFullParse(otherSigned));
+    }
+
+    @Test
+    void shouldDetectTamperingOfDocumentSignedByDifferentKey() throws Exception {
+        byte[] tampered = signWithOtherCertificate("other-tampered");
+        tampered[indexOf(tampered, "Connecticut".getBytes())] = 'X';
+
+        var result = verifier.verify(tampered);
+
+        assertThat(result.signaturePresent()).isTrue();
+        assertThat(result.documentIntact()).isFalse();
+        assertThat(result.signedByThisService()).isFalse();
+    }
+
+    @Test
+    void shouldShareVerifiersAcrossThreads() throws Exception {
+        // Given - our own and a foreign signature, checked alternately from many threads
+        byte[] otherSigned = signWithOtherCertificate("other-concurrent");
+        var ours = verifier.verify(signedPdfBytes);
+        var theirs = verifier.verify(otherSigned);
+
+        // When
+        List<VerificationResult> results;
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            List<Future<VerificationResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                byte[] pdf = i % 2 == 0 ? signedPdfBytes : otherSigned;
+                futures.add(pool.submit(() -> verifier.verify(pdf)));
+            }
+            results = new ArrayList<>();
+            for (Future<VerificationResult> future : futures) {
+                results.add(future.get());
+            }
+        }
+
+        // Then
+        assertThat(ours.signedByThisService()).isTrue();
+        assertThat(theirs.documentIntact()).isTrue();
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i)).isEqualTo(i % 2 == 0 ? ours : theirs);
+        }
+    }
+
+    private static byte[] signWithOtherCertificate(String name) throws Exception {
+        // Sign with a different self-signed certificate
+        KeyStoreProvider otherProvider = new KeyStoreProvider(tempDir.resolve(name + "-keystore.p12"));
+        Path unsigned = tempDir.resolve(name + "-unsigned.pdf");
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+            doc.save(unsigned.toFile());
+        }
+        Path signed = new PdfSigner(otherProvider).sign(unsigned);
+        try {
+            return Files.readAllBytes(signed);
+        } finally {
+            Files.deleteIfExists(signed);
+        }
     }
 
     private static int indexOf(byte[] haystack, byte[] needle) {
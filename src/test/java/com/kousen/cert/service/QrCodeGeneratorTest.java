@@ -1,5 +1,6 @@
 package com.kousen.cert.service;
 
+import com.google.zxing.common.BitMatrix;
 import com.kousen.cert.config.ServerUrlConfig;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -175,4 +176,78 @@ class QrCodeGeneratorTest {
                 .isInstanceOf(IOException.class)
                 .hasMessageContaining("Failed to generate QR code data");
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldEncodeMatrixAtModuleResolution() throws Exception {
+        // Given
+        ServerUrlConfig mockConfig = mock(ServerUrlConfig.class);
+        when(mockConfig.getUrl()).thenReturn("https://test-server.com");
+        QrCodeGenerator generator = new QrCodeGenerator(mockConfig);
+
+        // When
+        BitMatrix matrix = generator.generateQrCodeMatrix("Test User", "Test Book", "cert-123");
+
+        // Then - one cell per module: (4 * version + 17) modules plus a 4-module quiet zone each side
+        assertThat(matrix.getWidth()).isEqualTo(matrix.getHeight());
+        int modules = matrix.getWidth() - 8;
+        assertThat((modules - 17) % 4).isZero();
+        assertThat(matrix.getWidth()).isLessThan(100);
+        // Finder pattern corner is dark, quiet zone is light
+        assertThat(matrix.get(4, 4)).isTrue();
+        assertThat(matrix.get(0, 0)).isFalse();
+    }
+
+    @Test
+    void shouldServeRepeatedPreviewFromCache() throws Exception {
+        // Given
+        ServerUrlConfig mockConfig = mock(ServerUrlConfig.class);
+        when(mockConfig.getUrl()).thenReturn("https://test-server.com");
+        QrCodeGenerator generator = new QrCodeGenerator(mockConfig);
+
+        // When
+        BitMatrix first = generator.generateQrCodeMatrix("Test User", "Test Book", null);
+        first.flip(0, 0);
+        BitMatrix second = generator.generateQrCodeMatrix("Test User", "Test Book", null);
+
+        // Then - second call is a hit, and callers cannot corrupt the cached matrix
+        assertThat(generator.cacheStats().hitCount()).isEqualTo(1);
+        assertThat(generator.cacheStats().missCount()).isEqualTo(1);
+        assertThat(second.get(0, 0)).isFalse();
+    }
+
+    @Test
+    void shouldNotCacheCodesOfIssuedCertificates() throws Exception {
+        // Given
+        ServerUrlConfig mockConfig = mock(ServerUrlConfig.class);
+        when(mockConfig.getUrl()).thenReturn("https://test-server.com");
+        QrCodeGenerator generator = new QrCodeGenerator(mockConfig);
+
+        // When
+        BitMatrix first = generator.generateQrCodeMatrix("Test User", "Test Book", "cert-123");
+        BitMatrix second = generator.generateQrCodeMatrix("Test User", "Test Book", "cert-123");
+
+        // Then - encoded each time, never looked up or stored
+        assertThat(second).isEqualTo(first);
+        assertThat(generator.cacheStats().requestCount()).isZero();
+    }
+
+    @Test
+    void shouldOmitDateFromUrlInStableMode() throws Exception {
+        // Given
+        ServerUrlConfig mockConfig = mock(ServerUrlConfig.class);
+        when(mockConfig.getUrl()).thenReturn("https://test-server.com");
+        when(mockConfig.isStableUrls()).thenReturn(true);
+        QrCodeGenerator generator = new QrCodeGenerator(mockConfig);
+
+        var method = QrCodeGenerator.class.getDeclaredMethod(
+                "buildVerificationUrl", String.class, String.class, String.class);
+        method.setAccessible(true);
+
+        // When
+        String url = (String) method.invoke(generator, "Test User", "Test Book", "abc-123");
+
+        // Then
+        assertThat(url).doesNotContain("date=");
+        assertThat(url).endsWith("&id=abc-123");
+    }
+}
@@ -0,0 +1,57 @@
+package com.kousen.cert.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeOrderedIdsTest {
+
+    @Test
+    void shouldGenerateVersion7Uuids() {
+        UUID uuid = UUID.fromString(TimeOrderedIds.next());
+
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSortByCreationTime() {
+        String earlier = TimeOrderedIds.nextUuid(1_700_000_000_000L).toString();
+        String later = TimeOrderedIds.nextUuid(1_700_000_000_001L).toString();
+
+        assertThat(earlier).isLessThan(later);
+    }
+
+    @Test
+    void shouldRecoverEmbeddedTimestamp() {
+        long millis = 1_700_000_000_123L;
+        String id = TimeOrderedIds.nextUuid(millis).toString();
+
+        assertThat(TimeOrderedIds.timestampOf(id)).isEqualTo(Instant.ofEpochMilli(millis));
+    }
+
+    @Test
+    void shouldNotRepeatWithinSameMillisecond() {
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(TimeOrderedIds.nextUuid(1_700_000_000_000L));
+        }
+
+        assertThat(ids).hasSize(10_000);
+    }
+
+    @Test
+    void shouldRejectRandomUuids() {
+        String id = UUID.randomUUID().toString();
+
+        assertThatThrownBy(() -> TimeOrderedIds.timestampOf(id))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(id);
+    }
+}